@@ -0,0 +1,52 @@
+#!/bin/sh
+#
+# Stand-in for ffprobe which returns canned metadata after a configurable delay.
+#
+# FFPROBE_STUB_LATENCY sets the delay in seconds for each file (default 0.05).
+#
+
+# Identify ourselves when run without arguments so the server accepts us as a parser
+if [ $# -eq 0 ]; then
+    echo "ffprobe version stub"
+    exit 1
+fi
+
+# The media file is always the last argument
+for FILE in "$@"; do :; done
+
+sleep "${FFPROBE_STUB_LATENCY:-0.05}"
+
+# Frame analysis used by deep scans
+case " $* " in
+    *" -show_entries "*)
+        echo '{"frames": []}'
+        exit 0
+        ;;
+esac
+
+NAME=$(basename "$FILE")
+
+case "$FILE" in
+    *.mkv|*.mp4|*.m4v|*.avi)
+        cat <<JSON
+{
+    "streams": [
+        {"index": 0, "codec_name": "h264", "profile": "High", "codec_type": "video", "width": 1920, "height": 1080, "pix_fmt": "yuv420p", "field_order": "progressive", "r_frame_rate": "24000/1001", "bit_rate": "8000000", "bits_per_raw_sample": "8", "disposition": {"default": 1, "forced": 0}, "tags": {"language": "eng"}},
+        {"index": 1, "codec_name": "ac3", "codec_type": "audio", "sample_rate": "48000", "channels": 6, "bit_rate": "640000", "disposition": {"default": 1, "forced": 0}, "tags": {"language": "eng"}},
+        {"index": 2, "codec_name": "subrip", "codec_type": "subtitle", "disposition": {"default": 0, "forced": 0}, "tags": {"language": "eng"}}
+    ],
+    "format": {"filename": "$FILE", "duration": "5400.000000", "bit_rate": "8700000", "tags": {"title": "$NAME"}}
+}
+JSON
+        ;;
+    *)
+        cat <<JSON
+{
+    "streams": [
+        {"index": 0, "codec_name": "mp3", "codec_type": "audio", "sample_rate": "44100", "channels": 2, "bit_rate": "320000", "disposition": {"default": 0, "forced": 0}}
+    ],
+    "format": {"filename": "$FILE", "duration": "240.000000", "bit_rate": "320000", "tags": {"title": "$NAME", "artist": "Stub Artist", "album": "Stub Album", "genre": "Stub", "track": "1", "date": "2000"}}
+}
+JSON
+        ;;
+esac
@@ -0,0 +1,106 @@
+#!/bin/sh
+#
+# Generates a synthetic media library for benchmarking the media scanner.
+#
+# Music is laid out as [Genre/...]Artist/Album/Track with cover art and a playlist
+# per album, videos as Movie (Year)/Movie (Year).mkv with an NFO file. Media files
+# contain a unique header followed by sparse padding so they have distinct
+# fingerprints without using much disk space.
+#
+
+usage() {
+    echo "Usage: $0 [-d depth] [-a artists] [-b albums] [-t tracks] [-m movies] [-s size] <directory>"
+    echo "  -d  Number of genre directory levels above artists, each with two genres (default 1)"
+    echo "  -a  Artists per genre directory (default 20)"
+    echo "  -b  Albums per artist (default 5)"
+    echo "  -t  Tracks per album (default 12)"
+    echo "  -m  Number of movies (default 100)"
+    echo "  -s  Size of each media file in KB (default 64)"
+    exit 1
+}
+
+DEPTH=1
+ARTISTS=20
+ALBUMS=5
+TRACKS=12
+MOVIES=100
+SIZE=64
+
+while getopts "d:a:b:t:m:s:" opt; do
+    case $opt in
+        d) DEPTH=$OPTARG ;;
+        a) ARTISTS=$OPTARG ;;
+        b) ALBUMS=$OPTARG ;;
+        t) TRACKS=$OPTARG ;;
+        m) MOVIES=$OPTARG ;;
+        s) SIZE=$OPTARG ;;
+        *) usage ;;
+    esac
+done
+
+shift $((OPTIND - 1))
+[ $# -eq 1 ] || usage
+
+ROOT=$1
+
+# Write a media file with unique content
+media_file() {
+    printf '%s\n' "$1" > "$1"
+    truncate -s "${SIZE}K" "$1"
+}
+
+# Generate artists below a directory, descending through genre levels first
+generate_music() {
+    dir=$1
+    level=$2
+
+    if [ "$level" -gt 0 ]; then
+        # Recurse in a subshell so our variables are not overwritten
+        for g in 1 2; do
+            (generate_music "$dir/Genre $level.$g" $((level - 1)))
+        done
+        return
+    fi
+
+    for a in $(seq 1 "$ARTISTS"); do
+        for b in $(seq 1 "$ALBUMS"); do
+            album="$dir/Artist $a/Album $b ($((1980 + b)))"
+            mkdir -p "$album"
+            printf 'cover\n' > "$album/cover.jpg"
+            playlist="$album/Album $b.m3u"
+            printf '#EXTM3U\n' > "$playlist"
+
+            for t in $(seq 1 "$TRACKS"); do
+                track=$(printf '%02d - Track %d.mp3' "$t" "$t")
+                media_file "$album/$track"
+                printf '%s\n' "$track" >> "$playlist"
+            done
+        done
+    done
+}
+
+generate_movies() {
+    for m in $(seq 1 "$MOVIES"); do
+        name="Movie $m ($((1950 + m % 70)))"
+        dir="$ROOT/Movies/$name"
+        mkdir -p "$dir"
+        media_file "$dir/$name.mkv"
+        printf 'poster\n' > "$dir/poster.jpg"
+        cat > "$dir/$name.nfo" <<NFO
+<?xml version="1.0" encoding="UTF-8"?>
+<movie>
+    <title>Movie $m</title>
+    <year>$((1950 + m % 70))</year>
+    <rating>$((m % 10)).5</rating>
+    <genre>Drama</genre>
+    <plot>Synthetic movie number $m.</plot>
+</movie>
+NFO
+    done
+}
+
+mkdir -p "$ROOT/Music" || exit 1
+generate_music "$ROOT/Music" "$DEPTH"
+generate_movies
+
+echo "Generated $(find "$ROOT" -type f \( -name '*.mp3' -o -name '*.mkv' \) | wc -l) media files in $ROOT"
@@ -0,0 +1,79 @@
+#!/bin/sh
+#
+# Scans a media library with a fresh server instance and reports the results.
+#
+# The server runs with its own temporary data and config directories and uses
+# the ffprobe stub, so results only reflect the scanner, database and file system.
+#
+
+usage() {
+    echo "Usage: $0 <server war> <library directory>"
+    exit 1
+}
+
+[ $# -eq 2 ] || usage
+
+WAR=$(realpath "$1")
+LIBRARY=$(realpath "$2")
+HERE=$(dirname "$(realpath "$0")")
+URL=http://localhost:1556
+AUTH=admin:admin
+
+WORK=$(mktemp -d)
+export XDG_DATA_HOME="$WORK/data"
+export XDG_CACHE_HOME="$WORK/cache"
+CONFIG_DIR="$WORK/config"
+
+mkdir -p "$CONFIG_DIR"
+cat > "$CONFIG_DIR/config.properties" <<CONFIG
+parser.path=$HERE/ffprobe-stub.sh
+mediascan.native.audio=false
+CONFIG
+
+java ${JAVA_OPTS} -Dsms.config.dir="$CONFIG_DIR" -Dsms.database.statistics=true -jar "$WAR" > "$WORK/server.log" 2>&1 &
+SERVER=$!
+
+cleanup() {
+    kill $SERVER 2> /dev/null
+    wait $SERVER 2> /dev/null
+
+    if [ -z "$KEEP" ]; then
+        rm -rf "$WORK"
+    else
+        echo "Server files kept in $WORK"
+    fi
+}
+
+trap cleanup EXIT INT TERM
+
+# Number of statements executed by the media database so far
+media_statements() {
+    curl -s -u $AUTH "$URL/admin/database/stats" | grep -o '"name":"Media"[^}]*' | sed -n 's/.*"statements":\([0-9]*\).*/\1/p'
+}
+
+# Wait for the server to start
+until curl -s -o /dev/null -u $AUTH "$URL/admin/database/stats"; do
+    kill -0 $SERVER 2> /dev/null || { echo "Server failed to start, see $WORK/server.log"; KEEP=1; exit 1; }
+    sleep 1
+done
+
+STATEMENTS=$(media_statements)
+
+curl -s -u $AUTH -H "Content-Type: application/json" -X POST -d "{\"name\": \"Benchmark\", \"path\": \"$LIBRARY\"}" "$URL/admin/media/folder" > /dev/null
+curl -s -u $AUTH "$URL/admin/media/scan" > /dev/null
+
+# Wait for the scan to finish
+sleep 1
+
+while curl -s -u $AUTH "$URL/admin/media/scan/progress" | grep -q '"running":true'; do
+    sleep 1
+done
+
+echo "Scan progress:"
+curl -s -u $AUTH "$URL/admin/media/scan/progress"
+echo
+echo "Database statistics:"
+curl -s -u $AUTH "$URL/admin/database/stats"
+echo
+echo "Media database statements issued by the scan: $(( $(media_statements) - STATEMENTS ))"
+grep -h "Finished media scan" $(find "$WORK" -name 'mediascanner-*.log')
@@ -24,7 +24,7 @@
 package com.scooter1556.sms.server.config;
 
 import com.scooter1556.sms.server.database.UserDatabase;
-import com.scooter1556.sms.server.utilities.DatabaseUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.authentication.configuration.GlobalAuthenticationConfigurerAdapter;
@@ -69,10 +69,14 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     
     @Configuration
     protected static class AuthenticationConfiguration extends GlobalAuthenticationConfigurerAdapter {
+        
+        @Autowired
+        private UserDatabase userDatabase;
+        
         @Override
         public void init(AuthenticationManagerBuilder auth) throws Exception {
             auth
-                .jdbcAuthentication().dataSource(DatabaseUtils.getDataSource(UserDatabase.DB_NAME, UserDatabase.DB_VERSION))
+                .jdbcAuthentication().dataSource(userDatabase.getDataSource())
 		.usersByUsernameQuery(
 			"select Username,Password,Enabled from User where Username=?")
 		.authoritiesByUsernameQuery(
@@ -27,9 +27,15 @@ import com.scooter1556.sms.server.SMS;
 import com.scooter1556.sms.server.dao.MediaDao;
 import com.scooter1556.sms.server.dao.SettingsDao;
 import com.scooter1556.sms.server.dao.UserDao;
+import com.scooter1556.sms.server.database.MediaDatabase;
+import com.scooter1556.sms.server.database.SettingsDatabase;
+import com.scooter1556.sms.server.database.UserDatabase;
+import com.scooter1556.sms.server.domain.CacheStats;
+import com.scooter1556.sms.server.domain.DatabaseStats;
 import com.scooter1556.sms.server.domain.MediaElement;
 import com.scooter1556.sms.server.domain.MediaFolder;
 import com.scooter1556.sms.server.domain.Playlist;
+import com.scooter1556.sms.server.domain.ScanProgress;
 import com.scooter1556.sms.server.domain.User;
 import com.scooter1556.sms.server.domain.UserStats;
 import com.scooter1556.sms.server.domain.UserRole;
@@ -82,6 +88,15 @@ public class AdminController {
     @Autowired
     private ScannerService scannerService;
     
+    @Autowired
+    private MediaDatabase mediaDatabase;
+    
+    @Autowired
+    private SettingsDatabase settingsDatabase;
+    
+    @Autowired
+    private UserDatabase userDatabase;
+    
     //
     // User
     //
@@ -653,6 +668,16 @@ public class AdminController {
         return new ResponseEntity<>(scannerService.getScanCount(), HttpStatus.OK);
     }
     
+    @ApiOperation(value = "Get progress of the current media scan")
+    @ApiResponses(value = {
+        @ApiResponse(code = HttpServletResponse.SC_OK, message = "Scan progress returned successfully")
+    })
+    @RequestMapping(value="/media/scan/progress", method=RequestMethod.GET)
+    public ResponseEntity<List<ScanProgress>> getMediaScanProgress()
+    {   
+        return new ResponseEntity<>(scannerService.getScanProgress(), HttpStatus.OK);
+    }
+    
     @ApiOperation(value = "Start a playlist scan")
     @ApiResponses(value = {
         @ApiResponse(code = HttpServletResponse.SC_OK, message = "Playlist scan started"),
@@ -702,9 +727,10 @@ public class AdminController {
         @ApiResponse(code = HttpServletResponse.SC_NOT_FOUND, message = "No media streams require scanning")
     })
     @RequestMapping(value="/deep/scan", method=RequestMethod.GET)
-    public ResponseEntity<String> deepScan() {
-        // Start scanning playlists
-        int status = scannerService.startDeepScan();
+    public ResponseEntity<String> deepScan(
+            @ApiParam(value = "Analyse every frame, including streams previously analysed using samples", required = false) @RequestParam(value = "full", required = false) Boolean full) {
+        // Start deep scan
+        int status = scannerService.startDeepScan(full != null && full);
         
         // Check status
         switch(status) {
@@ -739,6 +765,45 @@ public class AdminController {
         return new ResponseEntity<>(scannerService.getDeepScanCount(), HttpStatus.OK);
     }
 
+    //
+    // Database
+    //
+    
+    @ApiOperation(value = "Get database connection pool statistics")
+    @ApiResponses(value = {
+        @ApiResponse(code = HttpServletResponse.SC_OK, message = "Database statistics returned successfully")
+    })
+    @RequestMapping(value="/database/stats", method=RequestMethod.GET)
+    public ResponseEntity<List<DatabaseStats>> getDatabaseStats()
+    {
+        List<DatabaseStats> stats = new ArrayList<>();
+        
+        for(DatabaseStats test : new DatabaseStats[] {mediaDatabase.getStats(), settingsDatabase.getStats(), userDatabase.getStats()}) {
+            if(test != null) {
+                stats.add(test);
+            }
+        }
+        
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    //
+    // Cache
+    //
+    
+    @ApiOperation(value = "Get in-memory cache statistics")
+    @ApiResponses(value = {
+        @ApiResponse(code = HttpServletResponse.SC_OK, message = "Cache statistics returned successfully")
+    })
+    @RequestMapping(value="/cache/stats", method=RequestMethod.GET)
+    public ResponseEntity<List<CacheStats>> getCacheStats()
+    {
+        List<CacheStats> stats = new ArrayList<>();
+        stats.add(mediaDao.getCacheStats());
+        
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
     //
     // Log
     //
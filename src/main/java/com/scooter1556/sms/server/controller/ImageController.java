@@ -34,7 +34,6 @@ import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import java.io.File;
-import java.util.List;
 import java.util.UUID;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -173,22 +172,8 @@ public class ImageController {
                 path = element.getPath();
             }
             
-            // Loop through media elements for cover art
-            List<MediaElement> mediaElements = mediaDao.getRandomMediaElementsByParentPath(path);
-
-            if(mediaElements == null) {
-                response.sendError(HttpServletResponse.SC_NO_CONTENT, "Unable to retrieve child media elements for " + (isFolder ? "folder" : "media element") + " with id " + id + ".");
-                return;
-            }
-            
-            for(MediaElement mediaElement : mediaElements) {
-                // Get cover art
-                image = imageService.getCoverArt(mediaElement);
-                
-                if(image != null) {
-                    break;
-                }
-            }
+            // Search child media elements in random order for cover art
+            image = mediaDao.findRandomMediaElementByParentPath(path, imageService::getCoverArt);
 
             // Check if we were able to retrieve cover art
             if(image == null) {
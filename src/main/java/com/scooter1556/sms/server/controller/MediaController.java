@@ -29,21 +29,30 @@ import com.scooter1556.sms.server.domain.Directory;
 import com.scooter1556.sms.server.domain.MediaElement;
 import com.scooter1556.sms.server.domain.MediaElement.MediaElementType;
 import com.scooter1556.sms.server.domain.MediaFolder;
+import com.scooter1556.sms.server.domain.MediaGroup;
+import com.scooter1556.sms.server.domain.MediaGroup.MediaGroupType;
 import com.scooter1556.sms.server.service.LogService;
 import com.scooter1556.sms.server.service.UserService;
+import com.scooter1556.sms.server.utilities.CursorUtils;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import java.io.File;
 import java.io.FileFilter;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.SystemUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -66,6 +75,12 @@ public class MediaController {
     private UserService userService;
     
     private static final String CLASS_NAME = "MediaController";
+    
+    // Response header containing the cursor for the next page of a paged list
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
+    // Maximum number of times random media elements are sampled to fill a request
+    private static final int RANDOM_SAMPLE_ATTEMPTS = 3;
 
     @ApiOperation(value = "Get a list of media folders")
     @ApiResponses(value = {
@@ -156,25 +171,44 @@ public class MediaController {
             @ApiParam(value = "Media type", required = false) @RequestParam(value = "type", required = false) Byte type,
             HttpServletRequest request)
     {
-        List<MediaElement> mediaElements = mediaDao.getRandomMediaElements(type);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        if(limit <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
         
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
+        Set<UUID> selected = new LinkedHashSet<>();
+        List<MediaElement> result = new ArrayList<>();
         
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        // Sample again if user rules filter out some of the selection
+        for(int i = 0; i < RANDOM_SAMPLE_ATTEMPTS && result.size() < limit; i++) {
+            List<MediaElement> mediaElements = mediaDao.getRandomMediaElements(type, limit - result.size());
+
+            if (mediaElements == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            
+            if (mediaElements.isEmpty()) {
+                break;
+            }
+
+            // Process for user
+            mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
+
+            if (mediaElements == null) {
+                return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+            }
+            
+            for(MediaElement mediaElement : mediaElements) {
+                if(result.size() < limit && selected.add(mediaElement.getID())) {
+                    result.add(mediaElement);
+                }
+            }
         }
         
-        // Trim list to specified limit
-        if(mediaElements.size() > limit) {
-            mediaElements = mediaElements.subList(0, limit);
+        if (result.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        return new ResponseEntity<>(mediaElements, HttpStatus.OK);
+        return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
     @ApiOperation(value = "Get media folder contents")
@@ -222,6 +256,8 @@ public class MediaController {
     @RequestMapping(value="/{id}/contents", method=RequestMethod.GET)
     public ResponseEntity<List<MediaElement>> getMediaElementsByID(
             @ApiParam(value = "ID of the directory element", required = true) @PathVariable("id") UUID id,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
         MediaElement element = mediaDao.getMediaElementByID(id);
@@ -247,6 +283,14 @@ public class MediaController {
                 return new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE);
         }
         
+        if(limit != null) {
+            Byte contentType = type;
+            
+            return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                    (key, afterID, count) -> mediaDao.getMediaElementsByParentPath(parentPath, contentType, afterID, count),
+                    (mediaElement) -> null);
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getMediaElementsByParentPath(parentPath, type);
         
         if (mediaElements == null) {
@@ -272,27 +316,12 @@ public class MediaController {
     @RequestMapping(value="/all/{limit}", method=RequestMethod.GET)
     public ResponseEntity<List<MediaElement>> getDirectoryMediaElements(
             @ApiParam(value = "Number of directory elements to return", required = true) @PathVariable("limit") Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
-        List<MediaElement> mediaElements = mediaDao.getDirectoryElements();
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
-        
-        // Trim list to specified limit
-        if(mediaElements.size() > limit) {
-            mediaElements = mediaElements.subList(0, limit);
-        }
-        
-        return new ResponseEntity<>(mediaElements, HttpStatus.OK);
+        return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                (key, id, count) -> mediaDao.getDirectoryElements(key, id, count),
+                MediaElement::getTitle);
     }
 
     @ApiOperation(value = "Get recently added directory elements")
@@ -305,37 +334,16 @@ public class MediaController {
     public ResponseEntity<List<MediaElement>> getRecentlyAddedDirectoryMediaElements(
             @ApiParam(value = "Number of directory elements to return", required = true) @PathVariable("limit") Integer limit,
             @ApiParam(value = "Directory media type", required = false) @RequestParam(value = "type", required = false) Byte type,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {   
-        List<MediaElement> mediaElements = null;
-        
-        if(type == null) {
-            mediaElements = mediaDao.getRecentlyAddedDirectoryElements();
-        } else {
-            if(type == MediaElement.DirectoryMediaType.AUDIO) {
-                mediaElements = mediaDao.getRecentlyAddedAudioDirectoryElements();
-            } else if(type == MediaElement.DirectoryMediaType.VIDEO) {
-                mediaElements = mediaDao.getRecentlyAddedVideoDirectoryElements();
-            }
-        }
-        
-        if (mediaElements == null) {
+        if(type != null && type != MediaElement.DirectoryMediaType.AUDIO && type != MediaElement.DirectoryMediaType.VIDEO) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
-        
-        // Trim list to specified limit
-        if(mediaElements.size() > limit) {
-            mediaElements = mediaElements.subList(0, limit);
-        }
-        
-        return new ResponseEntity<>(mediaElements, HttpStatus.OK);
+        return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                (key, id, count) -> mediaDao.getRecentlyAddedDirectoryElements(type, key == null ? null : Timestamp.valueOf(key), id, count),
+                MediaElement::getCreated);
     }
     
     @ApiOperation(value = "Get recently played directory elements")
@@ -348,37 +356,16 @@ public class MediaController {
     public ResponseEntity<List<MediaElement>> getRecentlyPlayedDirectoryMediaElements(
             @ApiParam(value = "Number of directory elements to return", required = true) @PathVariable("limit") Integer limit,
             @ApiParam(value = "Directory media type", required = false) @RequestParam(value = "type", required = false) Byte type,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {   
-        List<MediaElement> mediaElements = null;
-        
-        if(type == null) {
-            mediaElements = mediaDao.getRecentlyPlayedDirectoryElements();
-        } else {
-            if(type == MediaElement.DirectoryMediaType.AUDIO) {
-                mediaElements = mediaDao.getRecentlyPlayedAudioDirectoryElements();
-            } else if(type == MediaElement.DirectoryMediaType.VIDEO) {
-                mediaElements = mediaDao.getRecentlyPlayedVideoDirectoryElements();
-            }
-        }
-        
-        if (mediaElements == null) {
+        if(type != null && type != MediaElement.DirectoryMediaType.AUDIO && type != MediaElement.DirectoryMediaType.VIDEO) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
-        
-        // Trim list to specified limit
-        if(mediaElements.size() > limit) {
-            mediaElements = mediaElements.subList(0, limit);
-        }
-        
-        return new ResponseEntity<>(mediaElements, HttpStatus.OK);
+        return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                (key, id, count) -> mediaDao.getRecentlyPlayedDirectoryElements(type, key == null ? null : Timestamp.valueOf(key), id, count),
+                MediaElement::getLastPlayed);
     }
 
     @ApiOperation(value = "Get list of artists")
@@ -388,36 +375,16 @@ public class MediaController {
         @ApiResponse(code = HttpServletResponse.SC_FORBIDDEN, message = "User is not permitted to access content")
     })
     @RequestMapping(value="/artist", method=RequestMethod.GET)
-    public ResponseEntity<List<String>> getArtists(HttpServletRequest request) {
-        List<MediaElement> mediaElements = mediaDao.getArtists();
-        
-        if(mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
-        
-        // Process artist list
-        List<String> artists = new ArrayList<>();
-        
-        for(MediaElement mediaElement : mediaElements) {
-            if(mediaElement.getArtist() != null && !mediaElement.getArtist().isEmpty()) {
-                if(!artists.contains(mediaElement.getArtist())) {
-                    artists.add(mediaElement.getArtist());
-                }
-            }
-        }
-        
-        if(artists.isEmpty()) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    public ResponseEntity<List<String>> getArtists(
+            @ApiParam(value = "Maximum number of artists to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
+            HttpServletRequest request)
+    {
+        if(limit != null) {
+            return getNamePage(request.getUserPrincipal().getName(), after, limit, MediaGroupType.ARTIST);
         }
         
-        return new ResponseEntity<>(artists, HttpStatus.OK);
+        return getNames(request.getUserPrincipal().getName(), mediaDao.getMediaGroups(MediaGroupType.ARTIST));
     }
 
     @ApiOperation(value = "Get list of album artists")
@@ -427,36 +394,16 @@ public class MediaController {
         @ApiResponse(code = HttpServletResponse.SC_FORBIDDEN, message = "User is not permitted to access content")
     })
     @RequestMapping(value="/albumartist", method=RequestMethod.GET)
-    public ResponseEntity<List<String>> getAlbumArtists(HttpServletRequest request) {
-        List<MediaElement> mediaElements = mediaDao.getAlbumArtists();
-        
-        if(mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
-        
-        // Process artist list
-        List<String> artists = new ArrayList<>();
-        
-        for(MediaElement mediaElement : mediaElements) {
-            if(mediaElement.getAlbumArtist() != null && !mediaElement.getAlbumArtist().isEmpty()) {
-                if(!artists.contains(mediaElement.getAlbumArtist())) {
-                    artists.add(mediaElement.getAlbumArtist());
-                }
-            }
-        }
-        
-        if(artists.isEmpty()) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    public ResponseEntity<List<String>> getAlbumArtists(
+            @ApiParam(value = "Maximum number of album artists to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
+            HttpServletRequest request)
+    {
+        if(limit != null) {
+            return getNamePage(request.getUserPrincipal().getName(), after, limit, MediaGroupType.ALBUM_ARTIST);
         }
         
-        return new ResponseEntity<>(artists, HttpStatus.OK);
+        return getNames(request.getUserPrincipal().getName(), mediaDao.getMediaGroups(MediaGroupType.ALBUM_ARTIST));
     }
 
     @ApiOperation(value = "Get list of albums")
@@ -466,36 +413,16 @@ public class MediaController {
         @ApiResponse(code = HttpServletResponse.SC_FORBIDDEN, message = "User is not permitted to access content")
     })
     @RequestMapping(value="/album", method=RequestMethod.GET)
-    public ResponseEntity<List<String>> getAlbums(HttpServletRequest request) {
-        List<MediaElement> mediaElements = mediaDao.getAlbums();
-        
-        if(mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
-        
-        // Process album list
-        List<String> albums = new ArrayList<>();
-        
-        for(MediaElement mediaElement : mediaElements) {
-            if(mediaElement.getAlbum() != null && !mediaElement.getAlbum().isEmpty()) {
-                if(!albums.contains(mediaElement.getAlbum())) {
-                    albums.add(mediaElement.getAlbum());
-                }
-            }
-        }
-        
-        if(albums.isEmpty()) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    public ResponseEntity<List<String>> getAlbums(
+            @ApiParam(value = "Maximum number of albums to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
+            HttpServletRequest request)
+    {
+        if(limit != null) {
+            return getNamePage(request.getUserPrincipal().getName(), after, limit, MediaGroupType.ALBUM);
         }
         
-        return new ResponseEntity<>(albums, HttpStatus.OK);
+        return getNames(request.getUserPrincipal().getName(), mediaDao.getMediaGroups(MediaGroupType.ALBUM));
     }
 
     @ApiOperation(value = "Get list of albums for artist")
@@ -507,8 +434,14 @@ public class MediaController {
     @RequestMapping(value="/artist/{artist}/album", method=RequestMethod.GET)
     public ResponseEntity<List<String>> getAlbumsByArtist(
             @ApiParam(value = "Artist", required = true) @PathVariable("artist") String artist,
+            @ApiParam(value = "Maximum number of albums to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
+        if(limit != null) {
+            return getAlbumPage(request.getUserPrincipal().getName(), after, limit, (key, afterID, count) -> mediaDao.getAlbumsByArtist(artist, key, count));
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getAlbumsByArtist(artist);
         
         if(mediaElements == null) {
@@ -522,22 +455,7 @@ public class MediaController {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
         
-        // Process album list
-        List<String> albums = new ArrayList<>();
-        
-        for(MediaElement mediaElement : mediaElements) {
-            if(mediaElement.getAlbum() != null && !mediaElement.getAlbum().isEmpty()) {
-                if(!albums.contains(mediaElement.getAlbum())) {
-                    albums.add(mediaElement.getAlbum());
-                }
-            }
-        }
-        
-        if(albums.isEmpty()) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        
-        return new ResponseEntity<>(albums, HttpStatus.OK);
+        return getAlbumNames(mediaElements, new HttpHeaders());
     }
     
     @ApiOperation(value = "Get list of albums for album artist")
@@ -549,8 +467,14 @@ public class MediaController {
     @RequestMapping(value="/albumartist/{albumartist}/album", method=RequestMethod.GET)
     public ResponseEntity<List<String>> getAlbumsByAlbumArtist(
             @ApiParam(value = "Album Artist", required = true) @PathVariable("albumartist") String albumArtist,
+            @ApiParam(value = "Maximum number of albums to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
+        if(limit != null) {
+            return getAlbumPage(request.getUserPrincipal().getName(), after, limit, (key, afterID, count) -> mediaDao.getAlbumsByAlbumArtist(albumArtist, key, count));
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getAlbumsByAlbumArtist(albumArtist);
         
         if(mediaElements == null) {
@@ -564,22 +488,7 @@ public class MediaController {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
         
-        // Process album list
-        List<String> albums = new ArrayList<>();
-        
-        for(MediaElement mediaElement : mediaElements) {
-            if(mediaElement.getAlbum() != null && !mediaElement.getAlbum().isEmpty()) {
-                if(!albums.contains(mediaElement.getAlbum())) {
-                    albums.add(mediaElement.getAlbum());
-                }
-            }
-        }
-        
-        if(albums.isEmpty()) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        
-        return new ResponseEntity<>(albums, HttpStatus.OK);
+        return getAlbumNames(mediaElements, new HttpHeaders());
     }
 
     @ApiOperation(value = "Get media elements by artist and album")
@@ -592,10 +501,18 @@ public class MediaController {
     public ResponseEntity<List<MediaElement>> getMediaElementsByArtistAndAlbum(
             @ApiParam(value = "Artist", required = true) @PathVariable("artist") String artist,
             @ApiParam(value = "Album", required = true) @PathVariable("album") String album,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Fetching media elements for artist '" + artist + "' and album '" + album + "'", null);
         
+        if(limit != null) {
+            return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                    (key, afterID, count) -> mediaDao.getMediaElementsByArtistAndAlbum(artist, album, afterID, count),
+                    (mediaElement) -> null);
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getMediaElementsByArtistAndAlbum(artist, album);
         
         if (mediaElements == null) {
@@ -622,9 +539,17 @@ public class MediaController {
     public ResponseEntity<List<MediaElement>> getMediaElementsByAlbumArtistAndAlbum(
             @ApiParam(value = "Album Artist", required = true) @PathVariable("albumartist") String albumArtist,
             @ApiParam(value = "Album", required = true) @PathVariable("album") String album,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Fetching media elements for album artist '" + albumArtist + "' and album '" + album + "'", null);
+        
+        if(limit != null) {
+            return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                    (key, afterID, count) -> mediaDao.getMediaElementsByAlbumArtistAndAlbum(albumArtist, album, afterID, count),
+                    (mediaElement) -> null);
+        }
 
         List<MediaElement> mediaElements = mediaDao.getMediaElementsByAlbumArtistAndAlbum(albumArtist, album);
 
@@ -651,10 +576,18 @@ public class MediaController {
     @RequestMapping(value="/artist/{artist}", method=RequestMethod.GET)
     public ResponseEntity<List<MediaElement>> getMediaElementsByArtist(
             @ApiParam(value = "Artist", required = true) @PathVariable("artist") String artist,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Fetching media elements for artist '" + artist + "'", null);
         
+        if(limit != null) {
+            return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                    (key, afterID, count) -> mediaDao.getMediaElementsByArtist(artist, afterID, count),
+                    (mediaElement) -> null);
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getMediaElementsByArtist(artist);
         
         if (mediaElements == null) {
@@ -680,10 +613,18 @@ public class MediaController {
     @RequestMapping(value="/albumartist/{albumartist}", method=RequestMethod.GET)
     public ResponseEntity<List<MediaElement>> getMediaElementsByAlbumArtist(
             @ApiParam(value = "Album Artist", required = true) @PathVariable("albumartist") String albumArtist,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Fetching media elements for album artist '" + albumArtist + "'", null);
         
+        if(limit != null) {
+            return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                    (key, afterID, count) -> mediaDao.getMediaElementsByAlbumArtist(albumArtist, afterID, count),
+                    (mediaElement) -> null);
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getMediaElementsByAlbumArtist(albumArtist);
         
         if (mediaElements == null) {
@@ -709,10 +650,18 @@ public class MediaController {
     @RequestMapping(value="/album/{album}", method=RequestMethod.GET)
     public ResponseEntity<List<MediaElement>> getMediaElementsByAlbum(
             @ApiParam(value = "Album", required = true) @PathVariable("album") String album,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Fetching media elements for album '" + album + "'", null);
         
+        if(limit != null) {
+            return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                    (key, afterID, count) -> mediaDao.getMediaElementsByAlbum(album, afterID, count),
+                    (mediaElement) -> null);
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getMediaElementsByAlbum(album);
         
         if (mediaElements == null) {
@@ -736,36 +685,16 @@ public class MediaController {
         @ApiResponse(code = HttpServletResponse.SC_FORBIDDEN, message = "User is not permitted to access content")
     })
     @RequestMapping(value="/collection", method=RequestMethod.GET)
-    public ResponseEntity<List<String>> getCollections(HttpServletRequest request) {
-        List<MediaElement> mediaElements = mediaDao.getCollections();
-        
-        if(mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        }
-        
-        // Process for user
-        mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
-        
-        if (mediaElements == null) {
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        }
-        
-        // Process collection list
-        List<String> collections = new ArrayList<>();
-        
-        for(MediaElement mediaElement : mediaElements) {
-            if(mediaElement.getCollection() != null && !mediaElement.getCollection().isEmpty()) {
-                if(!collections.contains(mediaElement.getCollection())) {
-                    collections.add(mediaElement.getCollection());
-                }
-            }
-        }
-        
-        if(collections.isEmpty()) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    public ResponseEntity<List<String>> getCollections(
+            @ApiParam(value = "Maximum number of collections to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
+            HttpServletRequest request)
+    {
+        if(limit != null) {
+            return getNamePage(request.getUserPrincipal().getName(), after, limit, MediaGroupType.COLLECTION);
         }
         
-        return new ResponseEntity<>(collections, HttpStatus.OK);
+        return getNames(request.getUserPrincipal().getName(), mediaDao.getMediaGroups(MediaGroupType.COLLECTION));
     }
 
     @ApiOperation(value = "Get media elements by collection")
@@ -777,8 +706,16 @@ public class MediaController {
     @RequestMapping(value="/collection/{collection}", method=RequestMethod.GET)
     public ResponseEntity<List<MediaElement>> getMediaElementsByCollection(
             @ApiParam(value = "Collection", required = true) @PathVariable("collection") String collection,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
+        if(limit != null) {
+            return getMediaElementPage(request.getUserPrincipal().getName(), after, limit,
+                    (key, afterID, count) -> mediaDao.getMediaElementsByCollection(collection, afterID, count),
+                    (mediaElement) -> null);
+        }
+        
         List<MediaElement> mediaElements = mediaDao.getMediaElementsByCollection(collection);
         
         if (mediaElements == null) {
@@ -847,4 +784,229 @@ public class MediaController {
         
         return new ResponseEntity<>(directories, HttpStatus.OK);
     }
+    
+    //
+    // Paging
+    //
+    
+    private interface MediaElementPageQuery {
+        List<MediaElement> get(String afterKey, UUID afterID, int limit);
+    }
+    
+    // Collects a page of media elements the user can access, fetching further rows from the database as required
+    private ResponseEntity<List<MediaElement>> getMediaElementPage(String username, String after, int limit, MediaElementPageQuery query, Function<MediaElement, Object> sortKey) {
+        String afterKey = null;
+        UUID afterID = null;
+        
+        if(limit <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        
+        if(after != null) {
+            String[] keys = CursorUtils.decode(after);
+            
+            // Cursors after an element with no sort key only contain its ID
+            if(keys == null || keys.length < 1 || keys.length > 2) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            
+            afterKey = keys.length == 2 ? keys[0] : null;
+            
+            try {
+                afterID = UUID.fromString(keys[keys.length - 1]);
+            } catch(IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+        }
+        
+        List<MediaElement> page = new ArrayList<>();
+        MediaElement position = null;
+        boolean more = true;
+        
+        while(more && page.size() < limit) {
+            List<MediaElement> mediaElements;
+            
+            try {
+                mediaElements = query.get(afterKey, afterID, limit);
+            } catch(IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            
+            if(mediaElements == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            
+            if(mediaElements.isEmpty()) {
+                more = false;
+                break;
+            }
+            
+            more = mediaElements.size() == limit;
+            position = mediaElements.get(mediaElements.size() - 1);
+            afterKey = Objects.toString(sortKey.apply(position), null);
+            afterID = position.getID();
+            
+            // Process for user
+            mediaElements = userService.processMediaElementsForUser(username, mediaElements);
+            
+            if(mediaElements == null) {
+                return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+            }
+            
+            for(MediaElement mediaElement : mediaElements) {
+                if(page.size() == limit) {
+                    // Resume after the last element returned rather than the last element read
+                    position = page.get(page.size() - 1);
+                    more = true;
+                    break;
+                }
+                
+                page.add(mediaElement);
+            }
+        }
+        
+        if(page.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        HttpHeaders headers = new HttpHeaders();
+        
+        if(more) {
+            Object key = sortKey.apply(position);
+            headers.set(NEXT_CURSOR_HEADER, key == null ? CursorUtils.encode(position.getID().toString()) : CursorUtils.encode(String.valueOf(key), position.getID().toString()));
+        }
+        
+        return new ResponseEntity<>(page, headers, HttpStatus.OK);
+    }
+    
+    // Collects a page of albums the user can access. Albums are read one element per album so the album name is the
+    // only sort key.
+    private ResponseEntity<List<String>> getAlbumPage(String username, String after, int limit, MediaElementPageQuery query) {
+        ResponseEntity<List<MediaElement>> page = getMediaElementPage(username, after, limit, query, MediaElement::getAlbum);
+        
+        if(!page.hasBody()) {
+            return new ResponseEntity<>(page.getStatusCode());
+        }
+        
+        return getAlbumNames(page.getBody(), page.getHeaders());
+    }
+    
+    // Returns the distinct album names of media elements
+    private ResponseEntity<List<String>> getAlbumNames(List<MediaElement> mediaElements, HttpHeaders headers) {
+        List<String> albums = new ArrayList<>();
+        
+        for(MediaElement mediaElement : mediaElements) {
+            if(mediaElement.getAlbum() != null && !mediaElement.getAlbum().isEmpty()) {
+                if(!albums.contains(mediaElement.getAlbum())) {
+                    albums.add(mediaElement.getAlbum());
+                }
+            }
+        }
+        
+        if(albums.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        return new ResponseEntity<>(albums, headers, HttpStatus.OK);
+    }
+    
+    // Returns the distinct names of media groups the user can access
+    private ResponseEntity<List<String>> getNames(String username, List<MediaGroup> mediaGroups) {
+        if(mediaGroups == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        // Process for user
+        mediaGroups = userService.processMediaGroupsForUser(username, mediaGroups);
+        
+        if (mediaGroups == null) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        
+        // Groups are ordered by name so duplicates are adjacent
+        Set<String> names = new LinkedHashSet<>();
+        mediaGroups.forEach((mediaGroup) -> names.add(mediaGroup.getName()));
+        
+        if(names.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        return new ResponseEntity<>(new ArrayList<>(names), HttpStatus.OK);
+    }
+    
+    // Collects a page of distinct names from media groups the user can access, fetching further rows from the database as required
+    private ResponseEntity<List<String>> getNamePage(String username, String after, int limit, byte type) {
+        if(limit <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        
+        if(after != null) {
+            String[] keys = CursorUtils.decode(after);
+            
+            if(keys == null || keys.length != 1) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            
+            after = keys[0];
+        }
+        
+        Set<String> page = new LinkedHashSet<>();
+        String position = null;
+        boolean more = true;
+        
+        while(more && page.size() < limit) {
+            List<MediaGroup> mediaGroups = mediaDao.getMediaGroups(type, after, limit);
+            
+            if(mediaGroups == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            
+            if(mediaGroups.isEmpty()) {
+                more = false;
+                break;
+            }
+            
+            // Groups are ordered by name so the last group gives the position of this page
+            Set<String> names = new LinkedHashSet<>();
+            mediaGroups.forEach((mediaGroup) -> names.add(mediaGroup.getName()));
+            more = names.size() >= limit;
+            position = mediaGroups.get(mediaGroups.size() - 1).getName();
+            after = position;
+            
+            // Process for user
+            mediaGroups = userService.processMediaGroupsForUser(username, mediaGroups);
+            
+            if(mediaGroups == null) {
+                return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+            }
+            
+            for(MediaGroup mediaGroup : mediaGroups) {
+                if(page.contains(mediaGroup.getName())) {
+                    continue;
+                }
+                
+                if(page.size() == limit) {
+                    // Resume after the last name returned rather than the last name read
+                    position = null;
+                    more = true;
+                    break;
+                }
+                
+                page.add(mediaGroup.getName());
+            }
+        }
+        
+        if(page.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        List<String> names = new ArrayList<>(page);
+        HttpHeaders headers = new HttpHeaders();
+        
+        if(more) {
+            headers.set(NEXT_CURSOR_HEADER, CursorUtils.encode(position == null ? names.get(names.size() - 1) : position));
+        }
+        
+        return new ResponseEntity<>(names, headers, HttpStatus.OK);
+    }
 }
\ No newline at end of file
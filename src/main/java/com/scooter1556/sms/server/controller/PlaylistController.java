@@ -12,6 +12,7 @@ import com.scooter1556.sms.server.domain.PlaylistContent;
 import com.scooter1556.sms.server.service.LogService;
 import com.scooter1556.sms.server.service.SessionService;
 import com.scooter1556.sms.server.service.UserService;
+import com.scooter1556.sms.server.utilities.CursorUtils;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -24,6 +25,7 @@ import java.util.UUID;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -275,8 +277,30 @@ public class PlaylistController {
     public ResponseEntity<List<MediaElement>> getPlaylistContents(
             @ApiParam(value = "ID of the playlist", required = true) @PathVariable("id") UUID id,
             @ApiParam(value = "Return playlist content in a randomised order", defaultValue = "false", required = false) @RequestParam(value="random", required = false) Boolean random,
+            @ApiParam(value = "Maximum number of media elements to return", required = false) @RequestParam(value = "limit", required = false) Integer limit,
+            @ApiParam(value = "Cursor returned with the previous page", required = false) @RequestParam(value = "after", required = false) String after,
             HttpServletRequest request)
     {
+        UUID afterID = null;
+        
+        if(limit != null && limit <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        
+        if(after != null) {
+            String[] keys = CursorUtils.decode(after);
+            
+            if(keys == null || keys.length != 1) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            
+            try {
+                afterID = UUID.fromString(keys[0]);
+            } catch(IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+        }
+        
         Playlist playlist = mediaDao.getPlaylistByID(id);
 
         if(playlist == null) {
@@ -288,12 +312,19 @@ public class PlaylistController {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
-        // Retrieve content
-        List<MediaElement> mediaElements = mediaDao.getPlaylistContent(id);
+        // Retrieve content, a page at a time if a limit is given
+        List<MediaElement> mediaElements = limit == null ? mediaDao.getPlaylistContent(id) : mediaDao.getPlaylistContent(id, afterID, limit);
 
         if(mediaElements == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
+        
+        // Pages may come back short once filtered for the user so the cursor is taken before filtering
+        HttpHeaders headers = new HttpHeaders();
+        
+        if(limit != null && mediaElements.size() == limit) {
+            headers.set(MediaController.NEXT_CURSOR_HEADER, CursorUtils.encode(mediaElements.get(mediaElements.size() - 1).getID().toString()));
+        }
 
         // Process conents for user
         mediaElements = userService.processMediaElementsForUser(request.getUserPrincipal().getName(), mediaElements);
@@ -309,6 +340,6 @@ public class PlaylistController {
             }
         }
 
-        return new ResponseEntity<>(mediaElements, HttpStatus.OK);
+        return new ResponseEntity<>(mediaElements, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
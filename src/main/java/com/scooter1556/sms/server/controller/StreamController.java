@@ -41,9 +41,9 @@ import com.scooter1556.sms.server.io.FileDownloadProcess;
 import com.scooter1556.sms.server.io.SMSProcess;
 import com.scooter1556.sms.server.service.AdaptiveStreamingService;
 import com.scooter1556.sms.server.service.LogService;
-import com.scooter1556.sms.server.service.ScannerService;
 import com.scooter1556.sms.server.service.SessionService;
 import com.scooter1556.sms.server.service.SettingsService;
+import com.scooter1556.sms.server.service.TaskService;
 import com.scooter1556.sms.server.service.TranscodeService;
 import com.scooter1556.sms.server.utilities.MediaUtils;
 import com.scooter1556.sms.server.utilities.TranscodeUtils;
@@ -60,6 +60,7 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -97,7 +98,7 @@ public class StreamController {
     private SessionService sessionService;
 
     @Autowired
-    private ScannerService scannerService;
+    private TaskService taskService;
 
     @ApiOperation(value = "Get adaptive streaming playlist", hidden = true)
     @ResponseBody
@@ -440,20 +441,22 @@ public class StreamController {
                 // Create and populate a new job
                 job = new Job(session.getId());
 
-                // Determine job type, validate quality and fetch available streams
+                // Determine job type and validate quality
                 if(mediaElement.getType() == MediaElementType.AUDIO && AudioQuality.isValid(clientProfile.getAudioQuality())) {
                     job.setType(JobType.AUDIO_STREAM);
-                    mediaElement.setAudioStreams(mediaDao.getAudioStreamsByMediaElementId(meid));
                 } else if(mediaElement.getType() == MediaElementType.VIDEO && VideoQuality.isValid(clientProfile.getVideoQuality())) {
                     job.setType(JobType.VIDEO_STREAM);
-                    mediaElement.setVideoStreams(mediaDao.getVideoStreamsByMediaElementId(meid));
-                    mediaElement.setAudioStreams(mediaDao.getAudioStreamsByMediaElementId(meid));
-                    mediaElement.setSubtitleStreams(mediaDao.getSubtitleStreamsByMediaElementId(meid));
                 } else {
                     LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Invalid transcode request.", null);
                     response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid transcode request.");
                     return;
                 }
+                
+                // Fetch available streams
+                if(!mediaDao.loadStreams(Collections.singletonList(mediaElement))) {
+                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to retrieve streams for media element with ID " + meid + ".");
+                    return;
+                }
 
                 // Set media element in job
                 job.setMediaElement(mediaElement);
@@ -484,10 +487,8 @@ public class StreamController {
                     // Add job to session
                     session.addJob(job);
 
-                    // Stop deep scan if necessary
-                    if(job.getType() == Job.JobType.VIDEO_STREAM) {
-                        scannerService.stopDeepScan();
-                    }
+                    // Throttle background tasks while the job is active
+                    taskService.updateLoad();
 
                     // If transcode is required start the transcode process
                     if(transcodeProfile.getType() > StreamType.DIRECT) {
@@ -616,19 +617,20 @@ public class StreamController {
             // Create and populate a new job
             job = new Job(session.getId());
 
-            // Determine job type, validate quality and fetch available streams
+            // Determine job type and validate quality
             if(mediaElement.getType() == MediaElementType.AUDIO && AudioQuality.isValid(clientProfile.getAudioQuality())) {
                 job.setType(JobType.AUDIO_STREAM);
-                mediaElement.setAudioStreams(mediaDao.getAudioStreamsByMediaElementId(meid));
             } else if(mediaElement.getType() == MediaElementType.VIDEO && VideoQuality.isValid(clientProfile.getVideoQuality())) {
                 job.setType(JobType.VIDEO_STREAM);
-                mediaElement.setVideoStreams(mediaDao.getVideoStreamsByMediaElementId(meid));
-                mediaElement.setAudioStreams(mediaDao.getAudioStreamsByMediaElementId(meid));
-                mediaElement.setSubtitleStreams(mediaDao.getSubtitleStreamsByMediaElementId(meid));
             } else {
                 LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Invalid transcode request.", null);
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
+            
+            // Fetch available streams
+            if(!mediaDao.loadStreams(Collections.singletonList(mediaElement))) {
+                return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
 
             // Set media element in job
             job.setMediaElement(mediaElement);
@@ -24,44 +24,138 @@
 package com.scooter1556.sms.server.dao;
 
 import com.scooter1556.sms.server.database.MediaDatabase;
+import static com.scooter1556.sms.server.database.MediaDatabase.FOLDER_ID;
+import static com.scooter1556.sms.server.database.MediaDatabase.FOLDER_SUBTREE;
 import com.scooter1556.sms.server.database.MediaDatabase.AudioStreamMapper;
 import com.scooter1556.sms.server.database.MediaDatabase.MediaElementMapper;
+import com.scooter1556.sms.server.database.MediaDatabase.MediaGroupMapper;
 import com.scooter1556.sms.server.database.MediaDatabase.PlaylistMapper;
 import com.scooter1556.sms.server.database.MediaDatabase.SubtitleStreamMapper;
 import com.scooter1556.sms.server.database.MediaDatabase.VideoStreamMapper;
+import com.scooter1556.sms.server.domain.CacheStats;
 import com.scooter1556.sms.server.domain.MediaElement;
 import com.scooter1556.sms.server.domain.MediaElement.AudioStream;
 import com.scooter1556.sms.server.domain.MediaElement.MediaElementType;
 import com.scooter1556.sms.server.domain.MediaElement.SubtitleStream;
 import com.scooter1556.sms.server.domain.MediaElement.VideoStream;
+import com.scooter1556.sms.server.domain.MediaGroup;
+import com.scooter1556.sms.server.domain.MediaGroup.MediaGroupType;
+import com.scooter1556.sms.server.domain.MediaIndexEntry;
 import com.scooter1556.sms.server.domain.Playlist;
 import com.scooter1556.sms.server.service.LogService;
+import com.scooter1556.sms.server.service.SettingsService;
+import com.scooter1556.sms.server.utilities.MediaElementCache;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.apache.commons.io.FilenameUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jca.cci.InvalidResultSetAccessException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Component
 public class MediaDao {
     
     private static final String CLASS_NAME = "MediaDao";
     
+    // Maximum number of media elements in each stream query
+    private static final int STREAM_QUERY_CHUNK = 500;
+    
+    // Number of media elements read at a time when searching a directory in random order
+    private static final int RANDOM_PAGE_SIZE = 20;
+    
+    // Number of random seeks made for each media element requested before the remainder is filled from the index
+    private static final int RANDOM_SEEK_ATTEMPTS = 2;
+    
     @Autowired
     private MediaDatabase mediaDatabase;
+    
+    private final MediaElementCache cache = new MediaElementCache("MediaElement", SettingsService.getInstance().getMediaElementCache());
+    
+    //
+    // Transactions
+    //
+    
+    /**
+     * Runs a group of database operations in a single transaction.
+     * 
+     * The transaction is rolled back if the operations return false.
+     *
+     * @param operations Database operations to perform.
+     * @return True if all operations were committed.
+     */
+    public boolean runInTransaction(final BooleanSupplier operations) {
+        try {
+            Boolean result = mediaDatabase.getTransactionTemplate().execute(status -> {
+                if(!operations.getAsBoolean()) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                
+                return true;
+            });
+            
+            return Boolean.TRUE.equals(result);
+        } catch (TransactionException | DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to complete database transaction!", e);
+            return false;
+        }
+    }
+        
+    //
+    // Cache
+    //
+    
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+    
+    // Invalidates cached media elements now and again once the current transaction completes
+    private void invalidate(final Runnable invalidation) {
+        invalidation.run();
+        
+        // Uncommitted changes are not visible to other connections so they could re-cache old rows
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidation.run();
+                }
+            });
+        }
+    }
         
     //
     // Media Elements
     //
     
     public boolean createMediaElements(final List<MediaElement> mediaElements) {
-        String sql = "INSERT INTO MediaElement (ID,Type,DirectoryType,Path,ParentPath,LastScanned,Excluded,Format,Size,Duration,Bitrate,Title,Artist,AlbumArtist,Album,Year,DiscNumber,DiscSubtitle,TrackNumber,Genre,Rating,Tagline,Description,Certificate,Collection,ReplaygainTrack,ReplaygainAlbum) " +
-                                "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+        String sql = "INSERT INTO MediaElement (ID,Type,DirectoryType,Path,FolderID,LastScanned,Excluded,Format,Size,Duration,Bitrate,Title,Artist,AlbumArtist,Album,Year,DiscNumber,DiscSubtitle,TrackNumber,Genre,Rating,Tagline,Description,Certificate,Collection,ReplaygainTrack,ReplaygainAlbum,Modified,FileKey,Fingerprint) " +
+                                "VALUES (?,?,?,?," + FOLDER_ID + ",?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
         
         try {
             mediaDatabase.getJdbcTemplate().batchUpdate(sql, new BatchPreparedStatementSetter() {	
@@ -95,6 +189,9 @@ public class MediaDao {
                     ps.setString(25, mediaElement.getCollection());
                     ps.setFloat(26, mediaElement.getReplaygainTrack());
                     ps.setFloat(27, mediaElement.getReplaygainAlbum());
+                    ps.setObject(28, mediaElement.getModified());
+                    ps.setString(29, mediaElement.getFileKey());
+                    ps.setString(30, mediaElement.getFingerprint());
                 }
 
                 @Override
@@ -112,7 +209,11 @@ public class MediaDao {
     
     public boolean removeMediaElement(UUID id) {
         try {
+            List<String> parentPaths = mediaDatabase.getJdbcTemplate().queryForList("SELECT Folder.Path FROM MediaElement JOIN Folder ON MediaElement.FolderID=Folder.ID WHERE MediaElement.ID=?", String.class, id);
             mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaElement WHERE ID=?", id);
+            invalidate(() -> cache.remove(id));
+            updateMediaGroups(parentPaths);
+            parentPaths.forEach(this::removeEmptyFolders);
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -125,6 +226,9 @@ public class MediaDao {
     public boolean removeAllMediaElements() {
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaElement");
+            mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaGroup");
+            invalidate(cache::clear);
+            removeEmptyFolders(null);
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -134,16 +238,25 @@ public class MediaDao {
         return true;
     }
     
-    public void removeDeletedMediaElements(String path, Timestamp lastScanned) {            
-        mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaElement WHERE ParentPath LIKE ? AND LastScanned != ?", new Object[] {path + "%",lastScanned});
+    public void removeDeletedMediaElements(String path, Timestamp lastScanned) {
+        Object[] params = new Object[] {path,path,lastScanned};
+        
+        // Media groups need to be rebuilt for directories which lose media elements
+        List<String> parentPaths = mediaDatabase.getJdbcTemplate().queryForList("SELECT DISTINCT Path FROM Folder WHERE ID IN (SELECT FolderID FROM MediaElement WHERE (Path=? OR " + FOLDER_SUBTREE + ") AND LastScanned < ?)", String.class, params);
+        mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaElement WHERE (Path=? OR " + FOLDER_SUBTREE + ") AND LastScanned < ?", params);
+        invalidate(() -> cache.remove(path));
+        updateMediaGroups(parentPaths);
     }
     
     public void removeMediaElementsByPath(String path) {            
-        mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaElement WHERE ParentPath LIKE ?", path + "%");
+        mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaElement WHERE " + FOLDER_SUBTREE, path);
+        invalidate(() -> cache.remove(path));
+        mediaDatabase.getJdbcTemplate().update("DELETE FROM MediaGroup WHERE " + FOLDER_SUBTREE, path);
+        removeEmptyFolders(path);
     }
     
     public boolean updateMediaElementsByID(final List<MediaElement> mediaElements) {
-        String sql = "UPDATE MediaElement SET DirectoryType=?,LastScanned=?,Excluded=?,Size=?,Duration=?,Bitrate=?,Title=?,Artist=?,AlbumArtist=?,Album=?,Year=?,DiscNumber=?,DiscSubtitle=?,TrackNumber=?,Genre=?,Rating=?,Tagline=?,Description=?,Certificate=?,Collection=?,ReplaygainTrack=?,ReplaygainAlbum=? WHERE ID=?";
+        String sql = "UPDATE MediaElement SET DirectoryType=?,LastScanned=?,Excluded=?,Size=?,Duration=?,Bitrate=?,Title=?,Artist=?,AlbumArtist=?,Album=?,Year=?,DiscNumber=?,DiscSubtitle=?,TrackNumber=?,Genre=?,Rating=?,Tagline=?,Description=?,Certificate=?,Collection=?,ReplaygainTrack=?,ReplaygainAlbum=?,Modified=?,FileKey=?,Fingerprint=?,Path=?,FolderID=" + FOLDER_ID + " WHERE ID=?";
         
         try {
             mediaDatabase.getJdbcTemplate().batchUpdate(sql, new BatchPreparedStatementSetter() {	
@@ -172,7 +285,12 @@ public class MediaDao {
                     ps.setString(20, mediaElement.getCollection());
                     ps.setFloat(21, mediaElement.getReplaygainTrack());
                     ps.setFloat(22, mediaElement.getReplaygainAlbum());
-                    ps.setObject(23, mediaElement.getID());
+                    ps.setObject(23, mediaElement.getModified());
+                    ps.setString(24, mediaElement.getFileKey());
+                    ps.setString(25, mediaElement.getFingerprint());
+                    ps.setString(26, mediaElement.getPath());
+                    ps.setString(27, mediaElement.getParentPath());
+                    ps.setObject(28, mediaElement.getID());
                 }
 
                 @Override
@@ -183,13 +301,15 @@ public class MediaDao {
         } catch (DataAccessException e) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to update media element!", e);
             return false;
+        } finally {
+            invalidate(() -> mediaElements.forEach(mediaElement -> cache.remove(mediaElement.getID())));
         }
         
         return true;
     }
     
     public boolean updateMediaElementsByPath(final List<MediaElement> mediaElements) {
-        String sql = "UPDATE MediaElement SET DirectoryType=?,LastScanned=?,Excluded=?,Size=?,Duration=?,Bitrate=?,Title=?,Artist=?,AlbumArtist=?,Album=?,Year=?,DiscNumber=?,DiscSubtitle=?,TrackNumber=?,Genre=?,Rating=?,Tagline=?,Description=?,Certificate=?,Collection=?,ReplaygainTrack=?,ReplaygainAlbum=? WHERE PATH=?";
+        String sql = "UPDATE MediaElement SET DirectoryType=?,LastScanned=?,Excluded=?,Size=?,Duration=?,Bitrate=?,Title=?,Artist=?,AlbumArtist=?,Album=?,Year=?,DiscNumber=?,DiscSubtitle=?,TrackNumber=?,Genre=?,Rating=?,Tagline=?,Description=?,Certificate=?,Collection=?,ReplaygainTrack=?,ReplaygainAlbum=?,Modified=?,FileKey=?,Fingerprint=? WHERE PATH=?";
         
         try {
             mediaDatabase.getJdbcTemplate().batchUpdate(sql, new BatchPreparedStatementSetter() {	
@@ -218,7 +338,10 @@ public class MediaDao {
                     ps.setString(20, mediaElement.getCollection());
                     ps.setFloat(21, mediaElement.getReplaygainTrack());
                     ps.setFloat(22, mediaElement.getReplaygainAlbum());
-                    ps.setString(23, mediaElement.getPath());
+                    ps.setObject(23, mediaElement.getModified());
+                    ps.setString(24, mediaElement.getFileKey());
+                    ps.setString(25, mediaElement.getFingerprint());
+                    ps.setString(26, mediaElement.getPath());
                 }
 
                 @Override
@@ -229,6 +352,8 @@ public class MediaDao {
         } catch (DataAccessException e) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to update media element!", e);
             return false;
+        } finally {
+            invalidate(() -> mediaElements.forEach(mediaElement -> cache.remove(mediaElement.getID())));
         }
         
         return true;
@@ -236,8 +361,12 @@ public class MediaDao {
     
     public boolean updateLastPlayed(UUID id) {
         try{
-            mediaDatabase.getJdbcTemplate().update("UPDATE MediaElement SET LastPlayed=NOW() WHERE ID=?", 
-                                new Object[] {id});
+            final Timestamp lastPlayed = new Timestamp(System.currentTimeMillis());
+            mediaDatabase.getJdbcTemplate().update("UPDATE MediaElement SET LastPlayed=? WHERE ID=?", 
+                                new Object[] {lastPlayed, id});
+            
+            // Keep the cached copy so repeated streams of the same media don't have to read it again
+            invalidate(() -> cache.setLastPlayed(id, lastPlayed));
         } catch (DataAccessException e) {
             return false;
         }
@@ -245,6 +374,10 @@ public class MediaDao {
         return true;
     }
     
+    //
+    // Scan times and file attributes aren't served from the cache so cached media elements are left alone.
+    //
+    
     public boolean updateLastScanned(UUID id, Timestamp lastScanned) {
         try {
             mediaDatabase.getJdbcTemplate().update("UPDATE MediaElement SET LastScanned=? WHERE ID=?", 
@@ -256,6 +389,80 @@ public class MediaDao {
         return true;
     }
     
+    public boolean updateLastScannedByID(final List<UUID> ids, final Timestamp lastScanned) {
+        try {
+            mediaDatabase.getJdbcTemplate().batchUpdate("UPDATE MediaElement SET LastScanned=? WHERE ID=?", new BatchPreparedStatementSetter() {	
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setTimestamp(1, lastScanned);
+                    ps.setObject(2, ids.get(i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return ids.size();
+                }
+            });
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to update last scanned time for media elements!", e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    public boolean updateFileAttributesByID(final List<MediaIndexEntry> entries) {
+        try {
+            mediaDatabase.getJdbcTemplate().batchUpdate("UPDATE MediaElement SET Size=?,Modified=?,FileKey=?,Fingerprint=COALESCE(?,Fingerprint) WHERE ID=?", new BatchPreparedStatementSetter() {	
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    MediaIndexEntry entry = entries.get(i);
+                    ps.setLong(1, entry.getSize());
+                    ps.setObject(2, entry.getModified());
+                    ps.setString(3, entry.getFileKey());
+                    ps.setString(4, entry.getFingerprint());
+                    ps.setObject(5, entry.getID());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return entries.size();
+                }
+            });
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to update file attributes for media elements!", e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns a compact index of the media element at the given path and all media elements below it keyed by path.
+     * 
+     * Rows are streamed from the database so full media elements are never materialised.
+     *
+     * @param path The root path to index.
+     * @return Index of media elements or null if the query failed.
+     */
+    public Map<String, MediaIndexEntry> getMediaElementIndex(String path) {
+        final Map<String, MediaIndexEntry> index = new HashMap<>();
+        
+        try {
+            mediaDatabase.getJdbcTemplate().query("SELECT ID,Type,Path,LastScanned,Size,Modified,FileKey,Fingerprint FROM MediaElement WHERE Path=? OR " + FOLDER_SUBTREE, new Object[] {path,path}, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    index.put(rs.getString("Path"), new MediaIndexEntry((UUID)rs.getObject("ID"), rs.getByte("Type"), rs.getTimestamp("LastScanned").getTime(), rs.getLong("Size"), (Long)rs.getObject("Modified"), rs.getString("FileKey"), rs.getString("Fingerprint")));
+                }
+            });
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to build media element index for path " + path, e);
+            return null;
+        }
+        
+        return index;
+    }
+    
     public List<MediaElement> getMediaElements() {
         try {
             List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement", new MediaElementMapper());
@@ -265,7 +472,32 @@ public class MediaDao {
         }
     }
     
+    /**
+     * Returns a media element, reading it from the database if it isn't cached.
+     * 
+     * The returned media element is a copy so it can be modified freely.
+     *
+     * @param id ID of the media element.
+     * @return The media element or null if it doesn't exist.
+     */
     public MediaElement getMediaElementByID(UUID id) {
+        if(id == null || !cache.isEnabled()) {
+            return getUncachedMediaElementByID(id);
+        }
+        
+        MediaElement mediaElement = cache.get(id);
+        
+        if(mediaElement == null) {
+            long generation = cache.getGeneration();
+            mediaElement = getUncachedMediaElementByID(id);
+            cache.put(mediaElement, generation);
+        }
+        
+        return mediaElement;
+    }
+    
+    // Bypasses the cache for bulk reads which would otherwise evict frequently used elements
+    public MediaElement getUncachedMediaElementByID(UUID id) {
         MediaElement mediaElement = null;
 
         try {
@@ -285,7 +517,50 @@ public class MediaDao {
         return mediaElement;
     }
     
+    /**
+     * Returns media elements which may contain the same content as a file.
+     * 
+     * Elements are matched by content fingerprint or, for elements without a fingerprint,
+     * by file key and size.
+     *
+     * @param fingerprint Content fingerprint of the file.
+     * @param fileKey File system key of the file, if available.
+     * @param size Size of the file.
+     * @return Matching media elements or null if an error occurred.
+     */
+    public List<MediaElement> getMediaElementsByFingerprint(String fingerprint, String fileKey, long size) {
+        try {
+            return mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Fingerprint=? OR (Fingerprint IS NULL AND FileKey=? AND Size=?)", new MediaElementMapper(), new Object[] {fingerprint, fileKey, size});
+        } catch (DataAccessException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns a media element, reading it from the database if it isn't cached.
+     * 
+     * The returned media element is a copy so it can be modified freely.
+     *
+     * @param path Path of the media element.
+     * @return The media element or null if it doesn't exist.
+     */
     public MediaElement getMediaElementByPath(String path) {
+        if(path == null || !cache.isEnabled()) {
+            return getUncachedMediaElementByPath(path);
+        }
+        
+        MediaElement mediaElement = cache.get(path);
+        
+        if(mediaElement == null) {
+            long generation = cache.getGeneration();
+            mediaElement = getUncachedMediaElementByPath(path);
+            cache.put(mediaElement, generation);
+        }
+        
+        return mediaElement;
+    }
+    
+    public MediaElement getUncachedMediaElementByPath(String path) {
         try {
             List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Path=?", new MediaElementMapper(), new Object[] {path});
 
@@ -304,9 +579,9 @@ public class MediaDao {
             List<MediaElement> mediaElements;
                     
             if(type == null) {
-                mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE ParentPath=? ORDER BY Type,Album,DiscNumber,TrackNumber,Year,Title", new MediaElementMapper(), new Object[] {path});
+                mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE FolderID=" + FOLDER_ID + " ORDER BY Type,Album,DiscNumber,TrackNumber,Year,Title", new MediaElementMapper(), new Object[] {path});
             } else {
-                mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE ParentPath=? AND Type=? ORDER BY Type,Album,DiscNumber,TrackNumber,Year,Title", new MediaElementMapper(), new Object[] {path, type});
+                mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE FolderID=" + FOLDER_ID + " AND Type=? ORDER BY Type,Album,DiscNumber,TrackNumber,Year,Title", new MediaElementMapper(), new Object[] {path, type});
             }
             
             return mediaElements;
@@ -315,153 +590,339 @@ public class MediaDao {
         }
     }
     
-    public List<MediaElement> getMediaElementsByName(String name, byte type) {
-        try {
-            List<MediaElement> mediaElements;
-            mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND Path LIKE ?", new MediaElementMapper(), new Object[] {type,"%"+name});
-            
-            return mediaElements;
-        } catch (DataAccessException e) {
-            return null;
+    public List<MediaElement> getMediaElementsByParentPath(String path, Byte type, UUID afterID, int limit) {
+        if(type == null) {
+            return getMediaElementPage("FolderID=" + FOLDER_ID, new Object[] {path}, new String[] {"Type", "Album", "DiscNumber", "TrackNumber", "Year", "Title"}, afterID, limit);
         }
+        
+        return getMediaElementPage("FolderID=" + FOLDER_ID + " AND Type=?", new Object[] {path, type}, new String[] {"Type", "Album", "DiscNumber", "TrackNumber", "Year", "Title"}, afterID, limit);
     }
     
-    public List<MediaElement> getRandomMediaElementsByParentPath(String path) {        
+    // Returns media elements of the given type grouped by file name.
+    // Only the ID, type and path of each media element are populated.
+    public Map<String, List<MediaElement>> getMediaElementFileNameIndex(byte type) {
+        final Map<String, List<MediaElement>> index = new HashMap<>();
+        
         try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE ParentPath=? ORDER BY RAND()", new MediaElementMapper(), new Object[] {path});
-            return mediaElements;
+            mediaDatabase.getJdbcTemplate().query("SELECT ID,Type,Path FROM MediaElement WHERE Type=?", new Object[] {type}, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    MediaElement mediaElement = new MediaElement();
+                    mediaElement.setID((UUID)rs.getObject("ID"));
+                    mediaElement.setType(rs.getByte("Type"));
+                    mediaElement.setPath(rs.getString("Path"));
+                    mediaElement.setParentPath(MediaDatabase.getParentPath(mediaElement.getPath()));
+                    
+                    index.computeIfAbsent(FilenameUtils.getName(mediaElement.getPath()), name -> new ArrayList<>()).add(mediaElement);
+                }
+            });
         } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to build media element file name index", e);
             return null;
         }
+        
+        return index;
     }
     
-    public List<MediaElement> getRandomMediaElements(Byte type) {
-        List<MediaElement> mediaElements;
-
+    //
+    // Media elements are given a uniformly distributed random key when created. Random selection
+    // seeks into the random key index from a random point so it doesn't need to sort every candidate.
+    //
+    
+    /**
+     * Searches the child media elements of a directory in random order.
+     * 
+     * Children are read a page at a time from a random position in the random key
+     * index, wrapping around once, until the function returns a result.
+     *
+     * @param <T> Type of result.
+     * @param path Path of the directory.
+     * @param function Function applied to each child media element.
+     * @return The first non-null result of the function or null if there is none.
+     */
+    public <T> T findRandomMediaElementByParentPath(String path, Function<MediaElement, T> function) {
+        String sql = "SELECT * FROM MediaElement WHERE FolderID=" + FOLDER_ID + " AND RandomKey>? AND RandomKey<=? ORDER BY RandomKey LIMIT ?";
+        final MediaElementMapper mapper = new MediaElementMapper();
+        double start = ThreadLocalRandom.current().nextDouble();
+        
         try {
-            if(type == null) {
-                mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE NOT Excluded ORDER BY RAND() DESC", new MediaElementMapper());
-            } else {
-                mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND NOT Excluded ORDER BY RAND() DESC", new MediaElementMapper(), new Object[] {type});
+            // Read from the random start to the end of the index and then from the beginning up to the start
+            for(double[] range : new double[][] {{start, 1.0}, {-1.0, start}}) {
+                double after = range[0];
+                List<Map.Entry<Double, MediaElement>> page;
+                
+                do {
+                    page = mediaDatabase.getJdbcTemplate().query(sql, (RowMapper<Map.Entry<Double, MediaElement>>) (rs, i) -> new AbstractMap.SimpleEntry<>(rs.getDouble("RandomKey"), mapper.mapRow(rs, i)), new Object[] {path, after, range[1], RANDOM_PAGE_SIZE});
+                    
+                    if(page.isEmpty()) {
+                        break;
+                    }
+                    
+                    after = page.get(page.size() - 1).getKey();
+                    Collections.shuffle(page, ThreadLocalRandom.current());
+                    
+                    for(Map.Entry<Double, MediaElement> entry : page) {
+                        T result = function.apply(entry.getValue());
+                        
+                        if(result != null) {
+                            return result;
+                        }
+                    }
+                } while(page.size() == RANDOM_PAGE_SIZE);
             }
         } catch (DataAccessException e) {
             return null;
         }
         
-        return mediaElements;
+        return null;
     }
     
-    public List<MediaElement> getAlphabeticalMediaElementsByParentPath(String path) {
+    /**
+     * Returns up to the requested number of distinct media elements chosen at random.
+     * 
+     * Each media element is found by a separate seek into the random key index from
+     * a random position, wrapping around to the lowest key. Seeks which find an element
+     * already chosen are repeated a limited number of times after which any remaining
+     * places are filled from a single run of the index, so small libraries still return
+     * as many elements as are available up to the limit.
+     *
+     * @param type Media type or null for all media.
+     * @param limit Maximum number of media elements to return.
+     * @return Media elements in random order or null if an error occurred.
+     */
+    public List<MediaElement> getRandomMediaElements(Byte type, int limit) {
+        String filter = "SELECT * FROM MediaElement WHERE " + (type == null ? "" : "Type=? AND ") + "NOT Excluded AND ";
+        Map<UUID, MediaElement> selected = new HashMap<>();
+        
         try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE ParentPath=? ORDER BY Type,Album,DiscNumber,TrackNumber,Title", new MediaElementMapper(), new Object[] {path});
+            for(int i = 0; i < limit * RANDOM_SEEK_ATTEMPTS && selected.size() < limit; i++) {
+                List<MediaElement> mediaElements = getRandomMediaElementRun(filter, type, ThreadLocalRandom.current().nextDouble(), 1);
+                
+                // Nothing to choose from
+                if(mediaElements.isEmpty()) {
+                    break;
+                }
+                
+                selected.putIfAbsent(mediaElements.get(0).getID(), mediaElements.get(0));
+            }
+            
+            // Fill remaining places with neighbouring elements
+            if(!selected.isEmpty() && selected.size() < limit) {
+                for(MediaElement mediaElement : getRandomMediaElementRun(filter, type, ThreadLocalRandom.current().nextDouble(), limit)) {
+                    if(selected.size() == limit) {
+                        break;
+                    }
+                    
+                    selected.putIfAbsent(mediaElement.getID(), mediaElement);
+                }
+            }
+            
+            List<MediaElement> mediaElements = new ArrayList<>(selected.values());
+            Collections.shuffle(mediaElements, ThreadLocalRandom.current());
             return mediaElements;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getDirectoryElements() {
-        try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND NOT Excluded ORDER BY Title DESC", new MediaElementMapper(), new Object[] {MediaElement.MediaElementType.DIRECTORY});
-            return mediaElements;
-        } catch (DataAccessException e) {
-            return null;
+    // Returns up to the given number of media elements from a position in the random key index, wrapping around once
+    private List<MediaElement> getRandomMediaElementRun(String filter, Byte type, double start, int limit) {
+        List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query(filter + "RandomKey>=? ORDER BY RandomKey LIMIT ?", new MediaElementMapper(), type == null ? new Object[] {start, limit} : new Object[] {type, start, limit});
+        
+        // Wrap around to the lowest random key
+        if(mediaElements.size() < limit) {
+            int remaining = limit - mediaElements.size();
+            mediaElements.addAll(mediaDatabase.getJdbcTemplate().query(filter + "RandomKey<? ORDER BY RandomKey LIMIT ?", new MediaElementMapper(), type == null ? new Object[] {start, remaining} : new Object[] {type, start, remaining}));
         }
+        
+        return mediaElements;
     }
     
-    public List<MediaElement> getRecentlyPlayedDirectoryElements() {
+    public List<MediaElement> getAlphabeticalMediaElementsByParentPath(String path) {
         try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND LastPlayed IS NOT NULL AND NOT Excluded ORDER BY LastPlayed DESC", new MediaElementMapper(), new Object[] {MediaElement.MediaElementType.DIRECTORY});
+            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE FolderID=" + FOLDER_ID + " ORDER BY Type,Album,DiscNumber,TrackNumber,Title", new MediaElementMapper(), new Object[] {path});
             return mediaElements;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getRecentlyAddedDirectoryElements() {
-        try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND NOT Excluded ORDER BY Created DESC", new MediaElementMapper(), new Object[] {MediaElement.MediaElementType.DIRECTORY});
-            return mediaElements;
-        } catch (DataAccessException e) {
-            return null;
-        }
+    //
+    // Directory elements are returned a page at a time using the sort key and ID of the last element as the position.
+    // Elements with no sort key come last. Pass a null ID for the first page and a null key to continue after an
+    // element with no sort key.
+    //
+    
+    public List<MediaElement> getDirectoryElements(String afterTitle, UUID afterID, int limit) {
+        return getDirectoryElementPage("Title", null, false, afterTitle, afterID, limit);
     }
     
-    public List<MediaElement> getRecentlyPlayedVideoDirectoryElements() {
-        try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND DirectoryType=? AND LastPlayed IS NOT NULL AND NOT Excluded ORDER BY LastPlayed DESC", new MediaElementMapper(), new Object[] {MediaElement.MediaElementType.DIRECTORY, MediaElement.DirectoryMediaType.VIDEO});
-            return mediaElements;
-        } catch (DataAccessException e) {
-            return null;
-        }
+    public List<MediaElement> getRecentlyPlayedDirectoryElements(Byte directoryType, Timestamp afterLastPlayed, UUID afterID, int limit) {
+        return getDirectoryElementPage("LastPlayed", directoryType, true, afterLastPlayed, afterID, limit);
     }
     
-    public List<MediaElement> getRecentlyAddedVideoDirectoryElements() {
-        try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND DirectoryType=? AND NOT Excluded ORDER BY Created DESC", new MediaElementMapper(), new Object[] {MediaElement.MediaElementType.DIRECTORY, MediaElement.DirectoryMediaType.VIDEO});
-            return mediaElements;
-        } catch (DataAccessException e) {
-            return null;
-        }
+    public List<MediaElement> getRecentlyAddedDirectoryElements(Byte directoryType, Timestamp afterCreated, UUID afterID, int limit) {
+        return getDirectoryElementPage("Created", directoryType, false, afterCreated, afterID, limit);
     }
     
-    public List<MediaElement> getRecentlyPlayedAudioDirectoryElements() {
+    // Returns directory elements in descending order of a column, optionally restricted to a directory media type
+    // and to elements which have a value for the column. Elements with and without a value are read by separate
+    // seeks so each can be answered from a range of the (Type,<column>,ID) index.
+    private List<MediaElement> getDirectoryElementPage(String column, Byte directoryType, boolean required, Object afterKey, UUID afterID, int limit) {
+        String filter = "SELECT * FROM MediaElement WHERE Type=? AND NOT Excluded" + (directoryType == null ? "" : " AND DirectoryType=?");
+        
         try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND DirectoryType=? AND LastPlayed IS NOT NULL AND NOT Excluded ORDER BY LastPlayed DESC", new MediaElementMapper(), new Object[] {MediaElement.MediaElementType.DIRECTORY, MediaElement.DirectoryMediaType.AUDIO});
+            List<MediaElement> mediaElements = new ArrayList<>();
+            
+            // Elements with a value, unless the previous page already finished with those without one
+            if(afterID == null || afterKey != null) {
+                StringBuilder sql = new StringBuilder(filter).append(" AND ").append(column).append(" IS NOT NULL");
+                List<Object> params = getDirectoryElementParams(directoryType);
+                
+                if(afterID != null) {
+                    sql.append(" AND ").append(column).append("<=? AND (").append(column).append("<? OR ID<?)");
+                    params.add(afterKey);
+                    params.add(afterKey);
+                    params.add(afterID);
+                }
+                
+                sql.append(" ORDER BY ").append(column).append(" DESC, ID DESC LIMIT ?");
+                params.add(limit);
+                
+                mediaElements.addAll(mediaDatabase.getJdbcTemplate().query(sql.toString(), new MediaElementMapper(), params.toArray()));
+            }
+            
+            // Elements without a value come last
+            if(!required && mediaElements.size() < limit) {
+                StringBuilder sql = new StringBuilder(filter).append(" AND ").append(column).append(" IS NULL");
+                List<Object> params = getDirectoryElementParams(directoryType);
+                
+                if(afterID != null && afterKey == null) {
+                    sql.append(" AND ID<?");
+                    params.add(afterID);
+                }
+                
+                sql.append(" ORDER BY ID DESC LIMIT ?");
+                params.add(limit - mediaElements.size());
+                
+                mediaElements.addAll(mediaDatabase.getJdbcTemplate().query(sql.toString(), new MediaElementMapper(), params.toArray()));
+            }
+            
             return mediaElements;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getRecentlyAddedAudioDirectoryElements() {
-        try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND DirectoryType=? AND NOT Excluded ORDER BY Created DESC", new MediaElementMapper(), new Object[] {MediaElement.MediaElementType.DIRECTORY, MediaElement.DirectoryMediaType.AUDIO});
-            return mediaElements;
-        } catch (DataAccessException e) {
-            return null;
+    private List<Object> getDirectoryElementParams(Byte directoryType) {
+        List<Object> params = new ArrayList<>();
+        params.add(MediaElementType.DIRECTORY);
+        
+        if(directoryType != null) {
+            params.add(directoryType);
         }
+        
+        return params;
     }
     
-    public List<MediaElement> getArtists() {
+    //
+    // Media element lists are returned a page at a time using the ID of the last element as the position. The sort
+    // keys of that element are read back so each list keeps its usual order with the ID breaking ties.
+    //
+    
+    // Returns media elements matching a condition which sort after the given element. Null sort keys come first.
+    private List<MediaElement> getMediaElementPage(String condition, Object[] conditionParams, String[] sortKeys, UUID afterID, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM MediaElement WHERE ").append(condition);
+        List<Object> params = new ArrayList<>(Arrays.asList(conditionParams));
+        List<String> keys = new ArrayList<>(Arrays.asList(sortKeys));
+        keys.add("ID");
+        
         try {
-            List<MediaElement> artists = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Artist,ParentPath) * FROM MediaElement WHERE Artist IS NOT NULL ORDER BY Artist", new MediaElementMapper());
-            return artists;
+            if(afterID != null) {
+                Object[] position = new Object[keys.size()];
+                position[sortKeys.length] = afterID;
+                
+                if(sortKeys.length > 0) {
+                    List<Object[]> positions = mediaDatabase.getJdbcTemplate().query("SELECT " + String.join(",", sortKeys) + " FROM MediaElement WHERE ID=?", (rs, row) -> {
+                        Object[] values = new Object[sortKeys.length];
+                        
+                        for(int i = 0; i < sortKeys.length; i++) {
+                            values[i] = rs.getObject(i + 1);
+                        }
+                        
+                        return values;
+                    }, afterID);
+                    
+                    if(positions.isEmpty()) {
+                        throw new IllegalArgumentException("Media element " + afterID + " does not exist");
+                    }
+                    
+                    System.arraycopy(positions.get(0), 0, position, 0, sortKeys.length);
+                }
+                
+                // Equal on each leading key and greater on the next
+                sql.append(" AND (");
+                
+                for(int i = 0; i < keys.size(); i++) {
+                    sql.append(i == 0 ? "(" : " OR (");
+                    
+                    for(int j = 0; j < i; j++) {
+                        sql.append(keys.get(j)).append(position[j] == null ? " IS NULL AND " : "=? AND ");
+                        
+                        if(position[j] != null) {
+                            params.add(position[j]);
+                        }
+                    }
+                    
+                    sql.append(keys.get(i)).append(position[i] == null ? " IS NOT NULL)" : ">?)");
+                    
+                    if(position[i] != null) {
+                        params.add(position[i]);
+                    }
+                }
+                
+                sql.append(")");
+            }
+            
+            sql.append(" ORDER BY ").append(String.join(",", keys)).append(" LIMIT ?");
+            params.add(limit);
+            
+            return mediaDatabase.getJdbcTemplate().query(sql.toString(), new MediaElementMapper(), params.toArray());
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getAlbumArtists() {
+    public List<MediaElement> getAlbumsByArtist(String artist) {
         try {
-            List<MediaElement> albumArtists = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(AlbumArtist,ParentPath) * FROM MediaElement WHERE AlbumArtist IS NOT NULL ORDER BY AlbumArtist", new MediaElementMapper());
-            return albumArtists;
+            List<MediaElement> albums = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Album) * FROM MediaElement WHERE Artist=? AND Album IS NOT NULL ORDER BY Album", new Object[] {artist}, new MediaElementMapper());
+            return albums;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getAlbums() {
+    public List<MediaElement> getAlbumsByArtist(String artist, String afterAlbum, int limit) {
         try {
-            List<MediaElement> albums = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Album) * FROM MediaElement WHERE Album IS NOT NULL ORDER BY Album", new MediaElementMapper());
+            List<MediaElement> albums = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Album) * FROM MediaElement WHERE Artist=? AND Album>? ORDER BY Album LIMIT ?", new Object[] {artist, afterAlbum == null ? "" : afterAlbum, limit}, new MediaElementMapper());
             return albums;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getAlbumsByArtist(String artist) {
+    public List<MediaElement> getAlbumsByAlbumArtist(String albumArtist) {
         try {
-            List<MediaElement> albums = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Album) * FROM MediaElement WHERE Artist=? AND Album IS NOT NULL ORDER BY Album", new Object[] {artist}, new MediaElementMapper());
+            List<MediaElement> albums = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Album) * FROM MediaElement WHERE AlbumArtist=? AND Album IS NOT NULL ORDER BY Album", new Object[] {albumArtist}, new MediaElementMapper());
             return albums;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getAlbumsByAlbumArtist(String albumArtist) {
+    public List<MediaElement> getAlbumsByAlbumArtist(String albumArtist, String afterAlbum, int limit) {
         try {
-            List<MediaElement> albums = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Album) * FROM MediaElement WHERE AlbumArtist=? AND Album IS NOT NULL ORDER BY Album", new Object[] {albumArtist}, new MediaElementMapper());
+            List<MediaElement> albums = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Album) * FROM MediaElement WHERE AlbumArtist=? AND Album>? ORDER BY Album LIMIT ?", new Object[] {albumArtist, afterAlbum == null ? "" : afterAlbum, limit}, new MediaElementMapper());
             return albums;
         } catch (DataAccessException e) {
             return null;
@@ -477,6 +938,10 @@ public class MediaDao {
         }
     }
     
+    public List<MediaElement> getMediaElementsByArtistAndAlbum(String artist, String album, UUID afterID, int limit) {
+        return getMediaElementPage("Type=? AND Artist=? AND Album=?", new Object[] {MediaElementType.AUDIO, artist, album}, new String[] {"DiscNumber", "TrackNumber", "Title"}, afterID, limit);
+    }
+    
     public List<MediaElement> getMediaElementsByAlbumArtistAndAlbum(String albumArtist, String album) {
         try {
             List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND AlbumArtist=? AND Album=? ORDER BY DiscNumber,TrackNumber,Title", new MediaElementMapper(), new Object[] {MediaElementType.AUDIO, albumArtist, album});
@@ -486,6 +951,10 @@ public class MediaDao {
         }
     }
     
+    public List<MediaElement> getMediaElementsByAlbumArtistAndAlbum(String albumArtist, String album, UUID afterID, int limit) {
+        return getMediaElementPage("Type=? AND AlbumArtist=? AND Album=?", new Object[] {MediaElementType.AUDIO, albumArtist, album}, new String[] {"DiscNumber", "TrackNumber", "Title"}, afterID, limit);
+    }
+    
     public List<MediaElement> getMediaElementsByArtist(String artist) {
         try {
             List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND Artist=? ORDER BY Year,Album,DiscNumber,TrackNumber,Title", new MediaElementMapper(), new Object[] {MediaElementType.AUDIO, artist});
@@ -495,6 +964,10 @@ public class MediaDao {
         }
     }
     
+    public List<MediaElement> getMediaElementsByArtist(String artist, UUID afterID, int limit) {
+        return getMediaElementPage("Type=? AND Artist=?", new Object[] {MediaElementType.AUDIO, artist}, new String[] {"Year", "Album", "DiscNumber", "TrackNumber", "Title"}, afterID, limit);
+    }
+    
     public List<MediaElement> getMediaElementsByAlbumArtist(String albumArtist) {
         try {
             List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND AlbumArtist=? ORDER BY Year,Album,DiscNumber,TrackNumber,Title", new MediaElementMapper(), new Object[] {MediaElementType.AUDIO, albumArtist});
@@ -504,6 +977,10 @@ public class MediaDao {
         }
     }
     
+    public List<MediaElement> getMediaElementsByAlbumArtist(String albumArtist, UUID afterID, int limit) {
+        return getMediaElementPage("Type=? AND AlbumArtist=?", new Object[] {MediaElementType.AUDIO, albumArtist}, new String[] {"Year", "Album", "DiscNumber", "TrackNumber", "Title"}, afterID, limit);
+    }
+    
     public List<MediaElement> getMediaElementsByAlbum(String album) {
         try {
             List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND Album=? ORDER BY Year,DiscNumber,TrackNumber,Title", new MediaElementMapper(), new Object[] {MediaElementType.AUDIO, album});
@@ -513,24 +990,108 @@ public class MediaDao {
         }
     }
     
-    public List<MediaElement> getCollections() {
+    public List<MediaElement> getMediaElementsByAlbum(String album, UUID afterID, int limit) {
+        return getMediaElementPage("Type=? AND Album=?", new Object[] {MediaElementType.AUDIO, album}, new String[] {"Year", "DiscNumber", "TrackNumber", "Title"}, afterID, limit);
+    }
+    
+    public List<MediaElement> getMediaElementsByCollection(String collection) {
         try {
-            List<MediaElement> collections = mediaDatabase.getJdbcTemplate().query("SELECT DISTINCT ON(Collection) * FROM MediaElement WHERE Collection IS NOT NULL ORDER BY Collection", new MediaElementMapper());
-            return collections;
+            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND DirectoryType=? AND NOT Excluded AND Collection=? ORDER BY Year,Title", new MediaElementMapper(), new Object[] {MediaElementType.DIRECTORY, MediaElement.DirectoryMediaType.VIDEO, collection});
+            return mediaElements;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
-    public List<MediaElement> getMediaElementsByCollection(String collection) {
+    public List<MediaElement> getMediaElementsByCollection(String collection, UUID afterID, int limit) {
+        return getMediaElementPage("Type=? AND DirectoryType=? AND NOT Excluded AND Collection=?", new Object[] {MediaElementType.DIRECTORY, MediaElement.DirectoryMediaType.VIDEO, collection}, new String[] {"Year", "Title"}, afterID, limit);
+    }
+    
+    //
+    // Folder
+    //
+    
+    // Adds folders for the given directories so media elements and playlists can be written to them
+    public boolean createFolders(final Collection<String> paths) {
         try {
-            List<MediaElement> mediaElements = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaElement WHERE Type=? AND DirectoryType=? AND NOT Excluded AND Collection=? ORDER BY Year,Title", new MediaElementMapper(), new Object[] {MediaElementType.DIRECTORY, MediaElement.DirectoryMediaType.VIDEO, collection});
-            return mediaElements;
+            mediaDatabase.createFolders(paths);
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to create folders.", e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    // Removes folders at or around a path (or anywhere if null) which no longer contain any media
+    public boolean removeEmptyFolders(String path) {
+        try {
+            int removed = mediaDatabase.removeEmptyFolders(path);
+            LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Removed " + removed + " empty folders" + (path == null ? "." : " for " + path), null);
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to remove empty folders.", e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    //
+    // Media Group
+    //
+    
+    public List<MediaGroup> getMediaGroups(byte type) {
+        try {
+            List<MediaGroup> mediaGroups = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaGroup WHERE Type=? ORDER BY Name", new MediaGroupMapper(), new Object[] {type});
+            return mediaGroups;
         } catch (DataAccessException e) {
             return null;
         }
     }
     
+    // Returns media groups for the next page of names in alphabetical order
+    public List<MediaGroup> getMediaGroups(byte type, String after, int limit) {
+        try {
+            List<MediaGroup> mediaGroups = mediaDatabase.getJdbcTemplate().query("SELECT * FROM MediaGroup WHERE Type=? AND Name IN (SELECT DISTINCT Name FROM MediaGroup WHERE Type=? AND Name>? ORDER BY Name LIMIT ?) ORDER BY Name", new MediaGroupMapper(), new Object[] {type, type, after == null ? "" : after, limit});
+            return mediaGroups;
+        } catch (DataAccessException e) {
+            return null;
+        }
+    }
+    
+    // Rebuilds media groups for media elements in the given directories
+    public boolean updateMediaGroups(final Collection<String> parentPaths) {
+        if(parentPaths.isEmpty()) {
+            return true;
+        }
+        
+        final List<String> paths = new ArrayList<>(parentPaths);
+        BatchPreparedStatementSetter setter = new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, paths.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return paths.size();
+            }
+        };
+        
+        try {
+            mediaDatabase.getJdbcTemplate().batchUpdate("DELETE FROM MediaGroup WHERE FolderID=" + FOLDER_ID, setter);
+            
+            for(byte type : MediaGroupType.values()) {
+                mediaDatabase.getJdbcTemplate().batchUpdate(MediaDatabase.getMediaGroupInsert(type, true), setter);
+            }
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to update media groups.", e);
+            return false;
+        }
+        
+        return true;
+    }
+    
     //
     // Video Stream
     //
@@ -569,6 +1130,8 @@ public class MediaDao {
         } catch (DataAccessException e) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to add video stream to database!", e);
             return false;
+        } finally {
+            invalidate(() -> videoStreams.forEach(stream -> cache.remove(stream.getMediaElementId())));
         }
                 
         return true;
@@ -593,6 +1156,7 @@ public class MediaDao {
                                  stream.getMediaElementId(),
                                  stream.getStreamId(),
                     });
+            invalidate(() -> cache.remove(stream.getMediaElementId()));
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -602,9 +1166,31 @@ public class MediaDao {
         return true;
     }
     
+    public boolean updateDeepScannedVideoStream(VideoStream stream, Timestamp deepScanned) {
+        try {
+            mediaDatabase.getJdbcTemplate().update("UPDATE VideoStream SET Interlaced=?, Bitrate=?, MaxBitrate=?, GOP=?, DeepScanned=?, Confidence=? WHERE MEID=? AND SID=?",
+                    new Object[]{stream.isInterlaced(),
+                                 stream.getBitrate(),
+                                 stream.getMaxBitrate(),
+                                 stream.getGOPSize(),
+                                 deepScanned,
+                                 stream.getConfidence(),
+                                 stream.getMediaElementId(),
+                                 stream.getStreamId(),
+                    });
+            invalidate(() -> cache.remove(stream.getMediaElementId()));
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to update deep scanned video stream!", e);
+            return false;
+        }
+
+        return true;
+    }
+    
     public boolean removeAllVideoStreams() {
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM VideoStream");
+            invalidate(cache::clear);
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -617,6 +1203,7 @@ public class MediaDao {
     public boolean removeVideoStreamsByMediaElementId(UUID mediaElementId) {
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM VideoStream WHERE MEID=?", new Object[] {mediaElementId});
+            invalidate(() -> cache.remove(mediaElementId));
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -637,10 +1224,23 @@ public class MediaDao {
         }
     }
     
-    public List<VideoStream> getIncompleteVideoStreams() {
+    /**
+     * Returns video streams which have not been deep scanned yet.
+     * 
+     * Streams belonging to the most recently added media elements are returned first.
+     *
+     * @param full Whether to include streams which have only been analysed using samples.
+     *             Streams which could not be parsed have no confidence and are not returned again.
+     * @return Video streams waiting to be deep scanned.
+     */
+    public List<VideoStream> getIncompleteVideoStreams(boolean full) {
+        String condition = full ? "VideoStream.DeepScanned IS NULL OR (VideoStream.Confidence > 0 AND VideoStream.Confidence < 1)" : "VideoStream.DeepScanned IS NULL AND (VideoStream.MaxBitrate=0 OR VideoStream.GOP=0)";
+        
         try {
             List<VideoStream> videoStreams;
-            videoStreams = mediaDatabase.getJdbcTemplate().query("SELECT * FROM VideoStream WHERE MaxBitrate=0 OR GOP=0     ", new VideoStreamMapper());
+            videoStreams = mediaDatabase.getJdbcTemplate().query("SELECT VideoStream.* FROM VideoStream INNER JOIN MediaElement ON VideoStream.MEID=MediaElement.ID "
+                    + "WHERE " + condition + " "
+                    + "ORDER BY MediaElement.Created DESC", new VideoStreamMapper());
             
             return videoStreams;
         } catch (DataAccessException e) {
@@ -682,6 +1282,8 @@ public class MediaDao {
         } catch (DataAccessException e) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to add audio stream to database!", e);
             return false;
+        } finally {
+            invalidate(() -> audioStreams.forEach(stream -> cache.remove(stream.getMediaElementId())));
         }
         
         return true;
@@ -690,6 +1292,7 @@ public class MediaDao {
     public boolean removeAllAudioStreams() {
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM AudioStream");
+            invalidate(cache::clear);
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -702,6 +1305,7 @@ public class MediaDao {
     public boolean removeAudioStreamsByMediaElementId(UUID mediaElementId) {
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM AudioStream WHERE MEID=?", new Object[] {mediaElementId});
+            invalidate(() -> cache.remove(mediaElementId));
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -752,6 +1356,8 @@ public class MediaDao {
         } catch (DataAccessException e) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to add subtitle stream to database!", e);
             return false;
+        } finally {
+            invalidate(() -> subtitleStreams.forEach(stream -> cache.remove(stream.getMediaElementId())));
         }
         
         return true;
@@ -760,6 +1366,7 @@ public class MediaDao {
     public boolean removeAllSubtitleStreams() {
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM SubtitleStream");
+            invalidate(cache::clear);
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -772,6 +1379,7 @@ public class MediaDao {
     public boolean removeSubtitleStreamsByMediaElementId(UUID mediaElementId) {            
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM SubtitleStream WHERE MEID=?", new Object[] {mediaElementId});
+            invalidate(() -> cache.remove(mediaElementId));
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -801,6 +1409,7 @@ public class MediaDao {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM VideoStream WHERE MEID=?", new Object[] {mediaElementId});
             mediaDatabase.getJdbcTemplate().update("DELETE FROM AudioStream WHERE MEID=?", new Object[] {mediaElementId});
             mediaDatabase.getJdbcTemplate().update("DELETE FROM SubtitleStream WHERE MEID=?", new Object[] {mediaElementId});
+            invalidate(() -> cache.remove(mediaElementId));
         } catch (InvalidResultSetAccessException e) {
             return false;
         } catch (DataAccessException e) {
@@ -810,14 +1419,121 @@ public class MediaDao {
         return true;
     }
     
+    public boolean removeStreamsByMediaElementIds(final List<UUID> ids) {
+        try {
+            for(String table : new String[] {"VideoStream", "AudioStream", "SubtitleStream"}) {
+                mediaDatabase.getJdbcTemplate().batchUpdate("DELETE FROM " + table + " WHERE MEID=?", new BatchPreparedStatementSetter() {	
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setObject(1, ids.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return ids.size();
+                    }
+                });
+            }
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to remove streams for media elements!", e);
+            return false;
+        } finally {
+            invalidate(() -> ids.forEach(cache::remove));
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Loads streams for media elements and sets them on each element.
+     * 
+     * Video elements get video, audio and subtitle streams and audio elements get
+     * audio streams. Cached streams are used where available and the rest are
+     * read on a single connection with one query per stream table for each chunk
+     * of media elements.
+     *
+     * @param mediaElements The media elements to load streams for.
+     * @return False if streams could not be loaded.
+     */
+    public boolean loadStreams(final Collection<MediaElement> mediaElements) {
+        final Map<UUID, MediaElement> video = new HashMap<>();
+        final Map<UUID, MediaElement> media = new HashMap<>();
+        
+        for(MediaElement mediaElement : mediaElements) {
+            if(cache.getStreams(mediaElement)) {
+                continue;
+            }
+            
+            if(mediaElement.getType() == MediaElementType.VIDEO) {
+                video.put(mediaElement.getID(), mediaElement);
+                mediaElement.setVideoStreams(new ArrayList<>());
+                mediaElement.setSubtitleStreams(new ArrayList<>());
+            } else if(mediaElement.getType() != MediaElementType.AUDIO) {
+                continue;
+            }
+            
+            media.put(mediaElement.getID(), mediaElement);
+            mediaElement.setAudioStreams(new ArrayList<>());
+        }
+        
+        if(media.isEmpty()) {
+            return true;
+        }
+        
+        long generation = cache.getGeneration();
+        
+        try {
+            mediaDatabase.getJdbcTemplate().execute((ConnectionCallback<Boolean>) connection -> {
+                loadStreams(connection, "VideoStream", video.keySet(), new VideoStreamMapper(), (VideoStream stream) -> video.get(stream.getMediaElementId()).getVideoStreams().add(stream));
+                loadStreams(connection, "AudioStream", media.keySet(), new AudioStreamMapper(), (AudioStream stream) -> media.get(stream.getMediaElementId()).getAudioStreams().add(stream));
+                loadStreams(connection, "SubtitleStream", video.keySet(), new SubtitleStreamMapper(), (SubtitleStream stream) -> video.get(stream.getMediaElementId()).getSubtitleStreams().add(stream));
+                return true;
+            });
+            
+            for(MediaElement mediaElement : media.values()) {
+                cache.putStreams(mediaElement, generation);
+            }
+            
+            return true;
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to load streams for " + media.size() + " media elements.", e);
+            return false;
+        }
+    }
+    
+    // Reads streams from a table for the given media elements in chunks
+    @SuppressWarnings("unchecked")
+    private <T> void loadStreams(Connection connection, String table, Set<UUID> ids, RowMapper mapper, Consumer<T> consumer) throws SQLException {
+        List<UUID> remaining = new ArrayList<>(ids);
+        
+        for(int start = 0; start < remaining.size(); start += STREAM_QUERY_CHUNK) {
+            List<UUID> chunk = remaining.subList(start, Math.min(start + STREAM_QUERY_CHUNK, remaining.size()));
+            String sql = "SELECT * FROM " + table + " WHERE MEID IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ") ORDER BY MEID,SID";
+            
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for(int i = 0; i < chunk.size(); i++) {
+                    statement.setObject(i + 1, chunk.get(i));
+                }
+                
+                try (ResultSet rs = statement.executeQuery()) {
+                    int row = 0;
+                    
+                    while(rs.next()) {
+                        consumer.accept((T) mapper.mapRow(rs, row++));
+                    }
+                }
+            }
+        }
+    }
+    
     //
     // Playlists
     //
     
     public boolean createPlaylist(Playlist playlist) {
         try {
-            mediaDatabase.getJdbcTemplate().update("INSERT INTO Playlist (ID, Name, Description, Username, Path, ParentPath, LastScanned) " +
-                                "VALUES (?,?,?,?,?,?,?)", new Object[] {
+            mediaDatabase.getJdbcTemplate().update("INSERT INTO Playlist (ID, Name, Description, Username, Path, FolderID, LastScanned) " +
+                                "VALUES (?,?,?,?,?," + FOLDER_ID + ",?)", new Object[] {
                                     playlist.getID(),
                                     playlist.getName(),
                                     playlist.getDescription(),
@@ -846,7 +1562,7 @@ public class MediaDao {
     }
     
     public void removeDeletedPlaylists(String path, Timestamp lastScanned) {            
-        mediaDatabase.getJdbcTemplate().update("DELETE FROM Playlist WHERE ParentPath LIKE ? AND LastScanned != ?", new Object[] {path + "%",lastScanned});
+        mediaDatabase.getJdbcTemplate().update("DELETE FROM Playlist WHERE " + FOLDER_SUBTREE + " AND LastScanned < ?", new Object[] {path,lastScanned});
     }
     
     public boolean updatePlaylist(Playlist playlist){
@@ -929,10 +1645,26 @@ public class MediaDao {
         return playlist;
     }
     
+    public Map<String, Playlist> getPlaylistIndex(String path) {
+        try {
+            List<Playlist> playlists = mediaDatabase.getJdbcTemplate().query("SELECT * FROM Playlist WHERE " + FOLDER_SUBTREE, new PlaylistMapper(), new Object[] {path});
+            Map<String, Playlist> index = new HashMap<>();
+            
+            for(Playlist playlist : playlists) {
+                index.put(playlist.getPath(), playlist);
+            }
+            
+            return index;
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to build playlist index for path " + path, e);
+            return null;
+        }
+    }
+    
     public List<Playlist> getPlaylistsByParentPath(String path) {
         try {
             List<Playlist> playlists;      
-            playlists = mediaDatabase.getJdbcTemplate().query("SELECT * FROM Playlist WHERE ParentPath=?", new PlaylistMapper(), new Object[] {path});
+            playlists = mediaDatabase.getJdbcTemplate().query("SELECT * FROM Playlist WHERE FolderID=" + FOLDER_ID, new PlaylistMapper(), new Object[] {path});
             
             return playlists;
         } catch (DataAccessException e) {
@@ -999,6 +1731,10 @@ public class MediaDao {
         }
     }
     
+    public List<MediaElement> getPlaylistContent(UUID id, UUID afterID, int limit) {
+        return getMediaElementPage("ID IN (SELECT MEID FROM PlaylistContent WHERE PID=?)", new Object[] {id}, new String[0], afterID, limit);
+    }
+    
     public boolean removePlaylistContent(UUID id) {
         try {
             mediaDatabase.getJdbcTemplate().update("DELETE FROM PlaylistContent WHERE PID=?", id);
@@ -25,12 +25,22 @@ package com.scooter1556.sms.server.dao;
 
 import com.scooter1556.sms.server.database.SettingsDatabase;
 import com.scooter1556.sms.server.database.SettingsDatabase.MediaFolderMapper;
+import com.scooter1556.sms.server.database.SettingsDatabase.ScanCheckpointMapper;
 import com.scooter1556.sms.server.domain.MediaFolder;
+import com.scooter1556.sms.server.domain.ScanCheckpoint;
+import com.scooter1556.sms.server.service.LogService;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jca.cci.InvalidResultSetAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.transaction.TransactionException;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -136,4 +146,74 @@ public class SettingsDao {
         
         return null;
     }
+    
+    //
+    // Scan Checkpoints
+    //
+    
+    // Replaces the stored checkpoint for a scan along with its committed directories
+    public boolean updateScanCheckpoint(final ScanCheckpoint checkpoint) {
+        final List<String> directories = new ArrayList<>(checkpoint.getDirectories());
+        
+        try {
+            settingsDatabase.getTransactionTemplate().execute(status -> {
+                settingsDatabase.getJdbcTemplate().update("MERGE INTO ScanCheckpoint (FolderID,Path,ScanTime,LastScanned,Updated,Folders,Audio,Video,Playlists) KEY (FolderID,Path) "
+                        + "VALUES (?,?,?,?,?,?,?,?,?)",
+                        new Object[]{checkpoint.getFolderID(), checkpoint.getPath(), checkpoint.getScanTime(), checkpoint.getLastScanned(), new Timestamp(System.currentTimeMillis()),
+                            checkpoint.getFolders(), checkpoint.getAudio(), checkpoint.getVideo(), checkpoint.getPlaylists()});
+                
+                settingsDatabase.getJdbcTemplate().update("DELETE FROM ScanCheckpointDirectory WHERE FolderID=? AND Path=?", checkpoint.getFolderID(), checkpoint.getPath());
+                
+                settingsDatabase.getJdbcTemplate().batchUpdate("INSERT INTO ScanCheckpointDirectory (FolderID,Path,Directory) VALUES (?,?,?)", new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setObject(1, checkpoint.getFolderID());
+                        ps.setString(2, checkpoint.getPath());
+                        ps.setString(3, directories.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return directories.size();
+                    }
+                });
+                
+                return null;
+            });
+        } catch (TransactionException | DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to update scan checkpoint for " + checkpoint.getPath(), e);
+            return false;
+        }
+
+        return true;
+    }
+    
+    public boolean removeScanCheckpoint(UUID folderId, String path) {
+        try {
+            settingsDatabase.getJdbcTemplate().update("DELETE FROM ScanCheckpoint WHERE FolderID=? AND Path=?", folderId, path);
+        } catch (DataAccessException e) {
+            return false;
+        }
+
+        return true;
+    }
+    
+    public ScanCheckpoint getScanCheckpoint(UUID folderId, String path) {
+        try {
+            List<ScanCheckpoint> checkpoints = settingsDatabase.getJdbcTemplate().query("SELECT * FROM ScanCheckpoint WHERE FolderID=? AND Path=?", new ScanCheckpointMapper(), new Object[]{folderId, path});
+            
+            if(checkpoints == null || checkpoints.isEmpty()) {
+                return null;
+            }
+            
+            ScanCheckpoint checkpoint = checkpoints.get(0);
+            List<String> directories = settingsDatabase.getJdbcTemplate().queryForList("SELECT Directory FROM ScanCheckpointDirectory WHERE FolderID=? AND Path=?", String.class, folderId, path);
+            checkpoint.setDirectories(new HashSet<>(directories));
+            
+            return checkpoint;
+        } catch (DataAccessException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to retrieve scan checkpoint for " + path, e);
+            return null;
+        }
+    }
 }
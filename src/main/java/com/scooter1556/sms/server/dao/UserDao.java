@@ -32,6 +32,7 @@ import com.scooter1556.sms.server.domain.User;
 import com.scooter1556.sms.server.domain.UserStats;
 import com.scooter1556.sms.server.domain.UserRole;
 import com.scooter1556.sms.server.domain.UserRule;
+import java.io.File;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
@@ -327,7 +328,8 @@ public class UserDao {
             if(matchExact) {
                 userDatabase.getJdbcTemplate().update("DELETE FROM UserRules WHERE Path=?", path);
             } else {
-                userDatabase.getJdbcTemplate().update("DELETE FROM UserRules WHERE Path LIKE ?", path + "%");
+                // Only match the path itself and paths beneath it
+                userDatabase.getJdbcTemplate().update("DELETE FROM UserRules WHERE Path=? OR Path LIKE ?", path, path + File.separator + "%");
             }
         } catch (InvalidResultSetAccessException e) {
             return false;
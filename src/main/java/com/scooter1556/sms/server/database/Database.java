@@ -23,15 +23,22 @@
  */
 package com.scooter1556.sms.server.database;
 
+import com.scooter1556.sms.server.domain.DatabaseStats;
 import com.scooter1556.sms.server.exception.DatabaseException;
+import com.scooter1556.sms.server.service.LogService;
 import com.scooter1556.sms.server.utilities.DatabaseUtils;
+import java.sql.SQLException;
 import javax.sql.DataSource;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-public class Database {
+public class Database implements DisposableBean {
     
-    DataSource dataSource = null;
-    JdbcTemplate jdbcTemplate;
+    PooledDataSource dataSource = null;
+    JdbcTemplate jdbcTemplate = null;
+    TransactionTemplate transactionTemplate = null;
     
     String db;
     int version;
@@ -47,7 +54,7 @@ public class Database {
 
         // Database doesn't exist
         if(currentVersion == -1) {
-            dataSource = DatabaseUtils.getDataSource(db, version);
+            open();
             create();
             return;
         }
@@ -62,20 +69,20 @@ public class Database {
         // If an older version of the database exists copy it to a new file and upgrade
         if(currentVersion < version) {
             DatabaseUtils.createNewDatabaseFile(db, type, currentVersion, version);
-            dataSource = DatabaseUtils.getDataSource(db, version);
+            open();
             upgrade(currentVersion, version);
         }
 
         // If a newer version of the database exists copy it to a new file and downgrade
         else if(currentVersion > version) {
             DatabaseUtils.createNewDatabaseFile(db, type, currentVersion, version);
-            dataSource = DatabaseUtils.getDataSource(db, version);
+            open();
             downgrade(currentVersion, version);
         }
 
         // If versions match simply load the database
         else if(currentVersion == version) {
-            dataSource = DatabaseUtils.getDataSource(db, version);
+            open();
         }
         
         else {
@@ -83,6 +90,27 @@ public class Database {
         }
     }
     
+    // Create connection pool and JDBC template for the current database version
+    private void open() throws DatabaseException {
+        dataSource = DatabaseUtils.getDataSource(db, version);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+    
+    // Close connection pool on application exit
+    @Override
+    public void destroy() {
+        if(dataSource == null) {
+            return;
+        }
+        
+        try {
+            dataSource.close();
+        } catch (SQLException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, db + "Database", "Failed to close database connection pool.", ex);
+        }
+    }
+    
     public void create() {
         // To be overridden
     }
@@ -101,6 +129,40 @@ public class Database {
      * @return A JDBC template.
      */
     public JdbcTemplate getJdbcTemplate() {
-        return new JdbcTemplate(dataSource);
+        return jdbcTemplate;
+    }
+    
+    /**
+     * Returns a transaction template for grouping database operations.
+     *
+     * @return A transaction template.
+     */
+    public TransactionTemplate getTransactionTemplate() {
+        return transactionTemplate;
+    }
+    
+    /**
+     * Returns the pooled data source shared by all users of this database.
+     *
+     * @return The data source.
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+    
+    /**
+     * Returns connection pool statistics for this database.
+     *
+     * @return Connection pool statistics or null if the database is not available.
+     */
+    public DatabaseStats getStats() {
+        if(dataSource == null) {
+            return null;
+        }
+        
+        DatabaseStats stats = dataSource.getStats();
+        stats.setSize(DatabaseUtils.getDatabaseSize(db, version));
+        
+        return stats;
     }
 }
@@ -24,11 +24,17 @@
 package com.scooter1556.sms.server.database;
 
 import com.scooter1556.sms.server.domain.MediaElement;
+import com.scooter1556.sms.server.domain.MediaGroup;
+import com.scooter1556.sms.server.domain.MediaGroup.MediaGroupType;
 import com.scooter1556.sms.server.domain.Playlist;
 import com.scooter1556.sms.server.exception.DatabaseException;
 import com.scooter1556.sms.server.service.LogService;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.RowMapper;
@@ -39,7 +45,7 @@ public class MediaDatabase extends Database {
     private static final String CLASS_NAME = "MediaDatabase";
     
     public static final String DB_NAME = "Media";
-    public static final int DB_VERSION = 6;
+    public static final int DB_VERSION = 15;
     
     public MediaDatabase() {
         super(DB_NAME, DB_VERSION);   
@@ -58,13 +64,15 @@ public class MediaDatabase extends Database {
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Creating database.", null);
         
         try {
+            createFolderTables();
+            
             // Media Elements
             getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS MediaElement ("
                     + "ID UUID NOT NULL,"
                     + "Type TINYINT NOT NULL,"
                     + "DirectoryType TINYINT,"
                     + "Path VARCHAR NOT NULL,"
-                    + "ParentPath VARCHAR NOT NULL,"
+                    + "FolderID BIGINT NOT NULL,"
                     + "Created TIMESTAMP DEFAULT NOW() NOT NULL,"
                     + "LastPlayed TIMESTAMP,"
                     + "LastScanned TIMESTAMP NOT NULL,"
@@ -89,7 +97,12 @@ public class MediaDatabase extends Database {
                     + "Collection VARCHAR,"
                     + "ReplaygainTrack REAL,"
                     + "ReplaygainAlbum REAL,"
-                    + "PRIMARY KEY (ID))");
+                    + "Modified BIGINT,"
+                    + "FileKey VARCHAR,"
+                    + "Fingerprint VARCHAR,"
+                    + "RandomKey DOUBLE DEFAULT RAND() NOT NULL,"
+                    + "PRIMARY KEY (ID),"
+                    + "FOREIGN KEY (FolderID) REFERENCES Folder (ID))");
             
             // Video Streams
             getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS VideoStream ("
@@ -108,6 +121,8 @@ public class MediaDatabase extends Database {
                     + "Language VARCHAR,"
                     + "Default BOOLEAN DEFAULT 0 NOT NULL,"
                     + "Forced BOOLEAN DEFAULT 0 NOT NULL,"
+                    + "DeepScanned TIMESTAMP,"
+                    + "Confidence REAL,"
                     + "PRIMARY KEY (MEID,SID),"
                     + "FOREIGN KEY (MEID) REFERENCES MediaElement (ID) ON DELETE CASCADE)");
             
@@ -146,9 +161,10 @@ public class MediaDatabase extends Database {
                     + "Description VARCHAR,"
                     + "Username VARCHAR(50),"
                     + "Path VARCHAR,"
-                    + "ParentPath VARCHAR,"
+                    + "FolderID BIGINT,"
                     + "LastScanned TIMESTAMP,"
-                    + "PRIMARY KEY (ID))");
+                    + "PRIMARY KEY (ID),"
+                    + "FOREIGN KEY (FolderID) REFERENCES Folder (ID))");
             
             // Playlist Contents
             getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS PlaylistContent ("
@@ -157,20 +173,138 @@ public class MediaDatabase extends Database {
                     + "PRIMARY KEY (PID,MEID),"
                     + "FOREIGN KEY (MEID) REFERENCES MediaElement (ID) ON DELETE CASCADE,"
                     + "FOREIGN KEY (PID) REFERENCES Playlist (ID) ON DELETE CASCADE)");
+            
+            // Artists, album artists, albums and collections by directory
+            getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS MediaGroup ("
+                    + "Type TINYINT NOT NULL,"
+                    + "Name VARCHAR NOT NULL,"
+                    + "FolderID BIGINT NOT NULL,"
+                    + "Path VARCHAR NOT NULL,"
+                    + "Elements INT NOT NULL,"
+                    + "MEID UUID NOT NULL,"
+                    + "PRIMARY KEY (Type,Name,FolderID),"
+                    + "FOREIGN KEY (FolderID) REFERENCES Folder (ID))");
                     
             getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS PathIndex on MediaElement(Path)");
-            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS ParentPathIndex on MediaElement(ParentPath)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS FolderIndex on MediaElement(FolderID)");
             getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS TitleIndex on MediaElement(Title)");
             getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS ArtistIndex on MediaElement(Artist)");
             getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS AlbumArtistIndex on MediaElement(AlbumArtist)");
             getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS AlbumIndex on MediaElement(Album)");
             getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS GenreIndex on MediaElement(Genre)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS FingerprintIndex on MediaElement(Fingerprint)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS FileKeyIndex on MediaElement(FileKey)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS CollectionIndex on MediaElement(Collection)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS TypeTitleIndex on MediaElement(Type,Title,ID)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS TypeCreatedIndex on MediaElement(Type,Created,ID)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS TypeLastPlayedIndex on MediaElement(Type,LastPlayed,ID)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS RandomKeyIndex on MediaElement(RandomKey)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS TypeRandomKeyIndex on MediaElement(Type,RandomKey)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS FolderRandomKeyIndex on MediaElement(FolderID,RandomKey)");
             getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS PlaylistIndex on Playlist(Name)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS PlaylistFolderIndex on Playlist(FolderID)");
+            getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS MediaGroupFolderIndex on MediaGroup(FolderID)");
         } catch (DataAccessException x) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Error creating database.", x);
         }
     }
     
+    //
+    // Folders form a hierarchy of the directories containing media. FolderTree holds every
+    // ancestor of each folder (including itself) so a subtree is a range of its primary key.
+    //
+    private void createFolderTables() {
+        getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS Folder ("
+                + "ID BIGINT AUTO_INCREMENT,"
+                + "ParentID BIGINT,"
+                + "Path VARCHAR NOT NULL,"
+                + "PRIMARY KEY (ID))");
+        
+        getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS FolderTree ("
+                + "Ancestor BIGINT NOT NULL,"
+                + "Descendant BIGINT NOT NULL,"
+                + "PRIMARY KEY (Ancestor,Descendant),"
+                + "FOREIGN KEY (Ancestor) REFERENCES Folder (ID) ON DELETE CASCADE,"
+                + "FOREIGN KEY (Descendant) REFERENCES Folder (ID) ON DELETE CASCADE)");
+        
+        getJdbcTemplate().execute("CREATE UNIQUE INDEX IF NOT EXISTS FolderPathIndex on Folder(Path)");
+    }
+    
+    //
+    // Adds folders for the given paths and any of their ancestors which don't already exist.
+    // Folders are created outside of scan transactions so concurrent scans never insert the same folder.
+    //
+    public synchronized void createFolders(Collection<String> paths) {
+        for(String path : paths) {
+            if(path != null) {
+                createFolder(path);
+            }
+        }
+    }
+    
+    private Long createFolder(String path) {
+        List<Long> existing = getJdbcTemplate().queryForList("SELECT ID FROM Folder WHERE Path=?", Long.class, path);
+        
+        if(!existing.isEmpty()) {
+            return existing.get(0);
+        }
+        
+        String parent = getParentPath(path);
+        Long parentID = parent == null ? null : createFolder(parent);
+        
+        getJdbcTemplate().update("INSERT INTO Folder (ParentID,Path) VALUES (?,?)", parentID, path);
+        Long id = getJdbcTemplate().queryForObject("SELECT ID FROM Folder WHERE Path=?", Long.class, path);
+        
+        // A folder is a descendant of itself and every ancestor of its parent
+        getJdbcTemplate().update("INSERT INTO FolderTree (Ancestor,Descendant) VALUES (?,?)", id, id);
+        
+        if(parentID != null) {
+            getJdbcTemplate().update("INSERT INTO FolderTree (Ancestor,Descendant) SELECT Ancestor,? FROM FolderTree WHERE Descendant=?", id, parentID);
+        }
+        
+        return id;
+    }
+    
+    //
+    // Removes folders which no longer contain media elements, playlists or media groups anywhere
+    // in their subtree along with their closure rows. If a path is given only folders above or
+    // below it are checked, otherwise all folders are. Media elements, playlists and media groups
+    // reference their folder by foreign key so a folder a running scan is writing to fails to delete.
+    //
+    public synchronized int removeEmptyFolders(String path) {
+        String sql = "SELECT ID FROM Folder F WHERE "
+                + (path == null ? "" : "(ID IN (SELECT Descendant FROM FolderTree WHERE Ancestor=" + FOLDER_ID + ") OR ID IN (SELECT Ancestor FROM FolderTree WHERE Descendant=" + FOLDER_ID + ")) AND ")
+                + "NOT EXISTS (SELECT 1 FROM FolderTree T WHERE T.Ancestor=F.ID AND ("
+                + "EXISTS (SELECT 1 FROM MediaElement WHERE FolderID=T.Descendant) OR "
+                + "EXISTS (SELECT 1 FROM Playlist WHERE FolderID=T.Descendant) OR "
+                + "EXISTS (SELECT 1 FROM MediaGroup WHERE FolderID=T.Descendant)))";
+        
+        List<Long> ids = path == null ? getJdbcTemplate().queryForList(sql, Long.class) : getJdbcTemplate().queryForList(sql, Long.class, path, path);
+        
+        // Closure rows are removed by cascade
+        for(Long id : ids) {
+            getJdbcTemplate().update("DELETE FROM Folder WHERE ID=?", id);
+        }
+        
+        return ids.size();
+    }
+    
+    // Returns the path of the directory containing the given path or null if there isn't one
+    public static String getParentPath(String path) {
+        if(path == null) {
+            return null;
+        }
+        
+        Path parent = Paths.get(path).getParent();
+        return parent == null ? null : parent.toString();
+    }
+    
+    // SQL condition matching rows whose FolderID is within the subtree of a path parameter
+    public static final String FOLDER_SUBTREE = "FolderID IN (SELECT Descendant FROM FolderTree WHERE Ancestor=(SELECT ID FROM Folder WHERE Path=?))";
+    
+    // SQL expression for the ID of the folder with a path parameter
+    public static final String FOLDER_ID = "(SELECT ID FROM Folder WHERE Path=?)";
+    
     public static final class MediaElementMapper implements RowMapper {
         @Override
         public MediaElement mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -179,7 +313,7 @@ public class MediaDatabase extends Database {
             mediaElement.setType(rs.getByte("Type"));
             mediaElement.setDirectoryType(rs.getByte("DirectoryType"));
             mediaElement.setPath(rs.getString("Path"));
-            mediaElement.setParentPath(rs.getString("ParentPath"));
+            mediaElement.setParentPath(getParentPath(mediaElement.getPath()));
             mediaElement.setCreated(rs.getTimestamp("Created"));
             mediaElement.setLastPlayed(rs.getTimestamp("LastPlayed"));
             mediaElement.setLastScanned(rs.getTimestamp("LastScanned"));
@@ -204,6 +338,9 @@ public class MediaDatabase extends Database {
             mediaElement.setCollection(rs.getString("Collection"));
             mediaElement.setReplaygainTrack(rs.getFloat("ReplaygainTrack"));
             mediaElement.setReplaygainAlbum(rs.getFloat("ReplaygainAlbum"));
+            mediaElement.setModified((Long)rs.getObject("Modified"));
+            mediaElement.setFileKey(rs.getString("FileKey"));
+            mediaElement.setFingerprint(rs.getString("Fingerprint"));
             
             return mediaElement;
         }
@@ -228,6 +365,7 @@ public class MediaDatabase extends Database {
             videoStream.setLanguage(rs.getString("Language"));
             videoStream.setDefault(rs.getBoolean("Default"));
             videoStream.setForced(rs.getBoolean("Forced"));
+            videoStream.setConfidence((Float) rs.getObject("Confidence"));
             
             return videoStream;
         }
@@ -278,13 +416,41 @@ public class MediaDatabase extends Database {
             playlist.setDescription(rs.getString("Description"));
             playlist.setUsername(rs.getString("Username"));
             playlist.setPath(rs.getString("Path"));
-            playlist.setParentPath(rs.getString("ParentPath"));
+            playlist.setParentPath(getParentPath(playlist.getPath()));
             playlist.setLastScanned(rs.getTimestamp("LastScanned"));
             
             return playlist;
         }
     }
     
+    public static final class MediaGroupMapper implements RowMapper {
+        @Override
+        public MediaGroup mapRow(ResultSet rs, int rowNum) throws SQLException {
+            MediaGroup mediaGroup = new MediaGroup();
+            mediaGroup.setType(rs.getByte("Type"));
+            mediaGroup.setName(rs.getString("Name"));
+            mediaGroup.setFolderID(rs.getLong("FolderID"));
+            mediaGroup.setPath(rs.getString("Path"));
+            mediaGroup.setElements(rs.getInt("Elements"));
+            mediaGroup.setElementID(UUID.fromString(rs.getString("MEID")));
+            
+            return mediaGroup;
+        }
+    }
+    
+    //
+    // Returns the statement used to rebuild media groups of the given type, optionally for a single parent path.
+    //
+    public static String getMediaGroupInsert(byte type, boolean byParentPath) {
+        String column = MediaGroupType.getColumn(type);
+        
+        return "INSERT INTO MediaGroup (Type,Name,FolderID,Path,Elements,MEID) "
+                + "SELECT " + type + ",Name,FolderID,Path,Elements,(SELECT ID FROM MediaElement WHERE Path=G.Path LIMIT 1) FROM "
+                + "(SELECT " + column + " AS Name,FolderID,MIN(Path) AS Path,COUNT(*) AS Elements FROM MediaElement "
+                + "WHERE " + (byParentPath ? "FolderID=" + FOLDER_ID + " AND " : "") + column + " IS NOT NULL AND " + column + "<>'' "
+                + "GROUP BY " + column + ",FolderID) AS G";
+    }
+    
     @Override
     public void upgrade(int oldVersion, int newVersion) {
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Upgrading database from version " + oldVersion + " to " + newVersion, null);
@@ -303,12 +469,72 @@ public class MediaDatabase extends Database {
             getJdbcTemplate().execute("DROP TABLE IF EXISTS SubtitleStream");
         }
         
-        if(newVersion == 6) {
+        if(oldVersion < 6 && newVersion >= 6) {
             getJdbcTemplate().update("ALTER TABLE MediaElement ADD ReplaygainTrack REAL");
             getJdbcTemplate().update("ALTER TABLE MediaElement ADD ReplaygainAlbum REAL");
         }
         
+        if(oldVersion < 7 && newVersion >= 7) {
+            getJdbcTemplate().update("ALTER TABLE MediaElement ADD Modified BIGINT");
+            getJdbcTemplate().update("ALTER TABLE MediaElement ADD FileKey VARCHAR");
+        }
+        
+        if(oldVersion < 8 && newVersion >= 8) {
+            getJdbcTemplate().update("ALTER TABLE VideoStream ADD DeepScanned TIMESTAMP");
+        }
+        
+        if(oldVersion < 9 && newVersion >= 9) {
+            getJdbcTemplate().update("ALTER TABLE VideoStream ADD Confidence REAL");
+            getJdbcTemplate().update("UPDATE VideoStream SET Confidence=1 WHERE DeepScanned IS NOT NULL");
+        }
+        
+        if(oldVersion < 10 && newVersion >= 10) {
+            getJdbcTemplate().update("ALTER TABLE MediaElement ADD Fingerprint VARCHAR");
+        }
+        
+        if(oldVersion < 13 && newVersion >= 13) {
+            getJdbcTemplate().update("ALTER TABLE MediaElement ADD RandomKey DOUBLE DEFAULT RAND() NOT NULL");
+            getJdbcTemplate().update("UPDATE MediaElement SET RandomKey=RAND()");
+        }
+        
+        if(oldVersion < 14 && newVersion >= 14) {
+            // Build folders from the parent paths of existing media
+            createFolderTables();
+            createFolders(getJdbcTemplate().queryForList("SELECT DISTINCT ParentPath FROM MediaElement", String.class));
+            createFolders(getJdbcTemplate().queryForList("SELECT DISTINCT ParentPath FROM Playlist WHERE ParentPath IS NOT NULL", String.class));
+            
+            // Replace parent paths with folder references
+            getJdbcTemplate().update("ALTER TABLE MediaElement ADD FolderID BIGINT");
+            getJdbcTemplate().update("UPDATE MediaElement SET FolderID=(SELECT ID FROM Folder WHERE Path=MediaElement.ParentPath)");
+            getJdbcTemplate().update("ALTER TABLE MediaElement ALTER COLUMN FolderID SET NOT NULL");
+            getJdbcTemplate().update("DROP INDEX IF EXISTS ParentPathIndex");
+            getJdbcTemplate().update("DROP INDEX IF EXISTS ParentPathRandomKeyIndex");
+            getJdbcTemplate().update("ALTER TABLE MediaElement DROP COLUMN ParentPath");
+            getJdbcTemplate().update("ALTER TABLE MediaElement ADD FOREIGN KEY (FolderID) REFERENCES Folder (ID)");
+            
+            getJdbcTemplate().update("ALTER TABLE Playlist ADD FolderID BIGINT");
+            getJdbcTemplate().update("UPDATE Playlist SET FolderID=(SELECT ID FROM Folder WHERE Path=Playlist.ParentPath)");
+            getJdbcTemplate().update("ALTER TABLE Playlist DROP COLUMN ParentPath");
+            getJdbcTemplate().update("ALTER TABLE Playlist ADD FOREIGN KEY (FolderID) REFERENCES Folder (ID)");
+            
+            // Media groups are rebuilt below
+            getJdbcTemplate().execute("DROP TABLE IF EXISTS MediaGroup");
+        }
+        
+        if(oldVersion < 15 && newVersion >= 15) {
+            // Directory paging indexes are replaced with ones which include the ID
+            getJdbcTemplate().update("DROP INDEX IF EXISTS CreatedIndex");
+            getJdbcTemplate().update("DROP INDEX IF EXISTS LastPlayedIndex");
+        }
+        
         create();
+        
+        if(oldVersion < 14 && newVersion >= 14) {
+            // Populate media groups from existing media
+            for(byte type : MediaGroupType.values()) {
+                getJdbcTemplate().update(getMediaGroupInsert(type, false));
+            }
+        }
     }
     
     @Override
@@ -322,6 +548,9 @@ public class MediaDatabase extends Database {
         getJdbcTemplate().execute("DROP TABLE IF EXISTS SubtitleStream");
         getJdbcTemplate().execute("DROP TABLE IF EXISTS Playlist");
         getJdbcTemplate().execute("DROP TABLE IF EXISTS PlaylistContent");
+        getJdbcTemplate().execute("DROP TABLE IF EXISTS MediaGroup");
+        getJdbcTemplate().execute("DROP TABLE IF EXISTS FolderTree");
+        getJdbcTemplate().execute("DROP TABLE IF EXISTS Folder");
         
         create();
     }
@@ -0,0 +1,146 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.database;
+
+import com.scooter1556.sms.server.domain.DatabaseStats;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+/**
+ * Connection pool for a single H2 database.
+ * 
+ * Extends the DBCP data source to expose connection pool usage and wait
+ * statistics which are not otherwise publicly accessible.
+ * 
+ * When the 'sms.database.statistics' system property is set to true,
+ * connections are wrapped to count the statements executed through them.
+ * Each statement added to a batch is counted individually so batched and
+ * transactional writes are included. This is intended for benchmarking and
+ * is disabled by default.
+ */
+public class PooledDataSource extends BasicDataSource {
+    
+    private static final boolean COUNT_STATEMENTS = Boolean.getBoolean("sms.database.statistics");
+    
+    private final String name;
+    private final AtomicLong statements = new AtomicLong();
+    
+    public PooledDataSource(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        return COUNT_STATEMENTS ? countStatements(super.getConnection()) : super.getConnection();
+    }
+    
+    @Override
+    public Connection getConnection(String user, String pass) throws SQLException {
+        return COUNT_STATEMENTS ? countStatements(super.getConnection(user, pass)) : super.getConnection(user, pass);
+    }
+    
+    // Wraps a connection so statements created from it are counted
+    private Connection countStatements(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+            // Transaction synchronisation compares connections so they must keep their identity
+            switch(method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+            }
+            
+            Object result = invoke(connection, method, args);
+            return result instanceof Statement ? countStatements((Statement) result) : result;
+        });
+    }
+    
+    // Wraps a statement so each execution or batch entry is counted
+    private Statement countStatements(final Statement statement) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        
+        return (Statement) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            String methodName = method.getName();
+            
+            // Batch entries are counted as they are added rather than when the batch is executed
+            if(methodName.equals("addBatch") || (methodName.startsWith("execute") && !methodName.equals("executeBatch") && !methodName.equals("executeLargeBatch"))) {
+                statements.incrementAndGet();
+            }
+            
+            return invoke(statement, method, args);
+        });
+    }
+    
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+    
+    /**
+     * Returns current usage statistics for the connection pool.
+     *
+     * @return Connection pool statistics.
+     */
+    public DatabaseStats getStats() {
+        DatabaseStats stats = new DatabaseStats();
+        stats.setName(name);
+        stats.setActive(getNumActive());
+        stats.setIdle(getNumIdle());
+        stats.setMaxTotal(getMaxTotal());
+        
+        if(COUNT_STATEMENTS) {
+            stats.setStatements(statements.get());
+        }
+        
+        // Pool is created lazily on first use
+        GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+        
+        if(pool != null) {
+            stats.setWaiting(pool.getNumWaiters());
+            stats.setBorrowed(pool.getBorrowedCount());
+            stats.setCreated(pool.getCreatedCount());
+            stats.setMeanWaitTime(pool.getMeanBorrowWaitTimeMillis());
+            stats.setMaxWaitTime(pool.getMaxBorrowWaitTimeMillis());
+        }
+        
+        return stats;
+    }
+}
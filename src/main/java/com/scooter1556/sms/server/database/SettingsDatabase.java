@@ -24,6 +24,7 @@
 package com.scooter1556.sms.server.database;
 
 import com.scooter1556.sms.server.domain.MediaFolder;
+import com.scooter1556.sms.server.domain.ScanCheckpoint;
 import com.scooter1556.sms.server.exception.DatabaseException;
 import com.scooter1556.sms.server.service.LogService;
 import com.scooter1556.sms.server.service.LogService.Level;
@@ -39,7 +40,7 @@ public final class SettingsDatabase extends Database {
     private static final String CLASS_NAME = "SettingsDatabase";
     
     public static final String DB_NAME = "Settings";
-    public static final int DB_VERSION = 2;
+    public static final int DB_VERSION = 3;
     
     public SettingsDatabase() {
         super(DB_NAME, DB_VERSION);   
@@ -69,6 +70,23 @@ public final class SettingsDatabase extends Database {
         }
     }
     
+    public static final class ScanCheckpointMapper implements RowMapper {
+        @Override
+        public ScanCheckpoint mapRow(ResultSet rs, int rowNum) throws SQLException {
+            ScanCheckpoint checkpoint = new ScanCheckpoint();
+            checkpoint.setFolderID(UUID.fromString(rs.getString("FolderID")));
+            checkpoint.setPath(rs.getString("Path"));
+            checkpoint.setScanTime(rs.getTimestamp("ScanTime"));
+            checkpoint.setLastScanned(rs.getTimestamp("LastScanned"));
+            checkpoint.setUpdated(rs.getTimestamp("Updated"));
+            checkpoint.setFolders(rs.getLong("Folders"));
+            checkpoint.setAudio(rs.getLong("Audio"));
+            checkpoint.setVideo(rs.getLong("Video"));
+            checkpoint.setPlaylists(rs.getLong("Playlists"));
+            return checkpoint;
+        }
+    }
+    
     @Override
     public void create() {
         LogService.getInstance().addLogEntry(Level.INFO, CLASS_NAME, "Creating database.", null);
@@ -86,26 +104,67 @@ public final class SettingsDatabase extends Database {
                     + "Enabled BOOLEAN DEFAULT 1 NOT NULL,"
                     + "PRIMARY KEY (ID))");
             
+            createScanCheckpoints();
+            
         } catch (DataAccessException x) {
             LogService.getInstance().addLogEntry(Level.ERROR, CLASS_NAME, "Error creating database.", x);
         }
     }
     
+    private void createScanCheckpoints() {
+        // Scan Checkpoints
+        getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS ScanCheckpoint ("
+                + "FolderID UUID NOT NULL,"
+                + "Path VARCHAR NOT NULL,"
+                + "ScanTime TIMESTAMP NOT NULL,"
+                + "LastScanned TIMESTAMP,"
+                + "Updated TIMESTAMP,"
+                + "Folders BIGINT,"
+                + "Audio BIGINT,"
+                + "Video BIGINT,"
+                + "Playlists BIGINT,"
+                + "PRIMARY KEY (FolderID, Path),"
+                + "FOREIGN KEY (FolderID) REFERENCES MediaFolder (ID) ON DELETE CASCADE)");
+        
+        // Directories committed by unfinished scans
+        getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS ScanCheckpointDirectory ("
+                + "FolderID UUID NOT NULL,"
+                + "Path VARCHAR NOT NULL,"
+                + "Directory VARCHAR NOT NULL,"
+                + "FOREIGN KEY (FolderID, Path) REFERENCES ScanCheckpoint (FolderID, Path) ON DELETE CASCADE)");
+    }
+    
+    private void dropScanCheckpoints() {
+        getJdbcTemplate().execute("DROP TABLE IF EXISTS ScanCheckpointDirectory");
+        getJdbcTemplate().execute("DROP TABLE IF EXISTS ScanCheckpoint");
+    }
+    
     @Override
     public void upgrade(int oldVersion, int newVersion) {
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Upgrading database from version " + oldVersion + " to " + newVersion, null);
     
-        if(newVersion == 2) {
+        if(oldVersion < 2 && newVersion >= 2) {
+            dropScanCheckpoints();
             getJdbcTemplate().execute("DROP TABLE IF EXISTS MediaFolder");
             create();
         }
+        
+        // Checkpoints for resuming interrupted media scans
+        if(oldVersion < 3 && newVersion >= 3) {
+            try {
+                createScanCheckpoints();
+            } catch (DataAccessException x) {
+                LogService.getInstance().addLogEntry(Level.ERROR, CLASS_NAME, "Error creating scan checkpoint tables.", x);
+            }
+        }
     }
     
     @Override
     public void downgrade(int oldVersion, int newVersion) {
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Downgrading database from version " + oldVersion + " to " + newVersion, null);
         
-        // Delete table and re-create
+        // Delete tables and re-create
+        dropScanCheckpoints();
         getJdbcTemplate().execute("DROP TABLE IF EXISTS MediaFolder");
         create();
     }
@@ -0,0 +1,107 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.domain;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.io.Serializable;
+
+@ApiModel(description = "In-memory cache statistics")
+public class CacheStats implements Serializable {
+    
+    @ApiModelProperty(value = "Name of the cache", example = "MediaElement")
+    private String name;
+    
+    @ApiModelProperty(value = "Number of entries currently cached", example = "250")
+    private Integer size = 0;
+    
+    @ApiModelProperty(value = "Maximum number of entries", example = "1000")
+    private Integer maxSize = 0;
+    
+    @ApiModelProperty(value = "Number of lookups served from the cache", example = "15243")
+    private Long hits = 0L;
+    
+    @ApiModelProperty(value = "Number of lookups which required a database query", example = "1204")
+    private Long misses = 0L;
+    
+    @ApiModelProperty(value = "Number of entries evicted to make room for new entries", example = "12")
+    private Long evictions = 0L;
+
+    public CacheStats() {};
+    
+    @Override
+    public String toString() {
+        return String.format(
+                "CacheStats[Name=%s, Size=%s, Max=%s, Hits=%s, Misses=%s, Evictions=%s]",
+                name == null ? "N/A" : name, size.toString(), maxSize.toString(), hits.toString(), misses.toString(), evictions.toString());
+    }
+
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public Integer getSize() {
+        return size;
+    }
+    
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+    
+    public Integer getMaxSize() {
+        return maxSize;
+    }
+    
+    public void setMaxSize(Integer maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    public Long getHits() {
+        return hits;
+    }
+    
+    public void setHits(Long hits) {
+        this.hits = hits;
+    }
+    
+    public Long getMisses() {
+        return misses;
+    }
+    
+    public void setMisses(Long misses) {
+        this.misses = misses;
+    }
+    
+    public Long getEvictions() {
+        return evictions;
+    }
+    
+    public void setEvictions(Long evictions) {
+        this.evictions = evictions;
+    }
+}
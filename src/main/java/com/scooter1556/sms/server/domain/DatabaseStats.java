@@ -0,0 +1,162 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.domain;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.io.Serializable;
+
+@ApiModel(description = "Database connection pool statistics")
+public class DatabaseStats implements Serializable {
+    
+    @ApiModelProperty(value = "Name of the database", example = "Media")
+    private String name;
+    
+    @ApiModelProperty(value = "Number of connections currently in use", example = "2")
+    private Integer active = 0;
+    
+    @ApiModelProperty(value = "Number of idle connections in the pool", example = "3")
+    private Integer idle = 0;
+    
+    @ApiModelProperty(value = "Maximum number of connections allowed", example = "10")
+    private Integer maxTotal = 0;
+    
+    @ApiModelProperty(value = "Number of threads currently waiting for a connection", example = "0")
+    private Integer waiting = 0;
+    
+    @ApiModelProperty(value = "Total number of connections borrowed from the pool", example = "15243")
+    private Long borrowed = 0L;
+    
+    @ApiModelProperty(value = "Total number of connections created by the pool", example = "4")
+    private Long created = 0L;
+    
+    @ApiModelProperty(value = "Total number of statements executed, counting each statement in a batch", example = "52310")
+    private Long statements = 0L;
+    
+    @ApiModelProperty(value = "Mean time spent waiting for a connection (ms)", example = "0")
+    private Long meanWaitTime = 0L;
+    
+    @ApiModelProperty(value = "Maximum time spent waiting for a connection (ms)", example = "12")
+    private Long maxWaitTime = 0L;
+    
+    @ApiModelProperty(value = "Size of the database on disk (bytes)", example = "52428800")
+    private Long size = 0L;
+
+    public DatabaseStats() {};
+    
+    @Override
+    public String toString() {
+        return String.format(
+                "DatabaseStats[Name=%s, Active=%s, Idle=%s, Max=%s, Waiting=%s, Borrowed=%s, Created=%s, Statements=%s, Mean Wait (ms)=%s, Max Wait (ms)=%s, Size=%s]",
+                name == null ? "N/A" : name, active.toString(), idle.toString(), maxTotal.toString(), waiting.toString(), borrowed.toString(), created.toString(), statements.toString(), meanWaitTime.toString(), maxWaitTime.toString(), size.toString());
+    }
+
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public Integer getActive() {
+        return active;
+    }
+    
+    public void setActive(Integer active) {
+        this.active = active;
+    }
+    
+    public Integer getIdle() {
+        return idle;
+    }
+    
+    public void setIdle(Integer idle) {
+        this.idle = idle;
+    }
+    
+    public Integer getMaxTotal() {
+        return maxTotal;
+    }
+    
+    public void setMaxTotal(Integer maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+    
+    public Integer getWaiting() {
+        return waiting;
+    }
+    
+    public void setWaiting(Integer waiting) {
+        this.waiting = waiting;
+    }
+    
+    public Long getBorrowed() {
+        return borrowed;
+    }
+    
+    public void setBorrowed(Long borrowed) {
+        this.borrowed = borrowed;
+    }
+    
+    public Long getCreated() {
+        return created;
+    }
+    
+    public void setCreated(Long created) {
+        this.created = created;
+    }
+    
+    public Long getStatements() {
+        return statements;
+    }
+    
+    public void setStatements(Long statements) {
+        this.statements = statements;
+    }
+    
+    public Long getMeanWaitTime() {
+        return meanWaitTime;
+    }
+    
+    public void setMeanWaitTime(Long meanWaitTime) {
+        this.meanWaitTime = meanWaitTime;
+    }
+    
+    public Long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+    
+    public void setMaxWaitTime(Long maxWaitTime) {
+        this.maxWaitTime = maxWaitTime;
+    }
+    
+    public Long getSize() {
+        return size;
+    }
+    
+    public void setSize(Long size) {
+        this.size = size;
+    }
+}
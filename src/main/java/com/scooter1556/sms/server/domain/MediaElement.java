@@ -31,8 +31,10 @@ import io.swagger.annotations.ApiModelProperty;
 import java.awt.Dimension;
 import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @ApiModel(description = "Media element which represents a media file or directory")
 @JsonInclude(JsonInclude.Include.NON_DEFAULT)
@@ -71,6 +73,15 @@ public class MediaElement implements Serializable {
     @ApiModelProperty(hidden = true)
     private Long size = 0L;
     
+    @ApiModelProperty(hidden = true)
+    private Long modified;
+    
+    @ApiModelProperty(hidden = true)
+    private String fileKey;
+    
+    @ApiModelProperty(hidden = true)
+    private String fingerprint;
+    
     @ApiModelProperty(value = "Duration (seconds)", readOnly = true, accessMode = ApiModelProperty.AccessMode.READ_ONLY, example = "234")
     private Double duration = 0d;
     
@@ -196,6 +207,23 @@ public class MediaElement implements Serializable {
         this.replaygainAlbum = replaygainAlbum;
     }
     
+    // Returns a copy of a media element with its own copies of its streams
+    public MediaElement(MediaElement element) {
+        this(element.id, element.type, element.directoryType, element.path, element.parentPath,
+             element.created, element.lastPlayed, element.lastScanned, element.excluded, element.format,
+             element.size, element.duration, element.bitrate, element.title, element.artist,
+             element.albumArtist, element.album, element.year, element.discNumber, element.discSubtitle,
+             element.trackNumber, element.genre, element.rating, element.tagline, element.description,
+             element.certificate, element.collection, element.replaygainTrack, element.replaygainAlbum);
+        
+        this.modified = element.modified;
+        this.fileKey = element.fileKey;
+        this.fingerprint = element.fingerprint;
+        this.videoStreams = element.videoStreams == null ? null : element.videoStreams.stream().map(VideoStream::new).collect(Collectors.toCollection(ArrayList::new));
+        this.audioStreams = element.audioStreams == null ? null : element.audioStreams.stream().map(AudioStream::new).collect(Collectors.toCollection(ArrayList::new));
+        this.subtitleStreams = element.subtitleStreams == null ? null : element.subtitleStreams.stream().map(SubtitleStream::new).collect(Collectors.toCollection(ArrayList::new));
+    }
+    
     @Override
     public String toString() {
         // Return 'type' specific string
@@ -355,6 +383,33 @@ public class MediaElement implements Serializable {
         this.size = size;
     }
     
+    @JsonIgnore
+    public Long getModified() {
+        return modified;
+    }
+    
+    public void setModified(Long modified) {
+        this.modified = modified;
+    }
+    
+    @JsonIgnore
+    public String getFileKey() {
+        return fileKey;
+    }
+    
+    public void setFileKey(String fileKey) {
+        this.fileKey = fileKey;
+    }
+    
+    @JsonIgnore
+    public String getFingerprint() {
+        return fingerprint;
+    }
+    
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+    
     public Double getDuration() {
         return duration;
     }
@@ -537,6 +592,16 @@ public class MediaElement implements Serializable {
         
         public Stream() {};
         
+        public Stream(Stream stream) {
+            this.mediaElementId = stream.mediaElementId;
+            this.streamId = stream.streamId;
+            this.codec = stream.codec;
+            this.title = stream.title;
+            this.language = stream.language;
+            this.isDefault = stream.isDefault;
+            this.isForced = stream.isForced;
+        }
+        
         public UUID getMediaElementId() {
             return mediaElementId;
         }
@@ -598,9 +663,23 @@ public class MediaElement implements Serializable {
         private Double fps;
         private Integer width, height, bitrate, maxBitrate, bps, gopSize;
         private Boolean interlaced;
+        private Float confidence;
         
         public VideoStream() {};
         
+        public VideoStream(VideoStream stream) {
+            super(stream);
+            this.fps = stream.fps;
+            this.width = stream.width;
+            this.height = stream.height;
+            this.bitrate = stream.bitrate;
+            this.maxBitrate = stream.maxBitrate;
+            this.bps = stream.bps;
+            this.gopSize = stream.gopSize;
+            this.interlaced = stream.interlaced;
+            this.confidence = stream.confidence;
+        }
+        
         public VideoStream(UUID mediaElementId,
                            Integer streamId,
                            String title,
@@ -721,6 +800,14 @@ public class MediaElement implements Serializable {
         public void setGOPSize(Integer gopSize) {
             this.gopSize = gopSize;
         }
+        
+        public Float getConfidence() {
+            return confidence;
+        }
+        
+        public void setConfidence(Float confidence) {
+            this.confidence = confidence;
+        }
     }
     
     public static class AudioStream extends Stream {
@@ -728,6 +815,14 @@ public class MediaElement implements Serializable {
         
         public AudioStream() {};
         
+        public AudioStream(AudioStream stream) {
+            super(stream);
+            this.sampleRate = stream.sampleRate;
+            this.channels = stream.channels;
+            this.bitrate = stream.bitrate;
+            this.bps = stream.bps;
+        }
+        
         public AudioStream(UUID mediaElementId,
                            Integer streamId,
                            String title,
@@ -807,6 +902,10 @@ public class MediaElement implements Serializable {
         
         public SubtitleStream() {};
         
+        public SubtitleStream(SubtitleStream stream) {
+            super(stream);
+        }
+        
         public SubtitleStream(UUID mediaElementId,
                               Integer streamId,
                               String title,
@@ -0,0 +1,138 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.domain;
+
+import java.util.UUID;
+
+/**
+ * Summary of the media elements in a directory which share an artist, album
+ * artist, album or collection. Maintained by the media scanner so browse
+ * lists can be read without grouping the whole media element table.
+ */
+public class MediaGroup {
+    
+    private byte type;
+    private String name;
+    private long folderID;
+    private String path;
+    private int elements;
+    private UUID elementID;
+    
+    public MediaGroup() {};
+    
+    public MediaGroup(byte type, String name, long folderID, String path, int elements, UUID elementID) {
+        this.type = type;
+        this.name = name;
+        this.folderID = folderID;
+        this.path = path;
+        this.elements = elements;
+        this.elementID = elementID;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(
+                "MediaGroup[Type=%s, Name=%s, FolderID=%s, Path=%s, Elements=%s, ElementID=%s]",
+                type, name == null ? "N/A" : name, folderID, path == null ? "N/A" : path, elements, elementID == null ? "N/A" : elementID.toString());
+    }
+    
+    public byte getType() {
+        return type;
+    }
+    
+    public void setType(byte type) {
+        this.type = type;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    // ID of the folder containing the media elements
+    public long getFolderID() {
+        return folderID;
+    }
+    
+    public void setFolderID(long folderID) {
+        this.folderID = folderID;
+    }
+    
+    // Path of the representative media element
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    // Number of media elements in the group
+    public int getElements() {
+        return elements;
+    }
+    
+    public void setElements(int elements) {
+        this.elements = elements;
+    }
+    
+    // ID of the representative media element
+    public UUID getElementID() {
+        return elementID;
+    }
+    
+    public void setElementID(UUID elementID) {
+        this.elementID = elementID;
+    }
+    
+    public static class MediaGroupType {
+        public static final byte ARTIST = 0;
+        public static final byte ALBUM_ARTIST = 1;
+        public static final byte ALBUM = 2;
+        public static final byte COLLECTION = 3;
+        
+        // Media element column each group type is formed from
+        public static String getColumn(byte type) {
+            switch(type) {
+                case ARTIST:
+                    return "Artist";
+                case ALBUM_ARTIST:
+                    return "AlbumArtist";
+                case ALBUM:
+                    return "Album";
+                case COLLECTION:
+                    return "Collection";
+                default:
+                    return null;
+            }
+        }
+        
+        public static byte[] values() {
+            return new byte[] {ARTIST, ALBUM_ARTIST, ALBUM, COLLECTION};
+        }
+    }
+}
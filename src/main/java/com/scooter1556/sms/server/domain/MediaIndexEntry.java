@@ -0,0 +1,108 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.domain;
+
+import java.util.UUID;
+
+/**
+ * Compact summary of a media element used by the media scanner to make
+ * per-file decisions without loading full media elements from the database.
+ */
+public class MediaIndexEntry {
+    
+    private final UUID id;
+    private final byte type;
+    private final long lastScanned;
+    private final long size;
+    private final Long modified;
+    private final String fileKey;
+    private final String fingerprint;
+    
+    public MediaIndexEntry(UUID id, byte type, long lastScanned, long size, Long modified, String fileKey, String fingerprint) {
+        this.id = id;
+        this.type = type;
+        this.lastScanned = lastScanned;
+        this.size = size;
+        this.modified = modified;
+        this.fileKey = fileKey;
+        this.fingerprint = fingerprint;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(
+                "MediaIndexEntry[ID=%s, Type=%s, LastScanned=%s, Size=%s, Modified=%s, FileKey=%s, Fingerprint=%s]",
+                id == null ? "?" : id.toString(), type, lastScanned, size, modified == null ? "N/A" : modified, fileKey == null ? "N/A" : fileKey, fingerprint == null ? "N/A" : fingerprint);
+    }
+    
+    public UUID getID() {
+        return id;
+    }
+    
+    public byte getType() {
+        return type;
+    }
+    
+    public long getLastScanned() {
+        return lastScanned;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public Long getModified() {
+        return modified;
+    }
+    
+    public String getFileKey() {
+        return fileKey;
+    }
+    
+    public String getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * Returns whether the stored fingerprint of this entry matches the given file attributes.
+     * 
+     * The file key is only compared if it is available for both.
+     *
+     * @param size The current file size.
+     * @param modified The current modification time in milliseconds.
+     * @param fileKey The current file key or null if not supported.
+     * @return True if the file appears to be unchanged.
+     */
+    public boolean matches(long size, long modified, String fileKey) {
+        if(this.modified == null) {
+            return false;
+        }
+        
+        if(this.size != size || this.modified != modified) {
+            return false;
+        }
+        
+        return this.fileKey == null || fileKey == null || this.fileKey.equals(fileKey);
+    }
+}
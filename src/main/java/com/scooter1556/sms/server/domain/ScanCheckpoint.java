@@ -0,0 +1,145 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.domain;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Progress of an unfinished media scan.
+ * 
+ * Directories listed in the checkpoint have been written to the database along
+ * with everything beneath them, so a resumed scan can skip them entirely.
+ * The original scan time is kept so media written before the interruption
+ * isn't treated as deleted once the scan completes.
+ */
+public class ScanCheckpoint {
+    
+    private UUID folderId;
+    private String path;
+    private Timestamp scanTime;
+    private Timestamp lastScanned;
+    private Timestamp updated;
+    private long folders, audio, video, playlists;
+    private Set<String> directories = new HashSet<>();
+    
+    public ScanCheckpoint() {}
+    
+    public ScanCheckpoint(UUID folderId, String path, Timestamp scanTime, Timestamp lastScanned) {
+        this.folderId = folderId;
+        this.path = path;
+        this.scanTime = scanTime;
+        this.lastScanned = lastScanned;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(
+                "ScanCheckpoint[FolderID=%s, Path=%s, ScanTime=%s, Updated=%s, Folders=%s, Audio=%s, Video=%s, Playlists=%s, Directories=%s]",
+                folderId == null ? "?" : folderId.toString(), path == null ? "N/A" : path, scanTime == null ? "N/A" : scanTime.toString(), updated == null ? "N/A" : updated.toString(), folders, audio, video, playlists, directories.size());
+    }
+    
+    public UUID getFolderID() {
+        return folderId;
+    }
+    
+    public void setFolderID(UUID folderId) {
+        this.folderId = folderId;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public Timestamp getScanTime() {
+        return scanTime;
+    }
+    
+    public void setScanTime(Timestamp scanTime) {
+        this.scanTime = scanTime;
+    }
+    
+    // Time the media folder was last scanned when this scan started
+    public Timestamp getLastScanned() {
+        return lastScanned;
+    }
+    
+    public void setLastScanned(Timestamp lastScanned) {
+        this.lastScanned = lastScanned;
+    }
+    
+    public Timestamp getUpdated() {
+        return updated;
+    }
+    
+    public void setUpdated(Timestamp updated) {
+        this.updated = updated;
+    }
+    
+    public long getFolders() {
+        return folders;
+    }
+    
+    public void setFolders(long folders) {
+        this.folders = folders;
+    }
+    
+    public long getAudio() {
+        return audio;
+    }
+    
+    public void setAudio(long audio) {
+        this.audio = audio;
+    }
+    
+    public long getVideo() {
+        return video;
+    }
+    
+    public void setVideo(long video) {
+        this.video = video;
+    }
+    
+    public long getPlaylists() {
+        return playlists;
+    }
+    
+    public void setPlaylists(long playlists) {
+        this.playlists = playlists;
+    }
+    
+    public Set<String> getDirectories() {
+        return directories;
+    }
+    
+    public void setDirectories(Set<String> directories) {
+        this.directories = directories;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.domain;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+@ApiModel(description = "Progress of a media scan")
+public class ScanProgress implements Serializable {
+    
+    @ApiModelProperty(value = "Path being scanned", example = "/media/music")
+    private String path;
+    
+    @ApiModelProperty(value = "Whether the scan is still running", example = "true")
+    private Boolean running = false;
+    
+    @ApiModelProperty(value = "Time the scan started")
+    private Timestamp started;
+    
+    @ApiModelProperty(value = "Time spent scanning (ms)", example = "65000")
+    private Long elapsed = 0L;
+    
+    @ApiModelProperty(value = "Number of media files scanned", example = "1520")
+    private Long files = 0L;
+    
+    @ApiModelProperty(value = "Number of folders scanned", example = "130")
+    private Long folders = 0L;
+    
+    @ApiModelProperty(value = "Number of playlists scanned", example = "4")
+    private Long playlists = 0L;
+    
+    @ApiModelProperty(value = "Media files scanned per second", example = "23.4")
+    private Double filesPerSecond = 0.0;
+    
+    @ApiModelProperty(value = "Number of unchanged files which did not need to be parsed", example = "1400")
+    private Long unchangedFiles = 0L;
+    
+    @ApiModelProperty(value = "Number of moved files matched to existing media", example = "3")
+    private Long movedFiles = 0L;
+    
+    @ApiModelProperty(value = "Number of files which did not need to be parsed again", example = "1403")
+    private Long reprobesSkipped = 0L;
+    
+    @ApiModelProperty(value = "Number of files parsed for metadata", example = "117")
+    private Long probes = 0L;
+    
+    @ApiModelProperty(value = "Median time taken to parse a file (ms)", example = "85")
+    private Long probeLatencyP50 = 0L;
+    
+    @ApiModelProperty(value = "90th percentile time taken to parse a file (ms)", example = "240")
+    private Long probeLatencyP90 = 0L;
+    
+    @ApiModelProperty(value = "99th percentile time taken to parse a file (ms)", example = "910")
+    private Long probeLatencyP99 = 0L;
+    
+    @ApiModelProperty(value = "Maximum time taken to parse a file (ms)", example = "1530")
+    private Long probeLatencyMax = 0L;
+    
+    @ApiModelProperty(value = "Number of batches written to the database", example = "12")
+    private Long writes = 0L;
+    
+    @ApiModelProperty(value = "Mean time taken to write a batch (ms)", example = "45")
+    private Long writeLatencyMean = 0L;
+    
+    @ApiModelProperty(value = "Maximum time taken to write a batch (ms)", example = "310")
+    private Long writeLatencyMax = 0L;
+    
+    @ApiModelProperty(value = "Number of directories waiting to be written", example = "3")
+    private Integer directoryQueue = 0;
+    
+    @ApiModelProperty(value = "Number of files waiting to be parsed", example = "8")
+    private Integer probeQueue = 0;
+    
+    @ApiModelProperty(value = "Estimated number of media files remaining based on the previous scan", example = "480")
+    private Long remaining;
+    
+    @ApiModelProperty(value = "Estimated time remaining (s)", example = "20")
+    private Long eta;
+
+    public ScanProgress() {};
+    
+    @Override
+    public String toString() {
+        return String.format(
+                "ScanProgress[Path=%s, Running=%s, Files=%s, Folders=%s, Playlists=%s, Files/sec=%.1f, Unchanged=%s, Moved=%s, Probes=%s, Probe P50/P90/P99/Max (ms)=%s/%s/%s/%s, Writes=%s, Write Mean/Max (ms)=%s/%s, Directory Queue=%s, Probe Queue=%s, ETA (s)=%s]",
+                path == null ? "N/A" : path, running.toString(), files.toString(), folders.toString(), playlists.toString(), filesPerSecond, unchangedFiles.toString(), movedFiles.toString(), probes.toString(), probeLatencyP50.toString(), probeLatencyP90.toString(), probeLatencyP99.toString(), probeLatencyMax.toString(), writes.toString(), writeLatencyMean.toString(), writeLatencyMax.toString(), directoryQueue.toString(), probeQueue.toString(), eta == null ? "N/A" : eta.toString());
+    }
+
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Boolean getRunning() {
+        return running;
+    }
+    
+    public void setRunning(Boolean running) {
+        this.running = running;
+    }
+
+    public Timestamp getStarted() {
+        return started;
+    }
+    
+    public void setStarted(Timestamp started) {
+        this.started = started;
+    }
+
+    public Long getElapsed() {
+        return elapsed;
+    }
+    
+    public void setElapsed(Long elapsed) {
+        this.elapsed = elapsed;
+    }
+
+    public Long getFiles() {
+        return files;
+    }
+    
+    public void setFiles(Long files) {
+        this.files = files;
+    }
+
+    public Long getFolders() {
+        return folders;
+    }
+    
+    public void setFolders(Long folders) {
+        this.folders = folders;
+    }
+
+    public Long getPlaylists() {
+        return playlists;
+    }
+    
+    public void setPlaylists(Long playlists) {
+        this.playlists = playlists;
+    }
+
+    public Double getFilesPerSecond() {
+        return filesPerSecond;
+    }
+    
+    public void setFilesPerSecond(Double filesPerSecond) {
+        this.filesPerSecond = filesPerSecond;
+    }
+
+    public Long getUnchangedFiles() {
+        return unchangedFiles;
+    }
+    
+    public void setUnchangedFiles(Long unchangedFiles) {
+        this.unchangedFiles = unchangedFiles;
+    }
+
+    public Long getMovedFiles() {
+        return movedFiles;
+    }
+    
+    public void setMovedFiles(Long movedFiles) {
+        this.movedFiles = movedFiles;
+    }
+
+    public Long getReprobesSkipped() {
+        return reprobesSkipped;
+    }
+    
+    public void setReprobesSkipped(Long reprobesSkipped) {
+        this.reprobesSkipped = reprobesSkipped;
+    }
+
+    public Long getProbes() {
+        return probes;
+    }
+    
+    public void setProbes(Long probes) {
+        this.probes = probes;
+    }
+
+    public Long getProbeLatencyP50() {
+        return probeLatencyP50;
+    }
+    
+    public void setProbeLatencyP50(Long probeLatencyP50) {
+        this.probeLatencyP50 = probeLatencyP50;
+    }
+
+    public Long getProbeLatencyP90() {
+        return probeLatencyP90;
+    }
+    
+    public void setProbeLatencyP90(Long probeLatencyP90) {
+        this.probeLatencyP90 = probeLatencyP90;
+    }
+
+    public Long getProbeLatencyP99() {
+        return probeLatencyP99;
+    }
+    
+    public void setProbeLatencyP99(Long probeLatencyP99) {
+        this.probeLatencyP99 = probeLatencyP99;
+    }
+
+    public Long getProbeLatencyMax() {
+        return probeLatencyMax;
+    }
+    
+    public void setProbeLatencyMax(Long probeLatencyMax) {
+        this.probeLatencyMax = probeLatencyMax;
+    }
+
+    public Long getWrites() {
+        return writes;
+    }
+    
+    public void setWrites(Long writes) {
+        this.writes = writes;
+    }
+
+    public Long getWriteLatencyMean() {
+        return writeLatencyMean;
+    }
+    
+    public void setWriteLatencyMean(Long writeLatencyMean) {
+        this.writeLatencyMean = writeLatencyMean;
+    }
+
+    public Long getWriteLatencyMax() {
+        return writeLatencyMax;
+    }
+    
+    public void setWriteLatencyMax(Long writeLatencyMax) {
+        this.writeLatencyMax = writeLatencyMax;
+    }
+
+    public Integer getDirectoryQueue() {
+        return directoryQueue;
+    }
+    
+    public void setDirectoryQueue(Integer directoryQueue) {
+        this.directoryQueue = directoryQueue;
+    }
+
+    public Integer getProbeQueue() {
+        return probeQueue;
+    }
+    
+    public void setProbeQueue(Integer probeQueue) {
+        this.probeQueue = probeQueue;
+    }
+
+    public Long getRemaining() {
+        return remaining;
+    }
+    
+    public void setRemaining(Long remaining) {
+        this.remaining = remaining;
+    }
+
+    public Long getEta() {
+        return eta;
+    }
+    
+    public void setEta(Long eta) {
+        this.eta = eta;
+    }
+}
@@ -10,6 +10,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.io.FilenameUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +25,18 @@ public class PlaylistService {
     private MediaDao mediaDao;
     
     public List<MediaElement> parsePlaylist(String playlistPath) {
+        return parsePlaylist(playlistPath, mediaDao.getMediaElementFileNameIndex(MediaElementType.AUDIO));
+    }
+    
+    //
+    // Resolves playlist entries using an index of media elements by file name.
+    // The index can be shared when parsing several playlists.
+    //
+    public List<MediaElement> parsePlaylist(String playlistPath, Map<String, List<MediaElement>> index) {
+        if(index == null) {
+            return null;
+        }
+        
         List<String> contents = null;
         List<MediaElement> mediaElements = new ArrayList<>();
         
@@ -47,7 +60,7 @@ public class PlaylistService {
             }
             
             Path path = Paths.get(FilenameUtils.separatorsToSystem(line));                       
-            List<MediaElement> results = mediaDao.getMediaElementsByName(path.getFileName().toString(), MediaElementType.AUDIO);
+            List<MediaElement> results = index.get(path.getFileName().toString());
             
             // If nothing is found continue
             if(results == null || results.isEmpty()) {
@@ -33,17 +33,27 @@ import com.scooter1556.sms.server.domain.MediaElement.MediaElementType;
 import com.scooter1556.sms.server.domain.MediaElement.SubtitleStream;
 import com.scooter1556.sms.server.domain.MediaElement.VideoStream;
 import com.scooter1556.sms.server.domain.MediaFolder;
+import com.scooter1556.sms.server.domain.MediaIndexEntry;
 import com.scooter1556.sms.server.domain.Playlist;
+import com.scooter1556.sms.server.domain.ScanCheckpoint;
+import com.scooter1556.sms.server.domain.ScanProgress;
 import com.scooter1556.sms.server.service.LogService.Level;
 import com.scooter1556.sms.server.service.parser.FrameParser;
 import com.scooter1556.sms.server.service.parser.MetadataParser;
 import com.scooter1556.sms.server.service.parser.NFOParser;
 import com.scooter1556.sms.server.service.parser.NFOParser.NFOData;
+import com.scooter1556.sms.server.utilities.DirectoryCache;
+import com.scooter1556.sms.server.utilities.FileUtils;
+import com.scooter1556.sms.server.utilities.LatencyHistogram;
 import com.scooter1556.sms.server.utilities.LogUtils;
 import com.scooter1556.sms.server.utilities.MediaUtils;
 import com.scooter1556.sms.server.utilities.PlaylistUtils;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.FileStore;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import static java.nio.file.FileVisitResult.CONTINUE;
@@ -58,13 +68,31 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.io.FilenameUtils;
@@ -100,22 +128,39 @@ public class ScannerService implements DisposableBean {
     private PlaylistService playlistService;
     
     @Autowired
-    private SessionService sessionService;
+    private TaskService taskService;
 
     private static final String[] INFO_FILE_TYPES = {"nfo"};
     private static final String[] EXCLUDED_FILE_NAMES = {"extras", "trailers"};
 
     private static final Pattern FILE_NAME = Pattern.compile("(.+)(\\s+[(\\[](\\d{4})[)\\]])$?");
+    
+    // Number of parsed directories which can be waiting for the writer
+    private static final int DIRECTORY_QUEUE_SIZE = 64;
 
-    private long mTotal = 0, dTotal = 0;
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong dTotal = new AtomicLong();
+    
+    // Progress of directories currently being scanned and those finished during the current scan
+    private final Map<String, ParseFiles> activeScans = new ConcurrentHashMap<>();
+    private final Map<String, ScanProgress> completedScans = new ConcurrentHashMap<>();
         
     // Media scanning thread pool
     ExecutorService scanningThreads = null;
-    boolean abortScan = false;
+    volatile boolean abortScan = false;
+    
+    // Metadata parsing thread pool
+    ThreadPoolExecutor probeThreads = null;
+    
+    // Media elements which have been matched to moved files during the current scan
+    private final Set<UUID> movedElements = ConcurrentHashMap.newKeySet();
     
-    // Deep scan executor
+    // Scan time of directories whose deleted media is removed once the current scan has finished
+    private final Map<String, Timestamp> pendingRemovals = new ConcurrentHashMap<>();
+    
+    // Deep scan thread pool
     ExecutorService deepScanExecutor = null;
-    boolean abortDeepScan = false;
+    volatile boolean abortDeepScan = false;
     
     // Logs
     String deepScanLog;
@@ -125,6 +170,10 @@ public class ScannerService implements DisposableBean {
     public void destroy() {
         stopScanning();        
         stopDeepScan();
+        
+        if(probeThreads != null) {
+            probeThreads.shutdown();
+        }
     }
     
     @Scheduled(cron="#{config.mediaScanSchedule}")
@@ -141,20 +190,23 @@ public class ScannerService implements DisposableBean {
     
     @Scheduled(cron="#{config.deepScanSchedule}")
     public int startDeepScan() {
-        LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "startDeepScan()", null);
+        return startDeepScan(false);
+    }
+    
+    //
+    // Starts a deep scan of incomplete video streams.
+    // A full scan analyses every frame, including streams previously analysed using samples.
+    //
+    public int startDeepScan(boolean full) {
+        LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "startDeepScan(" + full + ")", null);
         
         // Check a scanning process is not already active
         if (isScanning() || isDeepScanning()) {
             return SMS.Status.NOT_ALLOWED;
         }
         
-        // Check there are no active sessions which may be affected
-        if(sessionService.getNumJobs() > 0) {
-            return SMS.Status.NOT_ALLOWED;
-        }
-        
         // List of streams to scan
-        List<VideoStream> streams = mediaDao.getIncompleteVideoStreams();
+        List<VideoStream> streams = mediaDao.getIncompleteVideoStreams(full);
         
         // Do some Checks
         if(streams == null) {
@@ -167,7 +219,7 @@ public class ScannerService implements DisposableBean {
         
         // Start scanning
         abortDeepScan = false;
-        deepScan(streams);
+        deepScan(streams, full);
         
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Started deep scan of " + streams.size() + " streams.", null);
         
@@ -202,14 +254,33 @@ public class ScannerService implements DisposableBean {
     // Returns the number of files scanned so far.
     //
     public long getScanCount() {
-        return mTotal;
+        return mTotal.get();
+    }
+    
+    //
+    // Returns progress of each directory scanned during the current media scan.
+    //
+    public List<ScanProgress> getScanProgress() {
+        List<ScanProgress> progress = new ArrayList<>();
+        
+        for(ParseFiles fileParser : activeScans.values()) {
+            progress.add(fileParser.getProgress(true));
+        }
+        
+        for(Map.Entry<String, ScanProgress> entry : completedScans.entrySet()) {
+            if(!activeScans.containsKey(entry.getKey())) {
+                progress.add(entry.getValue());
+            }
+        }
+        
+        return progress;
     }
     
     //
     // Returns the number of streams scanned so far.
     //
     public long getDeepScanCount() {
-        return dTotal;
+        return dTotal.get();
     }
 
     //
@@ -229,7 +300,40 @@ public class ScannerService implements DisposableBean {
         stopDeepScan();
         
         // Reset scan count
-        mTotal = 0;
+        mTotal.set(0);
+        
+        // Reset abort flag
+        abortScan = false;
+        
+        // Log
+        final String log = SettingsService.getInstance().getLogDirectory() + File.separator + "mediascanner-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYYMMdd_HHmmss")) + ".log";
+        
+        // Scan each media folder in its entirety
+        Map<MediaFolder, Set<Path>> directories = new LinkedHashMap<>();
+        
+        for(MediaFolder folder : folders) {
+            directories.put(folder, Collections.singleton(FileSystems.getDefault().getPath(folder.getPath())));
+        }
+        
+        scanByDevice(directories, log);
+    }
+    
+    //
+    // Scans directories within media folders in a separate thread.
+    // Returns false if a scan is already in progress.
+    //
+    public synchronized boolean startDirectoryScanning(final Map<MediaFolder, Set<Path>> directories) {
+        // Check if media is already being scanned
+        if (isScanning()) {
+            return false;
+        }
+        
+        if(directories == null || directories.isEmpty()) {
+            return true;
+        }
+        
+        // Reset scan count
+        mTotal.set(0);
         
         // Reset abort flag
         abortScan = false;
@@ -237,15 +341,90 @@ public class ScannerService implements DisposableBean {
         // Log
         final String log = SettingsService.getInstance().getLogDirectory() + File.separator + "mediascanner-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYYMMdd_HHmmss")) + ".log";
         
+        scanByDevice(directories, log);
+        
+        return true;
+    }
+    
+    //
+    // Groups media folders by the device they are stored on.
+    // Folders on the same device are scanned by a limited number of workers while
+    // different devices are scanned in parallel.
+    //
+    private void scanByDevice(final Map<MediaFolder, Set<Path>> directories, final String log) {
+        movedElements.clear();
+        completedScans.clear();
+        pendingRemovals.clear();
+        
+        Map<String, Queue<MediaFolder>> devices = new LinkedHashMap<>();
+        
+        for(MediaFolder folder : directories.keySet()) {
+            devices.computeIfAbsent(getDevice(folder), device -> new ConcurrentLinkedQueue<>()).add(folder);
+        }
+        
+        int deviceWorkers = SettingsService.getInstance().getMediaScanDeviceWorkers();
+        List<Runnable> workers = new ArrayList<>();
+        
+        for(final Map.Entry<String, Queue<MediaFolder>> device : devices.entrySet()) {
+            final int count = Math.min(deviceWorkers, device.getValue().size());
+            final AtomicInteger remaining = new AtomicInteger(count);
+            final AtomicLong items = new AtomicLong();
+            final long start = System.currentTimeMillis();
+            
+            LogUtils.writeToLog(log, "Scanning " + device.getValue().size() + " media folders on device " + device.getKey() + " using " + count + " workers.", Level.INFO, true);
+            
+            for(int i = 0; i < count; i++) {
+                workers.add(() -> {
+                    MediaFolder folder;
+                    
+                    // Take media folders from this device until there are none left
+                    while(!abortScan && (folder = device.getValue().poll()) != null) {
+                        for(Path path : directories.get(folder)) {
+                            if(abortScan) {
+                                break;
+                            }
+
+                            // Scan the entire media folder if necessary
+                            if(path.toString().equals(folder.getPath())) {
+                                items.addAndGet(scanMediaFolder(folder, log));
+                            } else {
+                                items.addAndGet(scanMediaDirectory(folder, path, log));
+                            }
+                        }
+                    }
+                    
+                    // Report device throughput once all of its workers have finished
+                    if(remaining.decrementAndGet() == 0) {
+                        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+                        LogUtils.writeToLog(log, String.format("Finished scanning device %s: %d items in %.1f seconds (%.1f items/sec)", device.getKey(), items.get(), seconds, items.get() / seconds), Level.INFO, true);
+                    }
+                });
+            }
+        }
+        
         // Create media scanning threads
-        scanningThreads = Executors.newFixedThreadPool(folders.size());
-
-        // Submit scanning jobs for each media folder
-        for (final MediaFolder folder : folders) {
-            scanningThreads.submit(new Runnable() {
-                @Override
-                public void run() {
-                    scanMediaFolder(folder, log);
+        scanningThreads = Executors.newFixedThreadPool(workers.size());
+        
+        final AtomicInteger activeWorkers = new AtomicInteger(workers.size());
+        final long start = System.currentTimeMillis();
+        resetPeakHeap();
+        
+        for(final Runnable worker : workers) {
+            scanningThreads.submit(() -> {
+                taskService.begin();
+                
+                try {
+                    worker.run();
+                } finally {
+                    taskService.end();
+                    
+                    // Remove deleted media and summarise the scan once all devices have finished
+                    if(activeWorkers.decrementAndGet() == 0) {
+                        removeDeletedMedia(log);
+                        
+                        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+                        LogUtils.writeToLog(log, String.format("Finished media scan: %d items in %.1f seconds (%.1f items/sec, peak heap %d MB)", mTotal.get(), seconds, mTotal.get() / seconds, getPeakHeap() / (1024 * 1024)), Level.INFO, true);
+                    }
                 }
             });
         }
@@ -254,6 +433,72 @@ public class ScannerService implements DisposableBean {
         scanningThreads.shutdown();
     }
     
+    //
+    // Removes media which no longer exists from directories scanned during the current scan.
+    // This waits until every directory has been scanned so media moved between media folders
+    // is matched to its new location before the old media element could be removed.
+    //
+    private void removeDeletedMedia(String log) {
+        if(abortScan) {
+            pendingRemovals.clear();
+            return;
+        }
+        
+        for(Map.Entry<String, Timestamp> removal : pendingRemovals.entrySet()) {
+            try {
+                mediaDao.removeDeletedMediaElements(removal.getKey(), removal.getValue());
+                mediaDao.removeDeletedPlaylists(removal.getKey(), removal.getValue());
+                mediaDao.removeEmptyFolders(removal.getKey());
+            } catch (Exception ex) {
+                LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to remove deleted media for " + removal.getKey(), ex);
+            }
+        }
+        
+        LogUtils.writeToLog(log, "Removed deleted media from " + pendingRemovals.size() + " scanned directories.", Level.DEBUG, true);
+        pendingRemovals.clear();
+    }
+    
+    //
+    // Resets the peak usage of heap memory pools so it can be measured over a scan.
+    //
+    private static void resetPeakHeap() {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+    
+    //
+    // Returns the peak heap usage in bytes since it was last reset.
+    //
+    private static long getPeakHeap() {
+        long peak = 0;
+        
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        
+        return peak;
+    }
+    
+    //
+    // Returns an identifier for the device a media folder is stored on.
+    //
+    private String getDevice(MediaFolder folder) {
+        try {
+            FileStore store = Files.getFileStore(FileSystems.getDefault().getPath(folder.getPath()));
+            return store.name();
+        } catch (IOException | RuntimeException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Unable to determine device for media folder " + folder.getPath(), ex);
+            
+            // Treat the media folder as its own device
+            return folder.getPath();
+        }
+    }
+    
     //
     // Scans playlist in a separate thread.
     //
@@ -272,14 +517,26 @@ public class ScannerService implements DisposableBean {
         abortScan = false;
         
         // Create media scanning threads
-        scanningThreads = Executors.newFixedThreadPool(playlists.size());
+        scanningThreads = Executors.newFixedThreadPool(Math.min(playlists.size(), SettingsService.getInstance().getPlaylistScanWorkers()));
+        
+        // Index of audio elements by file name, built once by the first worker and shared by all playlists
+        final FutureTask<Map<String, List<MediaElement>>> index = new FutureTask<>(() -> mediaDao.getMediaElementFileNameIndex(MediaElementType.AUDIO));
 
         // Submit processing jobs for each playlist
         for (final Playlist playlist : playlists) {
             scanningThreads.submit(new Runnable() {
                 @Override
                 public void run() {
-                    scanPlaylist(playlist);
+                    taskService.begin();
+                    
+                    try {
+                        index.run();
+                        scanPlaylist(playlist, index.get());
+                    } catch (InterruptedException | ExecutionException ex) {
+                        LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to scan playlist " + playlist.getPath(), ex);
+                    } finally {
+                        taskService.end();
+                    }
                 }
             });
         }
@@ -289,47 +546,66 @@ public class ScannerService implements DisposableBean {
     }
     
     //
-    // Performs a deep scan of media streams
+    // Performs a deep scan of media streams using a pool of workers.
+    // Each stream is saved as soon as it has been parsed so an interrupted scan resumes where it stopped.
     //
-    private synchronized void deepScan(final List<VideoStream> streams) {   
+    private synchronized void deepScan(final List<VideoStream> streams, final boolean full) {   
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "deepScan()", null);
         
         // Create log file
         deepScanLog = SettingsService.getInstance().getLogDirectory() + File.separator + "deepscan-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYYMMdd_HHmmss")) + ".log";
         
         // Reset counter
-        dTotal = 0;
+        dTotal.set(0);
         
-        // Create media scanning threads
-        deepScanExecutor = Executors.newSingleThreadExecutor();
-
-        deepScanExecutor.submit(() -> {
-            LogUtils.writeToLog(deepScanLog, "Found " + streams.size() + " streams to parse.", Level.DEBUG, true);
-            
-            for(VideoStream stream : streams) {
-                dTotal ++;
-                
-                LogUtils.writeToLog(deepScanLog, "Scanning stream " + stream.getStreamId() + " for media element with id " + stream.getMediaElementId(), Level.DEBUG, true);
-                
-                VideoStream update = frameParser.parse(stream);
-                
-                // Check for abort
-                if(abortDeepScan) {
-                    break;
-                }
+        // Create deep scanning threads
+        int workers = Math.min(SettingsService.getInstance().getDeepScanWorkers(), streams.size());
+        deepScanExecutor = Executors.newFixedThreadPool(workers);
+        
+        LogUtils.writeToLog(deepScanLog, "Found " + streams.size() + " streams to parse using " + workers + " workers.", Level.DEBUG, true);
+        
+        final AtomicInteger remaining = new AtomicInteger(streams.size());
+        
+        // Streams are queued newest first
+        for(final VideoStream stream : streams) {
+            deepScanExecutor.submit(() -> {
+                taskService.begin();
                 
-                if(update != null) {
-                    mediaDao.updateVideoStream(update);
-                    LogUtils.writeToLog(deepScanLog, stream.toString(), Level.DEBUG, true);
+                try {
+                    // Wait for active transcodes to finish
+                    taskService.await(TaskService.Priority.LOW, () -> abortDeepScan);
+                    
+                    // Check for abort
+                    if(abortDeepScan) {
+                        return;
+                    }
+                    
+                    dTotal.incrementAndGet();
+                    
+                    LogUtils.writeToLog(deepScanLog, "Scanning stream " + stream.getStreamId() + " for media element with id " + stream.getMediaElementId(), Level.DEBUG, true);
+
+                    VideoStream update = frameParser.parse(stream, full);
+
+                    // Check for abort
+                    if(abortDeepScan) {
+                        return;
+                    }
+
+                    if(update != null) {
+                        mediaDao.updateDeepScannedVideoStream(update, new Timestamp(System.currentTimeMillis()));
+                        LogUtils.writeToLog(deepScanLog, stream.toString(), Level.DEBUG, true);
+                    }
+
+                    LogUtils.writeToLog(deepScanLog, "Finished Scanning stream: " + stream.getStreamId() + " for media element with id " + stream.getMediaElementId(), Level.DEBUG, true);
+                } finally {
+                    taskService.end();
+                    
+                    if(remaining.decrementAndGet() == 0 && !abortDeepScan) {
+                        LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Deep scan completed successfully.", null);
+                    }
                 }
-                
-                LogUtils.writeToLog(deepScanLog, "Finished Scanning stream: " + stream.getStreamId() + " for media element with id " + stream.getMediaElementId(), Level.DEBUG, true);
-            }
-            
-            if(!abortDeepScan) {
-                LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Deep scan completed successfully.", null);
-            }
-        });
+            });
+        }
         
         deepScanExecutor.shutdown();
     }
@@ -346,6 +622,20 @@ public class ScannerService implements DisposableBean {
         }
     }
     
+    //
+    // Returns the thread pool used to parse metadata, creating it if necessary.
+    // Tasks are run by the submitting thread when the pool is saturated.
+    //
+    private synchronized ExecutorService getProbeThreads() {
+        if(probeThreads == null) {
+            int workers = SettingsService.getInstance().getMediaScanProbeWorkers();
+            probeThreads = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(workers * 2), (task, executor) -> task.run());
+            probeThreads.allowCoreThreadTimeOut(true);
+        }
+        
+        return probeThreads;
+    }
+    
     public void stopScanning() {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "stopScanning()", null);
         
@@ -357,16 +647,19 @@ public class ScannerService implements DisposableBean {
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Scanning stopped.", null);
     }
     
-    private void scanPlaylist(Playlist playlist) {
+    private void scanPlaylist(Playlist playlist, Map<String, List<MediaElement>> index) {
         // Check this is a file based playlist
         if(playlist.getPath() == null || playlist.getPath().isEmpty()) {
             return;
         }
         
+        // Throttle scanning while transcodes are active
+        taskService.await(TaskService.Priority.NORMAL, () -> abortScan);
+        
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Scanning playlist " + playlist.getPath(), null);
 
         // Parse playlist
-        List<MediaElement> mediaElements = playlistService.parsePlaylist(playlist.getPath());
+        List<MediaElement> mediaElements = playlistService.parsePlaylist(playlist.getPath(), index);
         
         // Check for abort
         if(abortScan) {
@@ -385,82 +678,136 @@ public class ScannerService implements DisposableBean {
         LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Finished scanning playlist " + playlist.getPath() + " (Found " + mediaElements.size() + " items)", null);
     }
     
-    private void scanMediaFolder(MediaFolder folder, String log) {
-        Path path = FileSystems.getDefault().getPath(folder.getPath());
-        ParseFiles fileParser = new ParseFiles(folder, log);
+    private long scanMediaFolder(MediaFolder folder, String log) {
+        LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Scanning media folder " + folder.getPath(), null);
+        
+        ParseFiles fileParser = scanDirectory(folder, FileSystems.getDefault().getPath(folder.getPath()), log);
+        
+        // Check the scan completed
+        if(fileParser == null) {
+            return 0;
+        }
+        
+        // Update folder statistics
+        folder.setFolders(fileParser.getFolders());
+        folder.setFiles(fileParser.getFiles());
+        folder.setLastScanned(fileParser.getScanTime());
+
+        // Determine primary media type in folder
+        if(folder.getType() == null || folder.getType() == MediaFolder.ContentType.UNKNOWN) {
+            long audio, video, playlist;
+
+            // Get counters from parser
+            audio = fileParser.getAudio();
+            video = fileParser.getVideo();
+            playlist = fileParser.getPlaylists();
+
+            if(audio == 0 && video == 0 && playlist > 0) {
+                folder.setType(MediaFolder.ContentType.PLAYLIST);
+            } else if(audio > video) {
+                folder.setType(MediaFolder.ContentType.AUDIO);
+            } else if(video > audio) {
+                folder.setType(MediaFolder.ContentType.VIDEO);
+            }
+        }
+
+        settingsDao.updateMediaFolder(folder);
+
+        LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Finished scanning media folder " + folder.getPath() + " (Items Scanned: " + fileParser.getTotal() + ", Folders: " + fileParser.getFolders() + ", Files: " + fileParser.getFiles() + ", Playlists: " + fileParser.getPlaylists() + ", Unchanged Files: " + fileParser.getUnchangedFiles() + ", Moved Files: " + fileParser.getMovedFiles() + ")", null);
+        
+        return fileParser.getTotal();
+    }
+    
+    private long scanMediaDirectory(MediaFolder folder, Path path, String log) {
+        LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Scanning directory " + path.toString(), null);
+        
+        ParseFiles fileParser = scanDirectory(folder, path, log);
+        
+        // Check the scan completed
+        if(fileParser == null) {
+            return 0;
+        }
+        
+        LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Finished scanning directory " + path.toString() + " (Items Scanned: " + fileParser.getTotal() + ", Folders: " + fileParser.getFolders() + ", Files: " + fileParser.getFiles() + ", Playlists: " + fileParser.getPlaylists() + ", Unchanged Files: " + fileParser.getUnchangedFiles() + ", Moved Files: " + fileParser.getMovedFiles() + ")", null);
+        
+        return fileParser.getTotal();
+    }
+    
+    //
+    // Scans a directory within a media folder and updates the database.
+    // Returns null if the scan was aborted or failed.
+    //
+    private ParseFiles scanDirectory(MediaFolder folder, Path path, String log) {
+        // Load index of existing media elements and playlists for this directory
+        Map<String, MediaIndexEntry> elementIndex = mediaDao.getMediaElementIndex(path.toString());
+        Map<String, Playlist> playlistIndex = mediaDao.getPlaylistIndex(path.toString());
+        
+        if(elementIndex == null || playlistIndex == null) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Unable to load existing media for " + path.toString(), null);
+            return null;
+        }
+        
+        LogUtils.writeToLog(log, "Loaded " + elementIndex.size() + " media elements and " + playlistIndex.size() + " playlists for " + path.toString(), Level.DEBUG, true);
+        
+        // Check if a previous scan of this directory was interrupted
+        ScanCheckpoint checkpoint = settingsDao.getScanCheckpoint(folder.getID(), path.toString());
+        
+        if(checkpoint != null) {
+            // Checkpoints are only valid if the media folder hasn't been scanned since (or is being rescanned from scratch)
+            if(Objects.equals(checkpoint.getLastScanned(), folder.getLastScanned())) {
+                LogUtils.writeToLog(log, "Resuming scan of " + path.toString() + " from checkpoint (" + checkpoint.getDirectories().size() + " committed directories)", Level.INFO, true);
+            } else {
+                LogUtils.writeToLog(log, "Discarding outdated scan checkpoint for " + path.toString(), Level.DEBUG, true);
+                settingsDao.removeScanCheckpoint(folder.getID(), path.toString());
+                checkpoint = null;
+            }
+        }
+        
+        if(checkpoint == null) {
+            checkpoint = new ScanCheckpoint(folder.getID(), path.toString(), new Timestamp(new Date().getTime()), folder.getLastScanned());
+        }
+        
+        ParseFiles fileParser = new ParseFiles(folder, path, log, elementIndex, playlistIndex, checkpoint);
+        activeScans.put(path.toString(), fileParser);
 
         try {
             // Start Scan directory
-            LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Scanning media folder " + folder.getPath(), null);
-            Files.walkFileTree(path, fileParser);
+            fileParser.start();
+            
+            try {
+                Files.walkFileTree(path, fileParser);
+            } finally {
+                fileParser.finish();
+            }
+            
+            // Release index
+            fileParser.releaseIndex();
             
             // Check if we should abort
             if(abortScan) {
-                return;
+                return null;
             }
 
-            // Add new media elements in database
-            if(!fileParser.getNewMediaElements().isEmpty()) {
-                mediaDao.createMediaElements(fileParser.getNewMediaElements());
+            // Don't remove anything if scan results could not be written
+            if(fileParser.hasWriteErrors()) {
+                LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to write scan results for " + path.toString() + ", skipping removal of deleted media.", null);
+                return null;
             }
 
-            // Update existing media elements in database
-            if(!fileParser.getUpdatedMediaElements().isEmpty()) {
-                mediaDao.updateMediaElementsByID(fileParser.getUpdatedMediaElements());
-            }
-            
-            // Add media streams to database
-            mediaDao.createVideoStreams(fileParser.getVideoStreams());
-            mediaDao.createAudioStreams(fileParser.getAudioStreams());
-            mediaDao.createSubtitleStreams(fileParser.getSubtitleStreams());
-            
-            // Add new playlists
-            if(!fileParser.getNewPlaylists().isEmpty()) {
-                for(Playlist playlist : fileParser.getNewPlaylists()) {
-                    mediaDao.createPlaylist(playlist);
-                }
-            }
-            
-            // Update existing playlists
-            if(!fileParser.getUpdatedPlaylists().isEmpty()) {                
-                for(Playlist playlist : fileParser.getUpdatedPlaylists()) {
-                    mediaDao.updatePlaylistLastScanned(playlist.getID(), fileParser.getScanTime());
-                }
-            }
-            
-            // Remove files which no longer exist
-            mediaDao.removeDeletedMediaElements(folder.getPath(), fileParser.getScanTime());
-            mediaDao.removeDeletedPlaylists(folder.getPath(), fileParser.getScanTime());
-            
-            // Update folder statistics
-            folder.setFolders(fileParser.getFolders());
-            folder.setFiles(fileParser.getFiles());
-            folder.setLastScanned(fileParser.getScanTime());
-            
-            // Determine primary media type in folder
-            if(folder.getType() == null || folder.getType() == MediaFolder.ContentType.UNKNOWN) {
-                long audio, video, playlist;
-                
-                // Get counters from parser
-                audio = fileParser.getAudio();
-                video = fileParser.getVideo();
-                playlist = fileParser.getPlaylists();
-                
-                if(audio == 0 && video == 0 && playlist > 0) {
-                    folder.setType(MediaFolder.ContentType.PLAYLIST);
-                } else if(audio > video) {
-                    folder.setType(MediaFolder.ContentType.AUDIO);
-                } else if(video > audio) {
-                    folder.setType(MediaFolder.ContentType.VIDEO);
-                }
-            }
+            // Files which no longer exist are removed once all directories have been scanned
+            pendingRemovals.put(path.toString(), fileParser.getScanTime());
             
-            settingsDao.updateMediaFolder(folder);
-
-            LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Finished scanning media folder " + folder.getPath() + " (Items Scanned: " + fileParser.getTotal() + ", Folders: " + fileParser.getFolders() + ", Files: " + fileParser.getFiles() + ", Playlists: " + fileParser.getPlaylists() + ")", null);
+            // Scan is complete so there is nothing to resume
+            settingsDao.removeScanCheckpoint(folder.getID(), path.toString());
         } catch (Exception ex) {
-            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Error scanning media folder " + folder.getPath(), ex);
-        }       
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Error scanning " + path.toString(), ex);
+            return null;
+        } finally {
+            completedScans.put(path.toString(), fileParser.getProgress(false));
+            activeScans.remove(path.toString());
+        }
+        
+        return fileParser;
     }
 
     private class ParseFiles extends SimpleFileVisitor<Path> {
@@ -468,60 +815,125 @@ public class ScannerService implements DisposableBean {
         private final Timestamp scanTime = new Timestamp(new Date().getTime());
         
         private final MediaFolder folder;
-        private final Deque<MediaElement> directories = new ArrayDeque<>();
-        private final Deque<Deque<MediaElement>> directoryElements = new ArrayDeque<>();
-        private final Deque<NFOData> nfoData = new ArrayDeque<>();
+        private final Path path;
+        private final Map<String, MediaIndexEntry> elementIndex;
+        private final Map<String, Playlist> playlistIndex;
+        private final Deque<DirectoryJob> directories = new ArrayDeque<>();
+        private final DirectoryCache directoryCache = new DirectoryCache();
         private final HashSet<Path> directoriesToUpdate = new HashSet<>();
-        
+        private final HashSet<Path> indexedDirectories = new HashSet<>();
+
         private boolean directoryChanged = false;
 
+        // Directories waiting to be processed by the writer
+        private final BlockingQueue<DirectoryJob> directoryQueue = new ArrayBlockingQueue<>(DIRECTORY_QUEUE_SIZE);
+        private final DirectoryJob endOfScan = new DirectoryJob(null);
+        private Future<?> writer;
+        private final int batchSize = SettingsService.getInstance().getMediaScanBatchSize();
+        private final long batchInterval = SettingsService.getInstance().getMediaScanBatchInterval() * 1000L;
+        private long lastFlush;
+        private volatile boolean writeErrors = false;
+        
+        // Checkpoint of directories which have been committed to the database
+        private final ScanCheckpoint checkpoint;
+        private final Set<String> committedDirectories;
+        private final Map<Path, Set<Path>> checkpointDirectories = new HashMap<>();
+        private final List<DirectoryJob> completedJobs = new ArrayList<>();
+        private boolean checkpointing = true;
+        private long lastCheckpoint;
+
         private final List<MediaElement> newElements;
         private final List<MediaElement> updatedElements;
+        private final List<UUID> scannedElements;
+        private final List<MediaIndexEntry> fingerprints;
         private final List<Playlist> newPlaylists;
         private final List<Playlist> updatedPlaylists;
         private final List<VideoStream> videoStreams;
         private final List<AudioStream> audioStreams;
         private final List<SubtitleStream> subtitleStreams;
         
-        private long audio, video, playlists, folders;
+        // Previous parent path of moved media elements which have not been written yet
+        private final Map<UUID, String> movedFrom = new ConcurrentHashMap<>();
+        
+        // Existing media elements which have been parsed again and whose old streams have not been removed yet
+        private final Set<UUID> reparsed = ConcurrentHashMap.newKeySet();
         
-        public ParseFiles(MediaFolder folder, String log) {
+        private final AtomicLong audio = new AtomicLong();
+        private final AtomicLong video = new AtomicLong();
+        private final AtomicLong playlists = new AtomicLong();
+        private final AtomicLong folders = new AtomicLong();
+        private final AtomicLong unchangedFiles = new AtomicLong();
+        private final AtomicLong movedFiles = new AtomicLong();
+        
+        // Throughput and latency of this scan
+        private final long started = System.currentTimeMillis();
+        private final long restoredFiles;
+        private final LatencyHistogram probeLatency = new LatencyHistogram();
+        private final LatencyHistogram writeLatency = new LatencyHistogram();
+        
+        public ParseFiles(MediaFolder folder, Path path, String log, Map<String, MediaIndexEntry> elementIndex, Map<String, Playlist> playlistIndex, ScanCheckpoint checkpoint) {
             this.folder = folder;
+            this.path = path;
             this.log = log;
+            this.elementIndex = elementIndex;
+            this.playlistIndex = playlistIndex;
+            this.checkpoint = checkpoint;
+            this.committedDirectories = new HashSet<>(checkpoint.getDirectories());
+            
+            // Directories committed before the scan was interrupted remain part of the checkpoint
+            for(String directory : committedDirectories) {
+                addCheckpointDirectory(FileSystems.getDefault().getPath(directory));
+            }
             
             // Initialise Variables
             newElements = new ArrayList<>();
             updatedElements = new ArrayList<>();
+            scannedElements = new ArrayList<>();
+            fingerprints = new ArrayList<>();
             newPlaylists = new ArrayList<>();
             updatedPlaylists = new ArrayList<>();
             videoStreams = new ArrayList<>();
             audioStreams = new ArrayList<>();
             subtitleStreams = new ArrayList<>();
             
-            folders = 0;
-            audio = 0;
-            video = 0;
-            playlists = 0;
+            // Restore statistics for committed directories
+            folders.set(checkpoint.getFolders());
+            audio.set(checkpoint.getAudio());
+            video.set(checkpoint.getVideo());
+            playlists.set(checkpoint.getPlaylists());
+            restoredFiles = getFiles();
         }
 
         @Override
         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attr) {
+            // Throttle scanning while transcodes are active
+            taskService.await(TaskService.Priority.NORMAL, () -> abortScan);
+            
             // Check for abort
             if(abortScan) {
                 return TERMINATE;
             }
             
+            // Skip directories committed before the scan was interrupted
+            if(committedDirectories.contains(dir.toString())) {
+                LogUtils.writeToLog(log, "Skipping committed directory " + dir.toString(), Level.DEBUG, true);
+                return SKIP_SUBTREE;
+            }
+            
             // Check if we need to scan this directory
-            if(!MediaUtils.containsMedia(dir.toFile(), true) && !PlaylistUtils.containsPlaylists(dir.toFile())) {
+            List<DirectoryCache.Entry> entries = directoryCache.get(dir);
+            
+            if(!MediaUtils.containsMedia(entries, true) && !PlaylistUtils.containsPlaylists(entries)) {
                 LogUtils.writeToLog(log, "Skipping directory " + dir.toString(), Level.DEBUG, true);
+                directoryCache.release(dir);
                 return SKIP_SUBTREE;
             }
             
             LogUtils.writeToLog(log, "Parsing directory " + dir.toString(), Level.DEBUG, true);
             
             // Initialise variables
-            directoryChanged = false;
-            directoryElements.add(new ArrayDeque<>());
+            DirectoryJob job = new DirectoryJob(dir);
+            directories.add(job);
             
             // Determine if this directory has changed
             directoryChanged = folder.getLastScanned() == null || new Timestamp(attr.lastModifiedTime().toMillis()).after(folder.getLastScanned());
@@ -532,10 +944,15 @@ public class ScannerService implements DisposableBean {
             }
                 
             // Check if directory already has an associated media element
-            MediaElement directory = mediaDao.getMediaElementByPath(dir.toString());
-
-            if (directory == null) {
-                directory = getMediaElementFromPath(dir, attr);
+            MediaIndexEntry entry = elementIndex.remove(dir.toString());
+            MediaElement directory;
+            
+            if(entry != null && !directoryChanged) {
+                // Defer loading the full media element until we know it needs updating
+                directory = getMediaElementFromIndex(dir, entry);
+                indexedDirectories.add(dir);
+            } else {
+                directory = getMediaElement(dir, attr, entry);
                 directory.setType(MediaElementType.DIRECTORY);
             }
 
@@ -544,7 +961,7 @@ public class ScannerService implements DisposableBean {
                 directoriesToUpdate.add(dir);
                 
                 // Parse file name for media element attributes
-                directory = parseFileName(dir, directory);
+                directory = parseFileName(dir, directory, true);
                 
                 // Determine if the directory should be excluded from categorised lists
                 if (isExcluded(dir.getFileName())) {
@@ -552,8 +969,8 @@ public class ScannerService implements DisposableBean {
                 }
             }
             
-            // Add directory to list
-            directories.add(directory);
+            // Add directory to job
+            job.directory = directory;
 
             return CONTINUE;
         }
@@ -570,75 +987,75 @@ public class ScannerService implements DisposableBean {
                 LogUtils.writeToLog(log, "Parsing file " + file.toString(), Level.DEBUG, true);
                 
                 // Update statistics
-                mTotal++;
+                mTotal.incrementAndGet();
                 
                 // Check if media file already has an associated media element
-                MediaElement mediaElement = mediaDao.getMediaElementByPath(file.toString());
-
-                if (mediaElement == null) {
-                    mediaElement = getMediaElementFromPath(file, attr);
-                    mediaElement.setFormat(MediaUtils.getSMSContainer(FilenameUtils.getExtension(file.toString())));
-                }
+                MediaIndexEntry entry = elementIndex.remove(file.toString());
                 
-                // Determine if we need to process the file
-                if(folder.getLastScanned() == null || new Timestamp(attr.lastModifiedTime().toMillis()).after(folder.getLastScanned()) || mediaElement.getLastScanned().equals(scanTime)) {
-                    LogUtils.writeToLog(log, "Processing file " + file.toString(), Level.DEBUG, true);
-                    
-                    // Add parent directory to update list
-                    directoriesToUpdate.add(file.getParent());
-                                        
-                    // Parse file name for media element attributes
-                    mediaElement = parseFileName(file.getFileName(), mediaElement);
-                    mediaElement.setSize(attr.size());
-                    
-                    // Remove existing media streams and parse Metadata
-                    mediaDao.removeStreamsByMediaElementId(mediaElement.getID());
-                    metadataParser.parse(mediaElement, log);
-                    
-                    // If we don't support this media file move on...
-                    if(mediaElement.getType() == MediaElementType.NONE) {
-                        LogUtils.writeToLog(log, "No media streams found for file " + file.toString(), Level.DEBUG, true);
-                        return CONTINUE;
-                    }
-                    
-                    // Add streams to update lists
-                    if(mediaElement.getVideoStreams() != null && !mediaElement.getVideoStreams().isEmpty()) {
-                        videoStreams.addAll(mediaElement.getVideoStreams());
-                    }
+                // Get file fingerprint
+                long modified = attr.lastModifiedTime().toMillis();
+                String fileKey = attr.fileKey() == null ? null : attr.fileKey().toString();
+                
+                // Skip unchanged files without loading them from the database
+                if(entry != null) {
+                    boolean unchanged = entry.matches(attr.size(), modified, fileKey);
+                    boolean backfill = false;
                     
-                    if(mediaElement.getAudioStreams() != null && !mediaElement.getAudioStreams().isEmpty()) {
-                        audioStreams.addAll(mediaElement.getAudioStreams());
+                    // Media elements without a stored fingerprint fall back to the media folder scan time
+                    if(!unchanged && entry.getModified() == null && folder.getLastScanned() != null && !new Timestamp(modified).after(folder.getLastScanned())) {
+                        backfill = true;
+                        unchanged = true;
                     }
                     
-                    if(mediaElement.getSubtitleStreams() != null && !mediaElement.getSubtitleStreams().isEmpty()) {
-                        subtitleStreams.addAll(mediaElement.getSubtitleStreams());
+                    if(unchanged) {
+                        // Store missing file attributes and content fingerprints so moved files can be matched
+                        if(backfill || entry.getFingerprint() == null) {
+                            directories.peekLast().fingerprints.add(fingerprint(file, entry, attr.size(), modified, fileKey));
+                        }
+                        
+                        directories.peekLast().unchanged.add(entry);
+                        updateCounters(directories.peekLast(), entry.getType());
+                        unchangedFiles.incrementAndGet();
+                        return CONTINUE;
                     }
                 }
                 
-                // Add media element to list
-                directoryElements.peekLast().add(mediaElement);
+                // Load existing media element or create a new one
+                MediaElement mediaElement = getMediaElement(file, attr, entry);
                 
-                // Update counters
-                if(mediaElement.getType() == MediaElementType.AUDIO) {
-                    audio++;
-                } else if(mediaElement.getType() == MediaElementType.VIDEO) {
-                    video++;
+                if(entry == null) {
+                    mediaElement.setFormat(MediaUtils.getSMSContainer(FilenameUtils.getExtension(file.toString())));
                 }
                 
+                LogUtils.writeToLog(log, "Processing file " + file.toString(), Level.DEBUG, true);
+                
+                // Add parent directory to update list
+                directoriesToUpdate.add(file.getParent());
+                                    
+                // Parse file name for media element attributes
+                mediaElement = parseFileName(file.getFileName(), mediaElement, false);
+                mediaElement.setSize(attr.size());
+                mediaElement.setModified(modified);
+                mediaElement.setFileKey(fileKey);
+                
+                // Parse metadata in the background
+                directories.peekLast().probes.add(probe(mediaElement, entry == null));
+                
             } else if(PlaylistUtils.isPlaylist(file)) {
                 LogUtils.writeToLog(log, "Parsing playlist " + file.toString(), Level.DEBUG, true);
                 
                 // Update statistics
-                mTotal++;
-                playlists++;
+                mTotal.incrementAndGet();
+                playlists.incrementAndGet();
+                directories.peekLast().playlists++;
                 
                 // Check if playlist already has an associated database entry
-                Playlist playlist = mediaDao.getPlaylistByPath(file.toString());
+                Playlist playlist = playlistIndex.remove(file.toString());
 
                 // Generate new playlist object or update existing one if necessary
                 if (playlist == null) {
                     playlist = getPlaylistFromPath(file);
-                    newPlaylists.add(playlist);
+                    directories.peekLast().newPlaylists.add(playlist);
                 } else {
                     if(folder.getLastScanned() == null || new Timestamp(attr.lastModifiedTime().toMillis()).after(folder.getLastScanned())) {
                         LogUtils.writeToLog(log, "Processing playlist " + file.toString(), Level.DEBUG, true);
@@ -646,13 +1063,17 @@ public class ScannerService implements DisposableBean {
                     }
                     
                     // Add to list of playlists to update
-                    updatedPlaylists.add(playlist);
+                    directories.peekLast().updatedPlaylists.add(playlist);
                 }
             } else if(isInfoFile(file)) {
                 // Determine if we need to parse this file
                 if(directoryChanged || folder.getLastScanned() == null || new Timestamp(attr.lastModifiedTime().toMillis()).after(folder.getLastScanned())) {
                     LogUtils.writeToLog(log, "Processing file " + file.toString(), Level.DEBUG, true);
-                    nfoData.add(nfoParser.parse(file));
+                    NFOData data = nfoParser.parse(file);
+                    
+                    if(data != null) {
+                        directories.peekLast().nfoData.putIfAbsent(NFOParser.getKey(file), data);
+                    }
                 }
             }
             
@@ -667,47 +1088,484 @@ public class ScannerService implements DisposableBean {
             }
             
             // Update statistics
-            mTotal++;
-            folders++;
+            mTotal.incrementAndGet();
+            folders.incrementAndGet();
             
-            MediaElement directory = null;
-            Deque<MediaElement> dirElements;
-            Deque<NFOData> dirData = new ArrayDeque<>();
+            // Retrieve directory job from list
+            DirectoryJob job = directories.removeLast();
+            job.indexed = indexedDirectories.remove(dir);
+            job.update = directoriesToUpdate.remove(dir);
             
-            // Retrieve directory from list
-            if(!directories.isEmpty()) {
-                directory = directories.removeLast();
+            // Determine directory root while the parent listing is still cached
+            if(job.directory != null) {
+                job.root = getDirectoryRoot(dir, folder.getPath());
             }
             
-            // Get child elements for directory
-            dirElements = directoryElements.removeLast();
+            directoryCache.release(dir);
             
-            // Get NFO data for directory
-            if(!nfoData.isEmpty()) {
-                while(nfoData.peekLast() != null && nfoData.peekLast().getPath().getParent().equals(dir)) {
-                    dirData.add(nfoData.removeLast());
+            // Pass directory to the writer, waiting if it is falling behind
+            try {
+                while(!directoryQueue.offer(job, 1, TimeUnit.SECONDS)) {
+                    // Stop walking if the writer has failed as nothing will drain the queue
+                    if(abortScan || writer.isDone()) {
+                        return TERMINATE;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                return TERMINATE;
+            }
+            
+            return CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Error parsing file " + file.toString(), exc);
+            return CONTINUE;
+        }
+        
+        //
+        // Pipeline
+        //
+        
+        // Start the writer which processes directories as the walk progresses
+        public void start() {
+            lastFlush = System.currentTimeMillis();
+            lastCheckpoint = lastFlush;
+            
+            ExecutorService writerThread = Executors.newSingleThreadExecutor();
+            writer = writerThread.submit(() -> write());
+            writerThread.shutdown();
+        }
+        
+        // Wait for the writer to process all remaining directories
+        public void finish() {
+            try {
+                while(!abortScan && !writer.isDone() && !directoryQueue.offer(endOfScan, 1, TimeUnit.SECONDS)) {
+                    // Wait for space in the queue
+                }
+                
+                // Rethrows any failure which stopped the writer
+                writer.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Error writing media for folder " + folder.getPath(), ex);
+                writeErrors = true;
+            }
+        }
+        
+        // Process directories passed from the walker and write results in batches
+        private void write() {
+            while(true) {
+                DirectoryJob job;
+                
+                try {
+                    job = directoryQueue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                
+                // Check for abort
+                if(abortScan) {
+                    return;
+                }
+                
+                if(job == endOfScan) {
+                    break;
+                }
+                
+                if(job != null) {
+                    try {
+                        processDirectory(job);
+                        completedJobs.add(job);
+                    } catch (Exception ex) {
+                        LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Error processing directory " + job.dir.toString(), ex);
+                        
+                        // The checkpoint can no longer vouch for parent directories
+                        checkpointing = false;
+                    }
+                }
+                
+                // Write pending changes once the batch is full or has been waiting too long
+                if(getPending() >= batchSize || (getPending() > 0 && System.currentTimeMillis() - lastFlush >= batchInterval)) {
+                    safeFlush();
+                }
+            }
+            
+            safeFlush();
+        }
+        
+        // Flush pending changes, stopping the writer if the batch or checkpoint could not be written
+        private void safeFlush() {
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                writeErrors = true;
+                checkpointing = false;
+                throw ex;
+            }
+        }
+        
+        // Number of changes waiting to be written
+        private int getPending() {
+            return newElements.size() + updatedElements.size() + scannedElements.size() + fingerprints.size() + newPlaylists.size() + updatedPlaylists.size();
+        }
+        
+        // Write pending changes to the database in a single transaction
+        private void flush() {
+            lastFlush = System.currentTimeMillis();
+            
+            if(getPending() == 0) {
+                updateCheckpoint();
+                return;
+            }
+            
+            // Add folders for new and moved media before writing anything which references them
+            Set<String> folderPaths = new HashSet<>();
+            newElements.forEach((mediaElement) -> folderPaths.add(mediaElement.getParentPath()));
+            updatedElements.forEach((mediaElement) -> folderPaths.add(mediaElement.getParentPath()));
+            newPlaylists.forEach((playlist) -> folderPaths.add(playlist.getParentPath()));
+            
+            long start = System.nanoTime();
+            boolean result = mediaDao.createFolders(folderPaths) && mediaDao.runInTransaction(() -> {
+                // Update scan time for unchanged media elements
+                if(!scannedElements.isEmpty() && !mediaDao.updateLastScannedByID(scannedElements, scanTime)) {
+                    return false;
+                }
+                
+                // Store fingerprints for media elements scanned before they were available
+                if(!fingerprints.isEmpty() && !mediaDao.updateFileAttributesByID(fingerprints)) {
+                    return false;
+                }
+
+                // Add new media elements in database
+                if(!newElements.isEmpty() && !mediaDao.createMediaElements(newElements)) {
+                    return false;
+                }
+
+                // Update existing media elements in database
+                if(!updatedElements.isEmpty() && !mediaDao.updateMediaElementsByID(updatedElements)) {
+                    return false;
+                }
+
+                // Remove old streams of media elements which have been parsed again
+                List<UUID> staleStreams = new ArrayList<>();
+                updatedElements.forEach((mediaElement) -> {
+                    if(reparsed.remove(mediaElement.getID())) {
+                        staleStreams.add(mediaElement.getID());
+                    }
+                });
+                
+                if(!staleStreams.isEmpty() && !mediaDao.removeStreamsByMediaElementIds(staleStreams)) {
+                    return false;
+                }
+
+                // Rebuild media groups for directories with new, changed or moved media elements
+                Set<String> groupPaths = new HashSet<>();
+                newElements.forEach((mediaElement) -> groupPaths.add(mediaElement.getParentPath()));
+                updatedElements.forEach((mediaElement) -> {
+                    groupPaths.add(mediaElement.getParentPath());
+                    
+                    String from = movedFrom.remove(mediaElement.getID());
+                    
+                    if(from != null) {
+                        groupPaths.add(from);
+                    }
+                });
+                
+                if(!mediaDao.updateMediaGroups(groupPaths)) {
+                    return false;
+                }
+
+                // Add media streams to database
+                if(!mediaDao.createVideoStreams(videoStreams) || !mediaDao.createAudioStreams(audioStreams) || !mediaDao.createSubtitleStreams(subtitleStreams)) {
+                    return false;
+                }
+                
+                // Add new playlists
+                for(Playlist playlist : newPlaylists) {
+                    if(!mediaDao.createPlaylist(playlist)) {
+                        return false;
+                    }
+                }
+
+                // Update existing playlists
+                for(Playlist playlist : updatedPlaylists) {
+                    if(!mediaDao.updatePlaylistLastScanned(playlist.getID(), scanTime)) {
+                        return false;
+                    }
+                }
+                
+                return true;
+            });
+            
+            writeLatency.recordSince(start);
+            
+            if(!result) {
+                LogUtils.writeToLog(log, "Failed to write batch of " + getPending() + " changes to the database.", Level.ERROR, true);
+                writeErrors = true;
+                checkpointing = false;
+            }
+            
+            updateCheckpoint();
+            
+            // Release batch regardless of the result so memory use stays bounded
+            scannedElements.clear();
+            fingerprints.clear();
+            newElements.clear();
+            updatedElements.clear();
+            videoStreams.clear();
+            audioStreams.clear();
+            subtitleStreams.clear();
+            newPlaylists.clear();
+            updatedPlaylists.clear();
+        }
+        
+        // Add directories written by the last batch to the checkpoint and save it periodically
+        private void updateCheckpoint() {
+            if(!checkpointing) {
+                completedJobs.clear();
+                return;
+            }
+            
+            for(DirectoryJob job : completedJobs) {
+                addCheckpointDirectory(job.dir);
+                
+                checkpoint.setFolders(checkpoint.getFolders() + 1);
+                checkpoint.setAudio(checkpoint.getAudio() + job.audio);
+                checkpoint.setVideo(checkpoint.getVideo() + job.video);
+                checkpoint.setPlaylists(checkpoint.getPlaylists() + job.playlists);
+            }
+            
+            completedJobs.clear();
+            
+            if(System.currentTimeMillis() - lastCheckpoint < batchInterval) {
+                return;
+            }
+            
+            lastCheckpoint = System.currentTimeMillis();
+            
+            Set<String> directories = new HashSet<>();
+            
+            for(Set<Path> children : checkpointDirectories.values()) {
+                for(Path child : children) {
+                    directories.add(child.toString());
+                }
+            }
+            
+            checkpoint.setDirectories(directories);
+            
+            if(!settingsDao.updateScanCheckpoint(checkpoint)) {
+                LogUtils.writeToLog(log, "Failed to save scan checkpoint for " + checkpoint.getPath(), Level.WARN, true);
+            }
+        }
+        
+        // Directories are committed after their children so a committed directory replaces them in the checkpoint
+        private void addCheckpointDirectory(Path dir) {
+            checkpointDirectories.remove(dir);
+            checkpointDirectories.computeIfAbsent(dir.getParent(), parent -> new HashSet<>()).add(dir);
+        }
+        
+        // Parse metadata for a media element using the probe thread pool
+        private Future<MediaElement> probe(final MediaElement mediaElement, final boolean isNew) {
+            return getProbeThreads().submit(() -> {
+                taskService.begin();
+                
+                try {
+                    taskService.await(TaskService.Priority.NORMAL, () -> abortScan);
+                    
+                    if(abortScan) {
+                        return mediaElement;
+                    }
+                    
+                    Path path = FileSystems.getDefault().getPath(mediaElement.getPath());
+                    mediaElement.setFingerprint(FileUtils.getFingerprint(path, mediaElement.getSize()));
+                    
+                    // Check if this is an existing media element which has been moved
+                    if(isNew) {
+                        MediaElement moved = getMovedMediaElement(mediaElement);
+                        
+                        if(moved != null) {
+                            return moved;
+                        }
+                    }
+                    
+                    // Existing media streams are replaced when the media element is written
+                    if(!isNew) {
+                        reparsed.add(mediaElement.getID());
+                    }
+                    
+                    // Parse Metadata
+                    long start = System.nanoTime();
+                    metadataParser.parse(mediaElement, log);
+                    probeLatency.recordSince(start);
+                    
+                    return mediaElement;
+                } finally {
+                    taskService.end();
+                }
+            });
+        }
+        
+        // Compute the content fingerprint of an unchanged media file using the probe thread pool
+        private Future<MediaIndexEntry> fingerprint(final Path file, final MediaIndexEntry entry, final long size, final long modified, final String fileKey) {
+            return getProbeThreads().submit(() -> {
+                String fingerprint = entry.getFingerprint();
+                
+                if(fingerprint == null && !abortScan) {
+                    fingerprint = FileUtils.getFingerprint(file, size);
+                }
+                
+                return new MediaIndexEntry(entry.getID(), entry.getType(), entry.getLastScanned(), size, modified, fileKey, fingerprint);
+            });
+        }
+        
+        // Find an existing media element with the same content whose file no longer exists
+        // and point it at the new file so it doesn't need to be parsed again.
+        private MediaElement getMovedMediaElement(MediaElement mediaElement) {
+            if(mediaElement.getFingerprint() == null) {
+                return null;
+            }
+            
+            List<MediaElement> candidates = mediaDao.getMediaElementsByFingerprint(mediaElement.getFingerprint(), mediaElement.getFileKey(), mediaElement.getSize());
+            
+            if(candidates == null) {
+                return null;
+            }
+            
+            for(MediaElement candidate : candidates) {
+                // Check candidate is a media file which has not already been processed during this scan
+                if(candidate.getType() == MediaElementType.DIRECTORY || candidate.getLastScanned().equals(scanTime)) {
+                    continue;
+                }
+                
+                // The original file must no longer exist
+                if(Files.exists(FileSystems.getDefault().getPath(candidate.getPath()))) {
+                    continue;
+                }
+                
+                // Make sure only one file claims the media element
+                if(!movedElements.add(candidate.getID())) {
+                    continue;
+                }
+                
+                LogUtils.writeToLog(log, "Media element moved from " + candidate.getPath() + " to " + mediaElement.getPath(), Level.DEBUG, true);
+                
+                // The directory the media element was moved from needs its media groups rebuilt
+                movedFrom.put(candidate.getID(), candidate.getParentPath());
+                
+                candidate.setPath(mediaElement.getPath());
+                candidate.setParentPath(mediaElement.getParentPath());
+                candidate.setSize(mediaElement.getSize());
+                candidate.setModified(mediaElement.getModified());
+                candidate.setFileKey(mediaElement.getFileKey());
+                candidate.setFingerprint(mediaElement.getFingerprint());
+                
+                movedFiles.incrementAndGet();
+                
+                return candidate;
+            }
+            
+            return null;
+        }
+        
+        // Process a directory once metadata for all of its media files is available
+        private void processDirectory(DirectoryJob job) {
+            Path dir = job.dir;
+            MediaElement directory = job.directory;
+            Deque<MediaElement> dirElements = new ArrayDeque<>();
+            List<MediaIndexEntry> dirIndex = job.unchanged;
+            Map<String, NFOData> dirData = job.nfoData;
+            boolean indexed = job.indexed;
+            boolean update = job.update;
+            
+            // Queue file changes which don't require processing
+            newPlaylists.addAll(job.newPlaylists);
+            updatedPlaylists.addAll(job.updatedPlaylists);
+            
+            for(Future<MediaIndexEntry> fingerprint : job.fingerprints) {
+                try {
+                    fingerprints.add(fingerprint.get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to fingerprint media in " + dir.toString(), ex);
+                }
+            }
+            
+            // Collect parsed media elements
+            for(Future<MediaElement> probe : job.probes) {
+                MediaElement mediaElement;
+                
+                try {
+                    mediaElement = probe.get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to parse metadata for media in " + dir.toString(), ex);
+                    continue;
+                }
+                
+                // If we don't support this media file move on...
+                if(mediaElement.getType() == null || mediaElement.getType() == MediaElementType.NONE) {
+                    LogUtils.writeToLog(log, "No media streams found for file " + mediaElement.getPath(), Level.DEBUG, true);
+                    continue;
+                }
+                
+                // Add streams to update lists
+                if(mediaElement.getVideoStreams() != null && !mediaElement.getVideoStreams().isEmpty()) {
+                    videoStreams.addAll(mediaElement.getVideoStreams());
+                }
+                
+                if(mediaElement.getAudioStreams() != null && !mediaElement.getAudioStreams().isEmpty()) {
+                    audioStreams.addAll(mediaElement.getAudioStreams());
+                }
+                
+                if(mediaElement.getSubtitleStreams() != null && !mediaElement.getSubtitleStreams().isEmpty()) {
+                    subtitleStreams.addAll(mediaElement.getSubtitleStreams());
+                }
+                
+                // Add media element to list
+                dirElements.add(mediaElement);
+                
+                // Update counters
+                updateCounters(job, mediaElement.getType());
+            }
+            
+            // Unchanged child elements only need to be loaded if the directory is being processed
+            if(!dirIndex.isEmpty()) {
+                if(update || !dirData.isEmpty()) {
+                    loadMediaElements(dir, dirIndex, dirElements);
+                } else {
+                    for(MediaIndexEntry entry : dirIndex) {
+                        scannedElements.add(entry.getID());
+                    }
+                }
+            }
+            
+            // Load directory element if it is to be updated
+            if(directory != null && indexed && update) {
+                MediaElement test = mediaDao.getUncachedMediaElementByID(directory.getID());
+                
+                if(test != null) {
+                    directory = test;
+                    indexed = false;
+                } else {
+                    update = false;
                 }
             }
             
             // Process child media elements
             for(MediaElement element : dirElements) {
                 if(!dirData.isEmpty()) {
-                    boolean dataFound = false;
+                    // Test for file specific data named after the file or its title
+                    NFOData data = dirData.remove(NFOParser.getKey(FilenameUtils.getBaseName(element.getPath())));
                     
-                    // Test for file specific data
-                    for(NFOData test : dirData) {
-                        if(test.getPath().getFileName().toString().contains(element.getTitle())) {
-                            LogUtils.writeToLog(log, "Parsing NFO file " + test.getPath(), Level.DEBUG, true);
-                            nfoParser.updateMediaElement(element, test);
-                            dirData.remove(test);
-                            dataFound = true;
-                            break;  
-                        }
+                    if(data == null && element.getTitle() != null) {
+                        data = dirData.remove(NFOParser.getKey(element.getTitle()));
                     }
                     
                     // Use generic data for directory
-                    if(!dataFound) {
-                        NFOData data = dirData.getFirst();
+                    if(data == null && !dirData.isEmpty()) {
+                        data = dirData.values().iterator().next();
+                    }
+                    
+                    if(data != null) {
                         LogUtils.writeToLog(log, "Parsing NFO file " + data.getPath(), Level.DEBUG, true);
                         nfoParser.updateMediaElement(element, data);
                     }
@@ -725,11 +1583,11 @@ public class ScannerService implements DisposableBean {
             }
             
             // Update directory element if necessary
-            if(directory != null && directoriesToUpdate.contains(dir)) {
+            if(directory != null && update) {
                 LogUtils.writeToLog(log, "Processing directory " + dir.toString(), Level.DEBUG, true);
                 
                 if(!dirData.isEmpty()) {
-                    nfoParser.updateMediaElement(directory, dirData.removeFirst());
+                    nfoParser.updateMediaElement(directory, dirData.values().iterator().next());
                 }
                 
                 // Determine directory media type
@@ -761,7 +1619,7 @@ public class ScannerService implements DisposableBean {
 
                         // Try root directory name
                         if (artist == null) {
-                            artist = getDirectoryRoot(dir, folder.getPath());
+                            artist = job.root;
                         }
 
                         // Set directory artist if found
@@ -776,7 +1634,7 @@ public class ScannerService implements DisposableBean {
                         
                         // Try root directory name
                         if (collection == null) {
-                            collection = getDirectoryRoot(dir, folder.getPath());
+                            collection = job.root;
                         }
 
                         // Set directory collection if found
@@ -794,7 +1652,9 @@ public class ScannerService implements DisposableBean {
             
             // Set media elements to add or update
             if(directory != null) {
-                if(directory.getLastScanned().equals(scanTime)) {
+                if(indexed) {
+                    scannedElements.add(directory.getID());
+                } else if(directory.getLastScanned().equals(scanTime)) {
                     newElements.add(directory);
                 } else {
                     directory.setLastScanned(scanTime);
@@ -803,14 +1663,25 @@ public class ScannerService implements DisposableBean {
             }
             
             LogUtils.writeToLog(log, "Finished parsing directory " + dir.toString(), Level.DEBUG, true);
-            
-            return CONTINUE;
         }
-
-        @Override
-        public FileVisitResult visitFileFailed(Path file, IOException exc) {
-            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Error parsing file " + file.toString(), exc);
-            return CONTINUE;
+        
+        // Directory waiting to be processed by the writer
+        private class DirectoryJob {
+            private final Path dir;
+            private MediaElement directory;
+            private final List<Future<MediaElement>> probes = new ArrayList<>();
+            private final List<MediaIndexEntry> unchanged = new ArrayList<>();
+            private final List<Future<MediaIndexEntry>> fingerprints = new ArrayList<>();
+            private final List<Playlist> newPlaylists = new ArrayList<>();
+            private final List<Playlist> updatedPlaylists = new ArrayList<>();
+            private final Map<String, NFOData> nfoData = new LinkedHashMap<>();
+            private String root;
+            private boolean indexed, update;
+            private long audio, video, playlists;
+            
+            private DirectoryJob(Path dir) {
+                this.dir = dir;
+            }
         }
         
         //
@@ -831,6 +1702,71 @@ public class ScannerService implements DisposableBean {
             return false;
         }
 
+        // Return the existing media element for an index entry or a new one if it doesn't exist
+        private MediaElement getMediaElement(Path path, BasicFileAttributes attr, MediaIndexEntry entry) {
+            MediaElement mediaElement = null;
+            
+            if(entry != null) {
+                mediaElement = mediaDao.getUncachedMediaElementByID(entry.getID());
+            }
+            
+            if(mediaElement == null) {
+                mediaElement = getMediaElementFromPath(path, attr);
+            }
+            
+            return mediaElement;
+        }
+        
+        // Return a partial media element containing indexed attributes only
+        private MediaElement getMediaElementFromIndex(Path path, MediaIndexEntry entry) {
+            MediaElement mediaElement = new MediaElement();
+            mediaElement.setID(entry.getID());
+            mediaElement.setType(entry.getType());
+            mediaElement.setPath(path.toString());
+            mediaElement.setParentPath(path.getParent().toString());
+            mediaElement.setLastScanned(new Timestamp(entry.getLastScanned()));
+            mediaElement.setSize(entry.getSize());
+            
+            return mediaElement;
+        }
+        
+        // Load unchanged child media elements of a directory in a single query
+        private void loadMediaElements(Path dir, List<MediaIndexEntry> entries, Deque<MediaElement> mediaElements) {
+            HashSet<UUID> ids = new HashSet<>();
+            
+            for(MediaIndexEntry entry : entries) {
+                ids.add(entry.getID());
+            }
+            
+            List<MediaElement> children = mediaDao.getMediaElementsByParentPath(dir.toString(), null);
+            
+            if(children != null) {
+                for(MediaElement child : children) {
+                    if(ids.remove(child.getID())) {
+                        mediaElements.add(child);
+                    }
+                }
+            }
+            
+            // Anything we couldn't load is left as it is
+            scannedElements.addAll(ids);
+        }
+        
+        private synchronized void updateCounters(DirectoryJob job, byte type) {
+            if(type == MediaElementType.AUDIO) {
+                audio.incrementAndGet();
+                job.audio++;
+            } else if(type == MediaElementType.VIDEO) {
+                video.incrementAndGet();
+                job.video++;
+            }
+        }
+        
+        public void releaseIndex() {
+            elementIndex.clear();
+            playlistIndex.clear();
+        }
+        
         // Return a new media element object for a given file
         private MediaElement getMediaElementFromPath(Path path, BasicFileAttributes attr) {
             MediaElement mediaElement = new MediaElement();
@@ -864,7 +1800,7 @@ public class ScannerService implements DisposableBean {
         }
 
         // Get title and other information from file name
-        private MediaElement parseFileName(Path path, MediaElement mediaElement) {
+        private MediaElement parseFileName(Path path, MediaElement mediaElement, boolean isDirectory) {
             // Parse file name for title and year
             Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
 
@@ -874,7 +1810,7 @@ public class ScannerService implements DisposableBean {
                 if (matcher.group(2) != null) {
                     mediaElement.setYear(Short.parseShort(matcher.group(3)));
                 }
-            } else if(path.toFile().isDirectory()){
+            } else if(isDirectory){
                 mediaElement.setTitle(path.getFileName().toString());
             } else {
                 int extensionIndex = path.getFileName().toString().lastIndexOf(".");
@@ -1002,81 +1938,112 @@ public class ScannerService implements DisposableBean {
         }
 
         // Depending on directory structure this could return artist, series or collection based on the parent directory name.
-        private String getDirectoryRoot(Path path, String mediaFolderPath) {
-            File dir = path.toFile();
+        private String getDirectoryRoot(Path dir, String mediaFolderPath) {
+            Path parent = dir.getParent();
             
             // Check variables
-            if (!dir.isDirectory()) {
+            if (parent == null) {
                 return null;
             }
 
             // If the parent directory is the current media folder forget it
-            if (dir.getParent().equals(mediaFolderPath)) {
+            if (parent.toString().equals(mediaFolderPath)) {
                 return null;
             }
 
             // Check if the root directory contains media, if so forget it
-            if (MediaUtils.containsMedia(dir.getParentFile(), false)) {
+            if (MediaUtils.containsMedia(directoryCache.get(parent), false)) {
                 return null;
             }
             
-            return dir.getParentFile().getName();
+            return parent.getFileName().toString();
         }
         
         public long getTotal() {
-            return audio + video + folders + playlists;
+            return getFiles() + folders.get() + playlists.get();
         }
 
         public long getPlaylists() {
-            return playlists;
+            return playlists.get();
         }
         
         public long getFiles() {
-            return audio + video;
+            return audio.get() + video.get();
         }
 
         public long getFolders() {
-            return folders;
+            return folders.get();
         }
         
         public long getAudio() {
-            return audio;
-        }
-        
-        public long getVideo() {
-            return video;
-        }
-
-        public Timestamp getScanTime() {
-            return scanTime;
-        }
-        
-        public List<MediaElement> getNewMediaElements() {
-            return newElements;
+            return audio.get();
         }
         
-        public List<MediaElement> getUpdatedMediaElements() {
-            return updatedElements;
+        public long getUnchangedFiles() {
+            return unchangedFiles.get();
         }
         
-        public List<Playlist> getNewPlaylists() {
-            return newPlaylists;
+        public long getMovedFiles() {
+            return movedFiles.get();
         }
         
-        public List<Playlist> getUpdatedPlaylists() {
-            return updatedPlaylists;
+        public long getVideo() {
+            return video.get();
         }
         
-        private List<VideoStream> getVideoStreams() {
-            return videoStreams;
+        // Snapshot of the progress of this scan which is safe to call from other threads
+        public ScanProgress getProgress(boolean running) {
+            ScanProgress progress = new ScanProgress();
+            long elapsed = System.currentTimeMillis() - started;
+            long files = getFiles();
+            
+            // Files restored from a checkpoint were not scanned by this run
+            double rate = (files - restoredFiles) / Math.max(1, elapsed / 1000.0);
+            
+            progress.setPath(path.toString());
+            progress.setRunning(running);
+            progress.setStarted(new Timestamp(started));
+            progress.setElapsed(elapsed);
+            progress.setFiles(files);
+            progress.setFolders(getFolders());
+            progress.setPlaylists(getPlaylists());
+            progress.setFilesPerSecond(rate);
+            progress.setUnchangedFiles(getUnchangedFiles());
+            progress.setMovedFiles(getMovedFiles());
+            progress.setReprobesSkipped(getUnchangedFiles() + getMovedFiles());
+            progress.setProbes(probeLatency.getCount());
+            progress.setProbeLatencyP50(probeLatency.getPercentile(50));
+            progress.setProbeLatencyP90(probeLatency.getPercentile(90));
+            progress.setProbeLatencyP99(probeLatency.getPercentile(99));
+            progress.setProbeLatencyMax(probeLatency.getMax());
+            progress.setWrites(writeLatency.getCount());
+            progress.setWriteLatencyMean(writeLatency.getMean());
+            progress.setWriteLatencyMax(writeLatency.getMax());
+            progress.setDirectoryQueue(directoryQueue.size());
+            
+            ThreadPoolExecutor executor = probeThreads;
+            progress.setProbeQueue(executor == null ? 0 : executor.getQueue().size());
+            
+            // Estimate time remaining from the number of files found by the previous scan of the media folder
+            if(running && folder.getFiles() != null && path.toString().equals(folder.getPath())) {
+                long remaining = Math.max(0, folder.getFiles() - files);
+                progress.setRemaining(remaining);
+                
+                if(rate > 0) {
+                    progress.setEta(Math.round(remaining / rate));
+                }
+            }
+            
+            return progress;
         }
-        
-        private List<AudioStream> getAudioStreams() {
-            return audioStreams;
+
+        // Media written since the scan started, including runs interrupted before this one, is newer than this
+        public Timestamp getScanTime() {
+            return checkpoint.getScanTime();
         }
-        
-        private List<SubtitleStream> getSubtitleStreams() {
-            return subtitleStreams;
+
+        public boolean hasWriteErrors() {
+            return writeErrors;
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -50,11 +50,45 @@ public final class SettingsService {
     public static final String CONFIG_DEEP_SCAN_SCHEDULE = "deepscan.schedule";
     public static final String CONFIG_MEDIA_SCAN_SCHEDULE = "mediascan.schedule";
     public static final String CONFIG_PLAYLIST_SCAN_SCHEDULE = "playlistscan.schedule";
+    public static final String CONFIG_MEDIA_SCAN_WATCH = "mediascan.watch";
+    public static final String CONFIG_MEDIA_SCAN_WATCH_DELAY = "mediascan.watch.delay";
+    public static final String CONFIG_MEDIA_SCAN_PROBE_WORKERS = "mediascan.probe.workers";
+    public static final String CONFIG_MEDIA_SCAN_BATCH_SIZE = "mediascan.batch.size";
+    public static final String CONFIG_MEDIA_SCAN_BATCH_INTERVAL = "mediascan.batch.interval";
+    public static final String CONFIG_MEDIA_SCAN_DEVICE_WORKERS = "mediascan.device.workers";
+    public static final String CONFIG_MEDIA_SCAN_NATIVE_AUDIO = "mediascan.native.audio";
+    public static final String CONFIG_DEEP_SCAN_WORKERS = "deepscan.workers";
+    public static final String CONFIG_PLAYLIST_SCAN_WORKERS = "playlistscan.workers";
+    public static final String CONFIG_DEEP_SCAN_SAMPLE_WINDOWS = "deepscan.sample.windows";
+    public static final String CONFIG_DEEP_SCAN_SAMPLE_DURATION = "deepscan.sample.duration";
+    public static final String CONFIG_TASK_THROTTLE_BUDGET = "tasks.throttle.budget";
+    public static final String CONFIG_DATABASE_POOL_MIN = "database.pool.min";
+    public static final String CONFIG_DATABASE_POOL_MAX = "database.pool.max";
+    public static final String CONFIG_DATABASE_POOL_IDLE_TIMEOUT = "database.pool.idletimeout";
+    public static final String CONFIG_DATABASE_STATEMENT_CACHE = "database.statementcache";
+    public static final String CONFIG_MEDIA_ELEMENT_CACHE = "cache.mediaelements";
     
     // Default Values
     public static final String DEFAULT_DEEP_SCAN_SCHEDULE = "0 0 0 * * *";
     public static final String DEFAULT_MEDIA_SCAN_SCHEDULE = "0 0 22 * * *";
     public static final String DEFAULT_PLAYLIST_SCAN_SCHEDULE = "0 0 6 * * *";
+    public static final boolean DEFAULT_MEDIA_SCAN_WATCH = false;
+    public static final int DEFAULT_MEDIA_SCAN_WATCH_DELAY = 10;
+    public static final int DEFAULT_MEDIA_SCAN_PROBE_WORKERS = 0;
+    public static final int DEFAULT_MEDIA_SCAN_BATCH_SIZE = 500;
+    public static final int DEFAULT_MEDIA_SCAN_BATCH_INTERVAL = 10;
+    public static final int DEFAULT_MEDIA_SCAN_DEVICE_WORKERS = 1;
+    public static final boolean DEFAULT_MEDIA_SCAN_NATIVE_AUDIO = true;
+    public static final int DEFAULT_DEEP_SCAN_WORKERS = 0;
+    public static final int DEFAULT_PLAYLIST_SCAN_WORKERS = 0;
+    public static final int DEFAULT_DEEP_SCAN_SAMPLE_WINDOWS = 10;
+    public static final int DEFAULT_DEEP_SCAN_SAMPLE_DURATION = 30;
+    public static final int DEFAULT_TASK_THROTTLE_BUDGET = 25;
+    public static final int DEFAULT_DATABASE_POOL_MIN = 1;
+    public static final int DEFAULT_DATABASE_POOL_MAX = 10;
+    public static final int DEFAULT_DATABASE_POOL_IDLE_TIMEOUT = 300;
+    public static final int DEFAULT_DATABASE_STATEMENT_CACHE = 50;
+    public static final int DEFAULT_MEDIA_ELEMENT_CACHE = 1000;
     
     Properties config;
     
@@ -64,6 +98,23 @@ public final class SettingsService {
     private String deepScanSchedule = DEFAULT_DEEP_SCAN_SCHEDULE;
     private String mediaScanSchedule = DEFAULT_MEDIA_SCAN_SCHEDULE;
     private String playlistScanSchedule = DEFAULT_PLAYLIST_SCAN_SCHEDULE;
+    private boolean mediaScanWatch = DEFAULT_MEDIA_SCAN_WATCH;
+    private int mediaScanWatchDelay = DEFAULT_MEDIA_SCAN_WATCH_DELAY;
+    private int mediaScanProbeWorkers = DEFAULT_MEDIA_SCAN_PROBE_WORKERS;
+    private int mediaScanBatchSize = DEFAULT_MEDIA_SCAN_BATCH_SIZE;
+    private int mediaScanBatchInterval = DEFAULT_MEDIA_SCAN_BATCH_INTERVAL;
+    private int mediaScanDeviceWorkers = DEFAULT_MEDIA_SCAN_DEVICE_WORKERS;
+    private boolean mediaScanNativeAudio = DEFAULT_MEDIA_SCAN_NATIVE_AUDIO;
+    private int deepScanWorkers = DEFAULT_DEEP_SCAN_WORKERS;
+    private int playlistScanWorkers = DEFAULT_PLAYLIST_SCAN_WORKERS;
+    private int deepScanSampleWindows = DEFAULT_DEEP_SCAN_SAMPLE_WINDOWS;
+    private int deepScanSampleDuration = DEFAULT_DEEP_SCAN_SAMPLE_DURATION;
+    private int taskThrottleBudget = DEFAULT_TASK_THROTTLE_BUDGET;
+    private int databasePoolMin = DEFAULT_DATABASE_POOL_MIN;
+    private int databasePoolMax = DEFAULT_DATABASE_POOL_MAX;
+    private int databasePoolIdleTimeout = DEFAULT_DATABASE_POOL_IDLE_TIMEOUT;
+    private int databaseStatementCache = DEFAULT_DATABASE_STATEMENT_CACHE;
+    private int mediaElementCache = DEFAULT_MEDIA_ELEMENT_CACHE;
     
     private static final SettingsService INSTANCE = new SettingsService();
     
@@ -133,11 +184,27 @@ public final class SettingsService {
     
     /**
     * Returns the config directory.
+    * 
+    * The 'sms.config.dir' system property can be used to override the default location.
     *
     * @return The config directory, if it exists.
     * @throws RuntimeException If directory doesn't exist.
     */
     public synchronized File getConfigDirectory() {
+        // Test for configured location
+        String configPath = System.getProperty("sms.config.dir");
+        
+        if(configPath != null) {
+            File configDir = new File(configPath);
+            
+            if((configDir.isDirectory() || configDir.mkdirs()) && configDir.canWrite()) {
+                return configDir;
+            }
+            
+            LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "The directory '" + configDir + "' does not exist or is not writable by user '" + System.getProperty("user.name") + "'. Please create it and make it writable.", null);
+            return null;
+        }
+        
         // Test for container mount point
         File configDir = new File("/config");
 
@@ -272,6 +339,74 @@ public final class SettingsService {
         } else {
             config.setProperty(CONFIG_PLAYLIST_SCAN_SCHEDULE, playlistScanSchedule);
         } 
+        
+        // Media Watcher
+        mediaScanWatch = getBooleanProperty(CONFIG_MEDIA_SCAN_WATCH, mediaScanWatch);
+        mediaScanWatchDelay = getIntegerProperty(CONFIG_MEDIA_SCAN_WATCH_DELAY, mediaScanWatchDelay, 1);
+        
+        // Media Scan Workers (0 = number of processors)
+        mediaScanProbeWorkers = getIntegerProperty(CONFIG_MEDIA_SCAN_PROBE_WORKERS, mediaScanProbeWorkers, 0);
+        
+        // Media Scan Batches (elements per batch and maximum seconds between writes)
+        mediaScanBatchSize = getIntegerProperty(CONFIG_MEDIA_SCAN_BATCH_SIZE, mediaScanBatchSize, 1);
+        mediaScanBatchInterval = getIntegerProperty(CONFIG_MEDIA_SCAN_BATCH_INTERVAL, mediaScanBatchInterval, 1);
+        
+        // Media Folders scanned concurrently on each device
+        mediaScanDeviceWorkers = getIntegerProperty(CONFIG_MEDIA_SCAN_DEVICE_WORKERS, mediaScanDeviceWorkers, 1);
+        
+        // Read tags from common audio formats without the metadata parser
+        mediaScanNativeAudio = getBooleanProperty(CONFIG_MEDIA_SCAN_NATIVE_AUDIO, mediaScanNativeAudio);
+        
+        // Deep Scan Workers (0 = half the number of processors)
+        deepScanWorkers = getIntegerProperty(CONFIG_DEEP_SCAN_WORKERS, deepScanWorkers, 0);
+        
+        // Playlist Scan Workers (0 = number of processors)
+        playlistScanWorkers = getIntegerProperty(CONFIG_PLAYLIST_SCAN_WORKERS, playlistScanWorkers, 0);
+        
+        // Deep Scan Sampling (number of windows and seconds per window, 0 windows = full analysis)
+        deepScanSampleWindows = getIntegerProperty(CONFIG_DEEP_SCAN_SAMPLE_WINDOWS, deepScanSampleWindows, 0);
+        deepScanSampleDuration = getIntegerProperty(CONFIG_DEEP_SCAN_SAMPLE_DURATION, deepScanSampleDuration, 1);
+        
+        // Task Throttling (percentage of each worker's time available to background tasks while transcoding)
+        taskThrottleBudget = getIntegerProperty(CONFIG_TASK_THROTTLE_BUDGET, taskThrottleBudget, 1);
+        
+        // Database Pool
+        databasePoolMin = getIntegerProperty(CONFIG_DATABASE_POOL_MIN, databasePoolMin, 0);
+        databasePoolMax = getIntegerProperty(CONFIG_DATABASE_POOL_MAX, databasePoolMax, 1);
+        databasePoolIdleTimeout = getIntegerProperty(CONFIG_DATABASE_POOL_IDLE_TIMEOUT, databasePoolIdleTimeout, 0);
+        databaseStatementCache = getIntegerProperty(CONFIG_DATABASE_STATEMENT_CACHE, databaseStatementCache, 0);
+        mediaElementCache = getIntegerProperty(CONFIG_MEDIA_ELEMENT_CACHE, mediaElementCache, 0);
+    }
+    
+    // Returns a validated integer property or sets the default value if it doesn't exist
+    private int getIntegerProperty(String key, int defaultValue, int minValue) {
+        if(!config.containsKey(key)) {
+            config.setProperty(key, String.valueOf(defaultValue));
+            return defaultValue;
+        }
+        
+        try {
+            int value = Integer.parseInt(config.getProperty(key).trim());
+            
+            if(value >= minValue) {
+                return value;
+            }
+        } catch(NumberFormatException ex) {
+            // Fall through to default
+        }
+        
+        LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Invalid value for configuration property '" + key + "', using default.", null);
+        return defaultValue;
+    }
+    
+    // Returns a boolean property or sets the default value if it doesn't exist
+    private boolean getBooleanProperty(String key, boolean defaultValue) {
+        if(!config.containsKey(key)) {
+            config.setProperty(key, String.valueOf(defaultValue));
+            return defaultValue;
+        }
+        
+        return Boolean.parseBoolean(config.getProperty(key).trim());
     }
     
     private void saveConfig() {
@@ -406,4 +541,84 @@ public final class SettingsService {
         
         saveConfig();
     }
+    
+    public boolean getMediaScanWatch() {
+        return mediaScanWatch;
+    }
+    
+    public int getMediaScanWatchDelay() {
+        return mediaScanWatchDelay;
+    }
+    
+    public int getMediaScanProbeWorkers() {
+        if(mediaScanProbeWorkers > 0) {
+            return mediaScanProbeWorkers;
+        }
+        
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    public int getMediaScanBatchSize() {
+        return mediaScanBatchSize;
+    }
+    
+    public int getMediaScanBatchInterval() {
+        return mediaScanBatchInterval;
+    }
+    
+    public int getMediaScanDeviceWorkers() {
+        return mediaScanDeviceWorkers;
+    }
+    
+    public boolean getMediaScanNativeAudio() {
+        return mediaScanNativeAudio;
+    }
+    
+    public int getDeepScanWorkers() {
+        if(deepScanWorkers > 0) {
+            return deepScanWorkers;
+        }
+        
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+    
+    public int getPlaylistScanWorkers() {
+        if(playlistScanWorkers > 0) {
+            return playlistScanWorkers;
+        }
+        
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    public int getDeepScanSampleWindows() {
+        return deepScanSampleWindows;
+    }
+    
+    public int getDeepScanSampleDuration() {
+        return deepScanSampleDuration;
+    }
+    
+    public int getTaskThrottleBudget() {
+        return Math.min(taskThrottleBudget, 100);
+    }
+    
+    public int getDatabasePoolMin() {
+        return Math.min(databasePoolMin, getDatabasePoolMax());
+    }
+    
+    public int getDatabasePoolMax() {
+        return databasePoolMax;
+    }
+    
+    public int getDatabasePoolIdleTimeout() {
+        return databasePoolIdleTimeout;
+    }
+    
+    public int getDatabaseStatementCache() {
+        return databaseStatementCache;
+    }
+    
+    public int getMediaElementCache() {
+        return mediaElementCache;
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.service;
+
+import com.scooter1556.sms.server.domain.Job;
+import com.scooter1556.sms.server.domain.Session;
+import com.scooter1556.sms.server.domain.TranscodeProfile.StreamType;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Paces background tasks such as media scans and deep scans around streaming load.
+ * 
+ * Workers call begin() and end() around each task and await() between units
+ * of work within it. Tasks may be nested, for example when a task is run on
+ * the thread which submitted it, in which case the outermost task is timed. While transcodes are active low priority tasks are
+ * paused and normal priority tasks are limited to the configured share of
+ * each worker's time. Tasks carry on as normal once the transcodes have
+ * finished.
+ */
+@Service
+@EnableScheduling
+public class TaskService {
+    
+    private static final String CLASS_NAME = "TaskService";
+    
+    // Interval at which paused workers check whether they have been cancelled
+    private static final long PAUSE_CHECK_INTERVAL = 1000L;
+    
+    // Longest a throttled worker will sleep between units of work
+    private static final long MAX_THROTTLE_DELAY = 5000L;
+    
+    @Autowired
+    private SessionService sessionService;
+    
+    // Number of jobs currently being transcoded
+    private volatile int transcodes = 0;
+    
+    // Number of workers currently paused
+    private final AtomicInteger paused = new AtomicInteger();
+    
+    // Task state of each worker
+    private final ThreadLocal<Worker> workers = new ThreadLocal<>();
+    
+    //
+    // Recalculates streaming load and wakes paused workers if it has ended.
+    // Called periodically and whenever a new job is started.
+    //
+    @Scheduled(fixedDelay=1000)
+    public synchronized void updateLoad() {
+        int count = 0;
+        
+        for(Session session : sessionService.getSessions()) {
+            for(Job job : session.getJobs()) {
+                if(job.getTranscodeProfile() != null && job.getTranscodeProfile().getType() > StreamType.DIRECT) {
+                    count++;
+                }
+            }
+        }
+        
+        if(count == transcodes) {
+            return;
+        }
+        
+        if(transcodes == 0) {
+            LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Throttling background tasks while " + count + " transcodes are active.", null);
+        } else if(count == 0) {
+            LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Resuming background tasks.", null);
+        }
+        
+        transcodes = count;
+        notifyAll();
+    }
+    
+    //
+    // Marks the start of a task on the calling worker so time spent idle beforehand
+    // isn't counted towards its share.
+    //
+    public void begin() {
+        Worker worker = workers.get();
+        
+        if(worker == null) {
+            worker = new Worker();
+            worker.resumed = System.nanoTime();
+            workers.set(worker);
+        }
+        
+        worker.depth++;
+    }
+    
+    //
+    // Marks the end of a task on the calling worker.
+    //
+    public void end() {
+        Worker worker = workers.get();
+        
+        if(worker != null && --worker.depth == 0) {
+            workers.remove();
+        }
+    }
+    
+    //
+    // Blocks the calling worker according to the current load and the priority of its task.
+    // Returns early if the task is cancelled or the worker is interrupted.
+    //
+    public void await(byte priority, BooleanSupplier cancelled) {
+        Worker worker = workers.get();
+        
+        try {
+            if(priority == Priority.LOW) {
+                // Pause until transcodes have finished
+                if(transcodes > 0) {
+                    paused.incrementAndGet();
+                    
+                    try {
+                        synchronized(this) {
+                            while(transcodes > 0 && !cancelled.getAsBoolean()) {
+                                wait(PAUSE_CHECK_INTERVAL);
+                            }
+                        }
+                    } finally {
+                        paused.decrementAndGet();
+                    }
+                }
+            } else if(transcodes > 0 && worker != null) {
+                // Sleep long enough to keep this worker within its share of time
+                int budget = SettingsService.getInstance().getTaskThrottleBudget();
+                long busy = System.nanoTime() - worker.resumed;
+                long delay = Math.min(MAX_THROTTLE_DELAY, TimeUnit.NANOSECONDS.toMillis(busy * (100 - budget) / budget));
+                
+                if(delay > 0) {
+                    Thread.sleep(delay);
+                }
+            }
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if(worker != null) {
+            worker.resumed = System.nanoTime();
+        }
+    }
+    
+    //
+    // Returns the number of jobs currently being transcoded.
+    //
+    public int getActiveTranscodes() {
+        return transcodes;
+    }
+    
+    //
+    // Returns the number of workers currently paused.
+    //
+    public int getPausedWorkers() {
+        return paused.get();
+    }
+    
+    private static class Worker {
+        // Number of tasks in progress
+        int depth = 0;
+        
+        // Time the worker last resumed work
+        long resumed;
+    }
+    
+    public static class Priority {
+        public static final byte NORMAL = 0;
+        public static final byte LOW = 1;
+    }
+}
@@ -29,6 +29,7 @@ import com.scooter1556.sms.server.dao.SettingsDao;
 import com.scooter1556.sms.server.dao.UserDao;
 import com.scooter1556.sms.server.domain.MediaElement;
 import com.scooter1556.sms.server.domain.MediaFolder;
+import com.scooter1556.sms.server.domain.MediaGroup;
 import com.scooter1556.sms.server.domain.Playlist;
 import com.scooter1556.sms.server.domain.UserRule;
 import com.scooter1556.sms.server.utilities.UserUtils;
@@ -181,6 +182,42 @@ public class UserService {
         return processedList;
     }
 
+    public List<MediaGroup> processMediaGroupsForUser(@NonNull String user, @NonNull List<MediaGroup> mediaGroups) {
+        // Check parameters
+        if(user.isEmpty() || mediaGroups.isEmpty()) {
+            return null;
+        }
+
+        List<MediaGroup> processedList = new ArrayList<>();
+
+        // Get rules for user
+        List<UserRule> rules = userDao.getUserRulesByUsername(user);
+
+        // If there are no rules nothing further to be done
+        if(rules == null) {
+            return mediaGroups;
+        }
+
+        // Split rules
+        List<UserRule> allowed = new ArrayList<>();
+        List<UserRule> denied = new ArrayList<>();
+
+        rules.forEach((rule) -> {
+            if(rule.getRule() == SMS.Rule.ALLOWED) {
+                allowed.add(rule);
+            } else if(rule.getRule() == SMS.Rule.DENIED) {
+                denied.add(rule);
+            }
+        });
+
+        // Process media groups using their representative media element
+        mediaGroups.stream().filter((mediaGroup) -> (UserUtils.isPathAllowed(allowed, denied, mediaGroup.getPath()))).forEachOrdered((mediaGroup) -> {
+            processedList.add(mediaGroup);
+        });
+
+        return processedList;
+    }
+
     public boolean processPlaylistForUser(@NonNull String user, @NonNull Playlist playlist) {
         // Check parameters
         if(user.isEmpty()) {
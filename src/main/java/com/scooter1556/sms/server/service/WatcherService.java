@@ -0,0 +1,368 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.service;
+
+import com.scooter1556.sms.server.dao.SettingsDao;
+import com.scooter1556.sms.server.domain.MediaFolder;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import static java.nio.file.FileVisitResult.CONTINUE;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Watches media folders for changes and re-scans affected directories.
+ * 
+ * Events are debounced so a directory is only scanned once it has been quiet
+ * for the configured delay. If the watcher overflows the whole media folder is
+ * scanned instead.
+ */
+@Service
+@EnableScheduling
+public class WatcherService implements DisposableBean {
+    
+    private static final String CLASS_NAME = "WatcherService";
+    
+    @Autowired
+    private SettingsDao settingsDao;
+    
+    @Autowired
+    private ScannerService scannerService;
+    
+    private WatchService watchService = null;
+    private Thread watchThread = null;
+    
+    // Watched directories
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    
+    // Watched media folders by path
+    private final Map<String, MediaFolder> folders = new ConcurrentHashMap<>();
+    
+    // Directories with pending changes and the time of the last event
+    private final Map<Path, Long> pending = new ConcurrentHashMap<>();
+    
+    // Media folders which require a full scan
+    private final Set<String> overflowed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    
+    // Stop watching on application exit
+    @Override
+    public void destroy() {
+        stopWatching();
+    }
+    
+    // Synchronise watched media folders every minute
+    @Scheduled(fixedDelay=60000)
+    public synchronized void updateWatchedFolders() {
+        if(!SettingsService.getInstance().getMediaScanWatch()) {
+            stopWatching();
+            return;
+        }
+        
+        List<MediaFolder> mediaFolders = settingsDao.getMediaFolders(null);
+        
+        if(mediaFolders == null) {
+            return;
+        }
+        
+        // Start watch service if necessary
+        if(watchService == null) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException ex) {
+                LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Unable to start watching media folders.", ex);
+                return;
+            }
+            
+            final WatchService service = watchService;
+            
+            watchThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    processEvents(service);
+                }
+            }, "MediaWatcher");
+            
+            watchThread.setDaemon(true);
+            watchThread.start();
+        }
+        
+        Set<String> paths = new HashSet<>();
+        
+        for(MediaFolder folder : mediaFolders) {
+            paths.add(folder.getPath());
+            
+            // Watch new media folders
+            if(!folders.containsKey(folder.getPath())) {
+                LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Watching media folder " + folder.getPath(), null);
+                register(watchService, Paths.get(folder.getPath()));
+            }
+            
+            folders.put(folder.getPath(), folder);
+        }
+        
+        // Stop watching media folders which have been removed
+        for(String path : folders.keySet()) {
+            if(!paths.contains(path)) {
+                LogService.getInstance().addLogEntry(LogService.Level.INFO, CLASS_NAME, "Stopped watching media folder " + path, null);
+                folders.remove(path);
+            }
+        }
+        
+        for(Map.Entry<WatchKey, Path> entry : keys.entrySet()) {
+            if(getMediaFolder(entry.getValue()) == null) {
+                entry.getKey().cancel();
+                keys.remove(entry.getKey());
+            }
+        }
+    }
+    
+    // Start scanning directories which have settled
+    @Scheduled(fixedDelay=1000)
+    public void processChanges() {
+        if(pending.isEmpty() && overflowed.isEmpty()) {
+            return;
+        }
+        
+        // Wait for the current scan to finish
+        if(scannerService.isScanning()) {
+            return;
+        }
+        
+        long threshold = System.currentTimeMillis() - (SettingsService.getInstance().getMediaScanWatchDelay() * 1000L);
+        Map<MediaFolder, Set<Path>> directories = new HashMap<>();
+        
+        // Media folders which overflowed are scanned in full
+        for(String path : overflowed) {
+            overflowed.remove(path);
+            MediaFolder folder = folders.get(path);
+            
+            if(folder != null) {
+                addDirectory(directories, folder, Paths.get(path));
+            }
+        }
+        
+        for(Map.Entry<Path, Long> entry : pending.entrySet()) {
+            if(entry.getValue() > threshold) {
+                continue;
+            }
+            
+            // Ignore directories which have changed again since we looked
+            if(!pending.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            
+            MediaFolder folder = getMediaFolder(entry.getKey());
+            
+            if(folder != null) {
+                addDirectory(directories, folder, getExistingDirectory(entry.getKey(), folder));
+            }
+        }
+        
+        if(directories.isEmpty()) {
+            return;
+        }
+        
+        // Requeue directories if a scan has started in the meantime
+        if(!scannerService.startDirectoryScanning(directories)) {
+            for(Map.Entry<MediaFolder, Set<Path>> entry : directories.entrySet()) {
+                for(Path path : entry.getValue()) {
+                    if(path.toString().equals(entry.getKey().getPath())) {
+                        overflowed.add(entry.getKey().getPath());
+                    } else {
+                        pending.putIfAbsent(path, 0L);
+                    }
+                }
+            }
+        }
+    }
+    
+    public synchronized void stopWatching() {
+        if(watchService == null) {
+            return;
+        }
+        
+        try {
+            watchService.close();
+        } catch (IOException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Error closing media folder watcher.", ex);
+        }
+        
+        if(watchThread != null) {
+            watchThread.interrupt();
+        }
+        
+        watchService = null;
+        watchThread = null;
+        keys.clear();
+        folders.clear();
+        pending.clear();
+        overflowed.clear();
+    }
+    
+    private void processEvents(WatchService service) {
+        while(true) {
+            WatchKey key;
+            
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+            
+            Path dir = keys.get(key);
+            
+            if(dir == null) {
+                key.cancel();
+                continue;
+            }
+            
+            for(WatchEvent<?> event : key.pollEvents()) {
+                // Events have been lost so fall back to scanning the whole media folder
+                if(event.kind() == OVERFLOW) {
+                    MediaFolder folder = getMediaFolder(dir);
+                    
+                    if(folder != null) {
+                        LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Too many changes to track in media folder " + folder.getPath() + ", scheduling full scan.", null);
+                        overflowed.add(folder.getPath());
+                    }
+                    
+                    continue;
+                }
+                
+                Path child = dir.resolve((Path) event.context());
+                
+                // Watch new directories
+                if(event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    register(service, child);
+                }
+                
+                pending.put(dir, System.currentTimeMillis());
+            }
+            
+            if(!key.reset()) {
+                keys.remove(key);
+            }
+        }
+    }
+    
+    // Register a directory and all sub-directories with the watch service
+    private void register(final WatchService service, Path start) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    try {
+                        keys.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                    } catch (IOException ex) {
+                        LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Unable to watch directory " + dir.toString(), ex);
+                    }
+                    
+                    return CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return CONTINUE;
+                }
+            });
+        } catch (IOException | ClosedWatchServiceException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Unable to watch " + start.toString(), ex);
+        }
+    }
+    
+    // Returns the media folder containing a path, preferring the most specific match
+    private MediaFolder getMediaFolder(Path path) {
+        MediaFolder result = null;
+        
+        for(MediaFolder folder : folders.values()) {
+            if(path.startsWith(folder.getPath())) {
+                if(result == null || folder.getPath().length() > result.getPath().length()) {
+                    result = folder;
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    // Returns the closest existing directory for a path within a media folder
+    private Path getExistingDirectory(Path path, MediaFolder folder) {
+        Path root = Paths.get(folder.getPath());
+        
+        while(!path.equals(root) && !Files.isDirectory(path) && path.getParent() != null) {
+            path = path.getParent();
+        }
+        
+        return path;
+    }
+    
+    // Add a directory to scan unless it is already covered by a parent directory
+    private void addDirectory(Map<MediaFolder, Set<Path>> directories, MediaFolder folder, Path path) {
+        Set<Path> paths = directories.get(folder);
+        
+        if(paths == null) {
+            paths = new LinkedHashSet<>();
+            directories.put(folder, paths);
+        }
+        
+        for(Path test : new ArrayList<>(paths)) {
+            if(path.startsWith(test)) {
+                return;
+            }
+            
+            if(test.startsWith(path)) {
+                paths.remove(test);
+            }
+        }
+        
+        paths.add(path);
+    }
+}
@@ -0,0 +1,1268 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.service.parser;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+import com.scooter1556.sms.server.service.LogService;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reads stream information and tags from common audio formats without
+ * launching the metadata parser.
+ * 
+ * Supports ID3v1/ID3v2 tagged MP3, FLAC, MP4 audio (AAC and ALAC) and
+ * Ogg Vorbis/Opus. Results use the same layout as the metadata parser output
+ * so they can be processed in the same way. Anything which can't be read is
+ * left for the metadata parser.
+ */
+@Service
+public class AudioTagParser {
+    
+    private static final String CLASS_NAME = "AudioTagParser";
+    
+    public static final String[] SUPPORTED_FILE_EXTENSIONS = {"flac","m4a","mp3","oga","ogg"};
+    
+    // Largest metadata block we are prepared to read, anything bigger is likely to be artwork
+    private static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+    
+    // Distance to search for the first MPEG audio frame or last Ogg page
+    private static final int MAX_SEARCH_SIZE = 64 * 1024;
+    
+    private static final int[] MPEG1_BITRATES = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] MPEG2_BITRATES = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+    private static final int[][] MPEG_SAMPLE_RATES = {{11025, 12000, 8000}, {0, 0, 0}, {22050, 24000, 16000}, {44100, 48000, 32000}};
+    
+    private static final String[] GENRES = {
+        "Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk", "Grunge", "Hip-Hop", "Jazz", "Metal",
+        "New Age", "Oldies", "Other", "Pop", "R&B", "Rap", "Reggae", "Rock", "Techno", "Industrial",
+        "Alternative", "Ska", "Death Metal", "Pranks", "Soundtrack", "Euro-Techno", "Ambient", "Trip-Hop", "Vocal", "Jazz+Funk",
+        "Fusion", "Trance", "Classical", "Instrumental", "Acid", "House", "Game", "Sound Clip", "Gospel", "Noise",
+        "AlternRock", "Bass", "Soul", "Punk", "Space", "Meditative", "Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic",
+        "Darkwave", "Techno-Industrial", "Electronic", "Pop-Folk", "Eurodance", "Dream", "Southern Rock", "Comedy", "Cult", "Gangsta",
+        "Top 40", "Christian Rap", "Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave", "Psychadelic", "Rave", "Showtunes",
+        "Trailer", "Lo-Fi", "Tribal", "Acid Punk", "Acid Jazz", "Polka", "Retro", "Musical", "Rock & Roll", "Hard Rock"
+    };
+    
+    public static boolean isSupported(Path path) {
+        return FilenameUtils.isExtension(path.getFileName().toString().toLowerCase(), SUPPORTED_FILE_EXTENSIONS);
+    }
+    
+    /**
+     * Reads stream information and tags from an audio file.
+     *
+     * @param path The audio file to read.
+     * @return Metadata in the same layout as the metadata parser output or null if the file could not be read.
+     */
+    public JsonObject parse(Path path) {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            AudioInfo info = new AudioInfo(channel.size());
+            boolean result;
+            
+            switch(FilenameUtils.getExtension(path.toString()).toLowerCase()) {
+                case "mp3":
+                    result = parseMP3(channel, info);
+                    break;
+                    
+                case "flac":
+                    result = parseFLAC(channel, info);
+                    break;
+                    
+                case "m4a":
+                    result = parseMP4(channel, info);
+                    break;
+                    
+                case "ogg": case "oga":
+                    result = parseOgg(channel, info);
+                    break;
+                    
+                default:
+                    result = false;
+            }
+            
+            if(!result || info.codec == null || info.sampleRate <= 0 || info.duration <= 0) {
+                return null;
+            }
+            
+            return info.toJson();
+        } catch (IOException | RuntimeException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Unable to read " + path.toString(), ex);
+            return null;
+        }
+    }
+    
+    //
+    // MP3
+    //
+    
+    private boolean parseMP3(FileChannel channel, AudioInfo info) throws IOException {
+        long start = readID3v2(channel, 0, info);
+        long end = info.size;
+        
+        // ID3v1 tag at the end of the file
+        if(info.size >= 128) {
+            ByteBuffer tag = read(channel, info.size - 128, 128);
+            
+            if(tag != null && tag.get(0) == 'T' && tag.get(1) == 'A' && tag.get(2) == 'G') {
+                readID3v1(tag.array(), info);
+                end -= 128;
+            }
+        }
+        
+        ByteBuffer buffer = read(channel, start, (int) Math.min(MAX_SEARCH_SIZE, end - start));
+        
+        if(buffer == null) {
+            return false;
+        }
+        
+        byte[] data = buffer.array();
+        
+        for(int i = 0; i + 4 <= data.length; i++) {
+            int header = getInt(data, i);
+            int frameLength = getMPEGFrameLength(header);
+            
+            if(frameLength <= 0) {
+                continue;
+            }
+            
+            // Make sure this isn't a false sync by checking the next frame where possible
+            if(i + frameLength + 4 <= data.length && getMPEGFrameLength(getInt(data, i + frameLength)) <= 0) {
+                continue;
+            }
+            
+            int version = (header >> 19) & 0x3;
+            boolean mono = ((header >> 6) & 0x3) == 3;
+            int bitrate = (version == 3 ? MPEG1_BITRATES : MPEG2_BITRATES)[(header >> 12) & 0xF];
+            int samplesPerFrame = version == 3 ? 1152 : 576;
+            long audioSize = end - start - i;
+            
+            info.codec = "mp3";
+            info.sampleRate = MPEG_SAMPLE_RATES[version][(header >> 10) & 0x3];
+            info.channels = mono ? 1 : 2;
+            
+            // Check for a VBR header in the first frame
+            int xing = i + 4 + (version == 3 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+            int vbri = i + 4 + 32;
+            long frames = 0;
+            
+            if(xing + 16 <= data.length && (matches(data, xing, "Xing") || matches(data, xing, "Info"))) {
+                int flags = getInt(data, xing + 4);
+                int offset = xing + 8;
+                
+                if((flags & 0x1) != 0) {
+                    frames = getInt(data, offset) & 0xFFFFFFFFL;
+                    offset += 4;
+                }
+                
+                if((flags & 0x2) != 0) {
+                    audioSize = getInt(data, offset) & 0xFFFFFFFFL;
+                }
+            } else if(vbri + 18 <= data.length && matches(data, vbri, "VBRI")) {
+                audioSize = getInt(data, vbri + 10) & 0xFFFFFFFFL;
+                frames = getInt(data, vbri + 14) & 0xFFFFFFFFL;
+            }
+            
+            if(frames > 0) {
+                info.duration = (double) frames * samplesPerFrame / info.sampleRate;
+                info.bitrate = (long) (audioSize * 8 / info.duration);
+            } else {
+                info.duration = audioSize * 8.0 / (bitrate * 1000);
+                info.bitrate = bitrate * 1000L;
+            }
+            
+            return true;
+        }
+        
+        return false;
+    }
+    
+    // Returns the length of an MPEG layer III frame or zero if the header isn't valid
+    private int getMPEGFrameLength(int header) {
+        // Frame sync
+        if((header & 0xFFE00000) != 0xFFE00000) {
+            return 0;
+        }
+        
+        int version = (header >> 19) & 0x3;
+        int layer = (header >> 17) & 0x3;
+        int bitrateIndex = (header >> 12) & 0xF;
+        int sampleRateIndex = (header >> 10) & 0x3;
+        int padding = (header >> 9) & 0x1;
+        
+        if(version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return 0;
+        }
+        
+        int bitrate = (version == 3 ? MPEG1_BITRATES : MPEG2_BITRATES)[bitrateIndex] * 1000;
+        int sampleRate = MPEG_SAMPLE_RATES[version][sampleRateIndex];
+        
+        return (version == 3 ? 144 : 72) * bitrate / sampleRate + padding;
+    }
+    
+    //
+    // ID3
+    //
+    
+    // Reads an ID3v2 tag if present and returns its size including the header
+    private long readID3v2(FileChannel channel, long position, AudioInfo info) throws IOException {
+        ByteBuffer header = read(channel, position, 10);
+        
+        if(header == null || !matches(header.array(), 0, "ID3")) {
+            return 0;
+        }
+        
+        int version = header.get(3) & 0xFF;
+        int flags = header.get(5) & 0xFF;
+        int size = getSyncsafeInt(header.array(), 6);
+        long total = 10 + size + ((flags & 0x10) != 0 ? 10 : 0);
+        
+        if(version < 2 || version > 4 || size > MAX_BLOCK_SIZE) {
+            return total;
+        }
+        
+        ByteBuffer buffer = read(channel, position + 10, size);
+        
+        if(buffer == null) {
+            return total;
+        }
+        
+        byte[] tag = buffer.array();
+        
+        // Whole tag unsynchronisation is only used before version 4
+        if(version < 4 && (flags & 0x80) != 0) {
+            tag = removeUnsynchronisation(tag);
+        }
+        
+        int offset = 0;
+        
+        // Skip extended header
+        if(version > 2 && (flags & 0x40) != 0) {
+            offset = version == 3 ? getInt(tag, 0) + 4 : getSyncsafeInt(tag, 0);
+        }
+        
+        int headerSize = version == 2 ? 6 : 10;
+        
+        while(offset >= 0 && offset + headerSize <= tag.length && tag[offset] != 0) {
+            String id;
+            int frameSize;
+            int frameFlags = 0;
+            
+            if(version == 2) {
+                id = new String(tag, offset, 3, StandardCharsets.ISO_8859_1);
+                frameSize = ((tag[offset + 3] & 0xFF) << 16) | ((tag[offset + 4] & 0xFF) << 8) | (tag[offset + 5] & 0xFF);
+            } else {
+                id = new String(tag, offset, 4, StandardCharsets.ISO_8859_1);
+                frameSize = version == 4 ? getSyncsafeInt(tag, offset + 4) : getInt(tag, offset + 4);
+                frameFlags = tag[offset + 9] & 0xFF;
+            }
+            
+            offset += headerSize;
+            
+            if(frameSize <= 0 || offset + frameSize > tag.length) {
+                break;
+            }
+            
+            byte[] frame = Arrays.copyOfRange(tag, offset, offset + frameSize);
+            offset += frameSize;
+            
+            if(version == 3) {
+                // Skip compressed and encrypted frames
+                if((frameFlags & 0xC0) != 0) {
+                    continue;
+                }
+                
+                // Group identifier
+                if((frameFlags & 0x20) != 0) {
+                    frame = Arrays.copyOfRange(frame, 1, frame.length);
+                }
+            } else if(version == 4) {
+                // Skip compressed and encrypted frames
+                if((frameFlags & 0x0C) != 0) {
+                    continue;
+                }
+                
+                // Group identifier and data length indicator
+                int start = ((frameFlags & 0x40) != 0 ? 1 : 0) + ((frameFlags & 0x01) != 0 ? 4 : 0);
+                frame = Arrays.copyOfRange(frame, Math.min(start, frame.length), frame.length);
+                
+                if((frameFlags & 0x02) != 0) {
+                    frame = removeUnsynchronisation(frame);
+                }
+            }
+            
+            readID3v2Frame(id, frame, info);
+        }
+        
+        return total;
+    }
+    
+    private void readID3v2Frame(String id, byte[] frame, AudioInfo info) {
+        if(frame.length < 2) {
+            return;
+        }
+        
+        int encoding = frame[0];
+        
+        switch(id) {
+            // User defined text
+            case "TXXX": case "TXX": {
+                int end = findTerminator(frame, 1, encoding);
+                String description = decodeText(frame, 1, end, encoding);
+                String value = decodeText(frame, end + getTerminatorLength(encoding), frame.length, encoding);
+                info.addTag(description, value);
+                break;
+            }
+                
+            // Comments
+            case "COMM": case "COM": {
+                if(frame.length < 5) {
+                    return;
+                }
+                
+                int end = findTerminator(frame, 4, encoding);
+                
+                // Comments with a description are usually used by applications for their own purposes
+                if(end == 4) {
+                    info.addTag("comment", decodeText(frame, end + getTerminatorLength(encoding), frame.length, encoding));
+                }
+                
+                break;
+            }
+                
+            default: {
+                String name = getID3v2TagName(id);
+                
+                if(name == null) {
+                    return;
+                }
+                
+                String value = decodeText(frame, 1, frame.length, encoding);
+                
+                if(name.equals("genre")) {
+                    value = getGenre(value);
+                }
+                
+                info.addTag(name, value);
+            }
+        }
+    }
+    
+    private String getID3v2TagName(String id) {
+        switch(id) {
+            case "TIT2": case "TT2":
+                return "title";
+                
+            case "TPE1": case "TP1":
+                return "artist";
+                
+            case "TPE2": case "TP2":
+                return "album_artist";
+                
+            case "TALB": case "TAL":
+                return "album";
+                
+            case "TCON": case "TCO":
+                return "genre";
+                
+            case "TDRC": case "TYER": case "TYE":
+                return "date";
+                
+            case "TPOS": case "TPA":
+                return "disc";
+                
+            case "TRCK": case "TRK":
+                return "track";
+                
+            case "TSST":
+                return "discsubtitle";
+                
+            default:
+                return null;
+        }
+    }
+    
+    // ID3v1 values are only used where the ID3v2 tag doesn't provide them
+    private void readID3v1(byte[] tag, AudioInfo info) {
+        info.addTagIfAbsent("title", getID3v1Text(tag, 3, 33));
+        info.addTagIfAbsent("artist", getID3v1Text(tag, 33, 63));
+        info.addTagIfAbsent("album", getID3v1Text(tag, 63, 93));
+        info.addTagIfAbsent("date", getID3v1Text(tag, 93, 97));
+        
+        // ID3v1.1 stores the track number at the end of the comment
+        if(tag[125] == 0 && tag[126] != 0) {
+            info.addTagIfAbsent("comment", getID3v1Text(tag, 97, 125));
+            info.addTagIfAbsent("track", String.valueOf(tag[126] & 0xFF));
+        } else {
+            info.addTagIfAbsent("comment", getID3v1Text(tag, 97, 127));
+        }
+        
+        int genre = tag[127] & 0xFF;
+        
+        if(genre < GENRES.length) {
+            info.addTagIfAbsent("genre", GENRES[genre]);
+        }
+    }
+    
+    // ID3v1 fields are fixed length and padded with nulls or spaces
+    private String getID3v1Text(byte[] tag, int start, int end) {
+        return new String(tag, start, Math.min(end, findTerminator(tag, start, 0)) - start, StandardCharsets.ISO_8859_1).trim();
+    }
+    
+    // Converts numeric genres, such as '(17)' or '17', to their names
+    private String getGenre(String value) {
+        String genre = value.trim();
+        
+        if(genre.startsWith("(") && genre.indexOf(')') > 0) {
+            String remainder = genre.substring(genre.indexOf(')') + 1).trim();
+            
+            if(!remainder.isEmpty()) {
+                return remainder;
+            }
+            
+            genre = genre.substring(1, genre.indexOf(')'));
+        }
+        
+        try {
+            int index = Integer.parseInt(genre);
+            
+            if(index >= 0 && index < GENRES.length) {
+                return GENRES[index];
+            }
+        } catch (NumberFormatException ex) {
+            // Not a numeric genre
+        }
+        
+        return value;
+    }
+    
+    //
+    // FLAC
+    //
+    
+    private boolean parseFLAC(FileChannel channel, AudioInfo info) throws IOException {
+        // Some applications add ID3 tags to FLAC files
+        long position = readID3v2(channel, 0, info);
+        ByteBuffer magic = read(channel, position, 4);
+        
+        if(magic == null || !matches(magic.array(), 0, "fLaC")) {
+            return false;
+        }
+        
+        position += 4;
+        long totalSamples = 0;
+        boolean last = false;
+        
+        while(!last) {
+            ByteBuffer header = read(channel, position, 4);
+            
+            if(header == null) {
+                return false;
+            }
+            
+            last = (header.get(0) & 0x80) != 0;
+            int type = header.get(0) & 0x7F;
+            int length = header.getInt(0) & 0xFFFFFF;
+            
+            if(type == 0) {
+                // Stream Info
+                ByteBuffer block = read(channel, position + 4, 34);
+                
+                if(block == null) {
+                    return false;
+                }
+                
+                byte[] data = block.array();
+                info.codec = "flac";
+                info.sampleRate = ((data[10] & 0xFF) << 12) | ((data[11] & 0xFF) << 4) | ((data[12] & 0xFF) >> 4);
+                info.channels = ((data[12] >> 1) & 0x7) + 1;
+                info.bitsPerSample = (((data[12] & 0x1) << 4) | ((data[13] & 0xFF) >> 4)) + 1;
+                totalSamples = ((long) (data[13] & 0xF) << 32) | (getInt(data, 14) & 0xFFFFFFFFL);
+            } else if(type == 4 && length <= MAX_BLOCK_SIZE) {
+                // Vorbis Comment
+                ByteBuffer block = read(channel, position + 4, length);
+                
+                if(block != null) {
+                    readVorbisComment(block, info);
+                }
+            }
+            
+            position += 4 + length;
+        }
+        
+        if(info.sampleRate > 0 && totalSamples > 0) {
+            info.duration = (double) totalSamples / info.sampleRate;
+        }
+        
+        return true;
+    }
+    
+    //
+    // Vorbis Comments
+    //
+    
+    private void readVorbisComment(ByteBuffer buffer, AudioInfo info) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        
+        // Vendor string
+        int vendorLength = buffer.getInt();
+        
+        if(vendorLength < 0 || vendorLength > buffer.remaining()) {
+            return;
+        }
+        
+        buffer.position(buffer.position() + vendorLength);
+        
+        if(buffer.remaining() < 4) {
+            return;
+        }
+        
+        long count = buffer.getInt() & 0xFFFFFFFFL;
+        
+        for(long i = 0; i < count && buffer.remaining() >= 4; i++) {
+            int length = buffer.getInt();
+            
+            if(length < 0 || length > buffer.remaining()) {
+                return;
+            }
+            
+            String comment = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            
+            int separator = comment.indexOf('=');
+            
+            if(separator > 0) {
+                info.addTag(comment.substring(0, separator), comment.substring(separator + 1));
+            }
+        }
+    }
+    
+    //
+    // Ogg
+    //
+    
+    private boolean parseOgg(FileChannel channel, AudioInfo info) throws IOException {
+        List<byte[]> packets = new ArrayList<>();
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        long position = 0;
+        Integer serial = null;
+        
+        // Read identification and comment headers from the first logical stream
+        while(packets.size() < 2) {
+            ByteBuffer header = read(channel, position, 27);
+            
+            if(header == null || !matches(header.array(), 0, "OggS")) {
+                return false;
+            }
+            
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int pageSerial = header.getInt(14);
+            int segments = header.get(26) & 0xFF;
+            ByteBuffer table = read(channel, position + 27, segments);
+            
+            if(table == null) {
+                return false;
+            }
+            
+            int pageSize = 0;
+            
+            for(byte lace : table.array()) {
+                pageSize += lace & 0xFF;
+            }
+            
+            long dataPosition = position + 27 + segments;
+            position = dataPosition + pageSize;
+            
+            if(serial == null) {
+                serial = pageSerial;
+            } else if(serial != pageSerial) {
+                continue;
+            }
+            
+            ByteBuffer data = read(channel, dataPosition, pageSize);
+            
+            if(data == null) {
+                return false;
+            }
+            
+            int offset = 0;
+            
+            for(byte lace : table.array()) {
+                int length = lace & 0xFF;
+                packet.write(data.array(), offset, length);
+                offset += length;
+                
+                if(packet.size() > MAX_BLOCK_SIZE) {
+                    return false;
+                }
+                
+                if(length < 255) {
+                    packets.add(packet.toByteArray());
+                    packet.reset();
+                    
+                    if(packets.size() == 2) {
+                        break;
+                    }
+                }
+            }
+        }
+        
+        byte[] identification = packets.get(0);
+        byte[] comment = packets.get(1);
+        long preSkip = 0;
+        
+        if(identification.length >= 28 && identification[0] == 1 && matches(identification, 1, "vorbis")) {
+            ByteBuffer id = ByteBuffer.wrap(identification).order(ByteOrder.LITTLE_ENDIAN);
+            info.codec = "vorbis";
+            info.channels = identification[11] & 0xFF;
+            info.sampleRate = id.getInt(12);
+            info.bitrate = Math.max(0, id.getInt(20));
+            
+            if(comment.length > 7 && comment[0] == 3 && matches(comment, 1, "vorbis")) {
+                readVorbisComment(ByteBuffer.wrap(comment, 7, comment.length - 7).slice(), info);
+            }
+        } else if(identification.length >= 19 && matches(identification, 0, "OpusHead")) {
+            ByteBuffer id = ByteBuffer.wrap(identification).order(ByteOrder.LITTLE_ENDIAN);
+            info.codec = "opus";
+            info.channels = identification[9] & 0xFF;
+            info.sampleRate = 48000;
+            preSkip = id.getShort(10) & 0xFFFF;
+            
+            if(comment.length > 8 && matches(comment, 0, "OpusTags")) {
+                readVorbisComment(ByteBuffer.wrap(comment, 8, comment.length - 8).slice(), info);
+            }
+        } else {
+            return false;
+        }
+        
+        // Duration is given by the granule position of the last page
+        int length = (int) Math.min(MAX_SEARCH_SIZE, info.size);
+        ByteBuffer tail = read(channel, info.size - length, length);
+        
+        if(tail == null) {
+            return false;
+        }
+        
+        tail.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] data = tail.array();
+        
+        for(int i = data.length - 27; i >= 0; i--) {
+            if(matches(data, i, "OggS") && tail.getInt(i + 14) == serial) {
+                long granule = tail.getLong(i + 6);
+                
+                if(granule > preSkip) {
+                    info.duration = (double) (granule - preSkip) / info.sampleRate;
+                }
+                
+                break;
+            }
+        }
+        
+        return true;
+    }
+    
+    //
+    // MP4
+    //
+    
+    private boolean parseMP4(FileChannel channel, AudioInfo info) throws IOException {
+        long position = 0;
+        
+        // Find the movie box
+        while(position + 8 <= info.size) {
+            ByteBuffer header = read(channel, position, 8);
+            
+            if(header == null) {
+                return false;
+            }
+            
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+            int headerSize = 8;
+            
+            if(size == 1) {
+                ByteBuffer large = read(channel, position + 8, 8);
+                
+                if(large == null) {
+                    return false;
+                }
+                
+                size = large.getLong(0);
+                headerSize = 16;
+            } else if(size == 0) {
+                size = info.size - position;
+            }
+            
+            if(size < headerSize) {
+                return false;
+            }
+            
+            if(type.equals("moov")) {
+                if(size - headerSize > MAX_BLOCK_SIZE) {
+                    return false;
+                }
+                
+                ByteBuffer moov = read(channel, position + headerSize, (int) (size - headerSize));
+                
+                if(moov == null) {
+                    return false;
+                }
+                
+                MP4Track track = new MP4Track();
+                readMP4Boxes(moov.array(), 0, moov.capacity(), info, track);
+                
+                // Leave anything containing video to the metadata parser
+                return !track.video && track.audio;
+            }
+            
+            position += size;
+        }
+        
+        return false;
+    }
+    
+    private void readMP4Boxes(byte[] data, int start, int end, AudioInfo info, MP4Track track) {
+        int position = start;
+        
+        while(position + 8 <= end) {
+            long size = getInt(data, position) & 0xFFFFFFFFL;
+            String type = new String(data, position + 4, 4, StandardCharsets.ISO_8859_1);
+            int headerSize = 8;
+            
+            if(size == 1 && position + 16 <= end) {
+                size = ByteBuffer.wrap(data, position + 8, 8).getLong();
+                headerSize = 16;
+            } else if(size == 0) {
+                size = end - position;
+            }
+            
+            if(size < headerSize || position + size > end) {
+                return;
+            }
+            
+            int content = position + headerSize;
+            int boxEnd = (int) (position + size);
+            
+            switch(type) {
+                case "trak":
+                    MP4Track current = new MP4Track();
+                    readMP4Boxes(data, content, boxEnd, info, current);
+                    
+                    if("vide".equals(current.handler)) {
+                        track.video = true;
+                    } else if("soun".equals(current.handler) && !track.audio && current.codec != null) {
+                        track.audio = true;
+                        info.codec = current.codec;
+                        info.sampleRate = current.sampleRate;
+                        info.channels = current.channels;
+                        info.bitsPerSample = current.bitsPerSample;
+                        info.bitrate = current.bitrate;
+                        
+                        if(current.timescale > 0) {
+                            info.duration = (double) current.duration / current.timescale;
+                        }
+                    }
+                    
+                    break;
+                    
+                case "mdia": case "minf": case "stbl": case "udta":
+                    readMP4Boxes(data, content, boxEnd, info, track);
+                    break;
+                    
+                case "meta":
+                    // Skip version and flags
+                    readMP4Boxes(data, content + 4, boxEnd, info, track);
+                    break;
+                    
+                case "hdlr":
+                    if(content + 12 <= boxEnd) {
+                        track.handler = new String(data, content + 8, 4, StandardCharsets.ISO_8859_1);
+                    }
+                    
+                    break;
+                    
+                case "mdhd":
+                    if(data[content] == 1 && content + 32 <= boxEnd) {
+                        track.timescale = getInt(data, content + 20) & 0xFFFFFFFFL;
+                        track.duration = ByteBuffer.wrap(data, content + 24, 8).getLong();
+                    } else if(content + 20 <= boxEnd) {
+                        track.timescale = getInt(data, content + 12) & 0xFFFFFFFFL;
+                        track.duration = getInt(data, content + 16) & 0xFFFFFFFFL;
+                    }
+                    
+                    break;
+                    
+                case "stsd":
+                    // Skip version, flags and entry count
+                    readMP4Boxes(data, content + 8, boxEnd, info, track);
+                    break;
+                    
+                case "mp4a": case "alac":
+                    readMP4SampleEntry(type, data, content, boxEnd, track);
+                    break;
+                    
+                case "ilst":
+                    readMP4Items(data, content, boxEnd, info);
+                    break;
+            }
+            
+            position = boxEnd;
+        }
+    }
+    
+    private void readMP4SampleEntry(String type, byte[] data, int start, int end, MP4Track track) {
+        if(start + 28 > end || track.codec != null) {
+            return;
+        }
+        
+        int version = ((data[start + 8] & 0xFF) << 8) | (data[start + 9] & 0xFF);
+        track.channels = ((data[start + 16] & 0xFF) << 8) | (data[start + 17] & 0xFF);
+        track.sampleRate = (getInt(data, start + 24) >>> 16);
+        
+        // QuickTime sound descriptions include additional fields
+        int position = start + 28 + (version == 1 ? 16 : version == 2 ? 36 : 0);
+        
+        if(type.equals("alac")) {
+            track.codec = "alac";
+            track.bitsPerSample = ((data[start + 18] & 0xFF) << 8) | (data[start + 19] & 0xFF);
+        }
+        
+        readMP4DecoderConfig(data, position, end, track);
+    }
+    
+    // Look for decoder configuration in the child boxes of a sample entry
+    private void readMP4DecoderConfig(byte[] data, int start, int end, MP4Track track) {
+        int position = start;
+        
+        while(position + 8 <= end) {
+            int size = getInt(data, position);
+            String child = new String(data, position + 4, 4, StandardCharsets.ISO_8859_1);
+            
+            if(size < 8 || position + size > end) {
+                return;
+            }
+            
+            if(child.equals("wave")) {
+                // QuickTime wraps the decoder configuration
+                readMP4DecoderConfig(data, position + 8, position + size, track);
+            } else if(child.equals("esds")) {
+                readMP4ESDS(data, position + 12, position + size, track);
+            } else if(child.equals("alac") && size >= 36 && "alac".equals(track.codec)) {
+                // ALAC specific config contains the actual stream parameters
+                int config = position + 12;
+                track.bitsPerSample = data[config + 5] & 0xFF;
+                track.channels = data[config + 9] & 0xFF;
+                track.bitrate = getInt(data, config + 16) & 0xFFFFFFFFL;
+                track.sampleRate = getInt(data, config + 20);
+            }
+            
+            position += size;
+        }
+    }
+    
+    private void readMP4ESDS(byte[] data, int start, int end, MP4Track track) {
+        int position = start;
+        
+        while(position < end) {
+            int tag = data[position++] & 0xFF;
+            int length = 0;
+            
+            // Descriptor lengths use up to four bytes
+            for(int i = 0; i < 4 && position < end; i++) {
+                int b = data[position++] & 0xFF;
+                length = (length << 7) | (b & 0x7F);
+                
+                if((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            
+            if(tag == 0x03) {
+                // ES Descriptor
+                if(position + 3 > end) {
+                    return;
+                }
+                
+                int flags = data[position + 2] & 0xFF;
+                position += 3;
+                
+                if((flags & 0x80) != 0) {
+                    position += 2;
+                }
+                
+                if((flags & 0x40) != 0 && position < end) {
+                    position += (data[position] & 0xFF) + 1;
+                }
+                
+                if((flags & 0x20) != 0) {
+                    position += 2;
+                }
+            } else if(tag == 0x04) {
+                // Decoder Config Descriptor
+                if(position + 13 > end) {
+                    return;
+                }
+                
+                switch(data[position] & 0xFF) {
+                    case 0x40: case 0x66: case 0x67: case 0x68:
+                        track.codec = "aac";
+                        break;
+                        
+                    case 0x69: case 0x6B:
+                        track.codec = "mp3";
+                        break;
+                }
+                
+                track.bitrate = getInt(data, position + 9) & 0xFFFFFFFFL;
+                return;
+            } else {
+                position += length;
+            }
+        }
+    }
+    
+    private void readMP4Items(byte[] data, int start, int end, AudioInfo info) {
+        int position = start;
+        
+        while(position + 8 <= end) {
+            int size = getInt(data, position);
+            String type = new String(data, position + 4, 4, StandardCharsets.ISO_8859_1);
+            
+            if(size < 8 || position + size > end) {
+                return;
+            }
+            
+            String name = null;
+            byte[] value = null;
+            int valueType = -1;
+            int child = position + 8;
+            
+            // Item values are stored in child boxes
+            while(child + 8 <= position + size) {
+                int childSize = getInt(data, child);
+                String childType = new String(data, child + 4, 4, StandardCharsets.ISO_8859_1);
+                
+                if(childSize < 12 || child + childSize > position + size) {
+                    break;
+                }
+                
+                if(childType.equals("name")) {
+                    name = new String(data, child + 12, childSize - 12, StandardCharsets.UTF_8);
+                } else if(childType.equals("data") && childSize >= 16 && value == null) {
+                    valueType = getInt(data, child + 8) & 0xFFFFFF;
+                    value = Arrays.copyOfRange(data, child + 16, child + childSize);
+                }
+                
+                child += childSize;
+            }
+            
+            if(value != null) {
+                readMP4Item(type, name, value, valueType, info);
+            }
+            
+            position += size;
+        }
+    }
+    
+    private void readMP4Item(String type, String name, byte[] value, int valueType, AudioInfo info) {
+        switch(type) {
+            case "\u00A9nam":
+                info.addTag("title", new String(value, StandardCharsets.UTF_8));
+                break;
+                
+            case "\u00A9ART":
+                info.addTag("artist", new String(value, StandardCharsets.UTF_8));
+                break;
+                
+            case "aART":
+                info.addTag("album_artist", new String(value, StandardCharsets.UTF_8));
+                break;
+                
+            case "\u00A9alb":
+                info.addTag("album", new String(value, StandardCharsets.UTF_8));
+                break;
+                
+            case "\u00A9gen":
+                info.addTag("genre", new String(value, StandardCharsets.UTF_8));
+                break;
+                
+            case "gnre":
+                // ID3v1 genre index starting from one
+                if(value.length >= 2) {
+                    int genre = (((value[0] & 0xFF) << 8) | (value[1] & 0xFF)) - 1;
+                    
+                    if(genre >= 0 && genre < GENRES.length) {
+                        info.addTag("genre", GENRES[genre]);
+                    }
+                }
+                
+                break;
+                
+            case "\u00A9day":
+                info.addTag("date", new String(value, StandardCharsets.UTF_8));
+                break;
+                
+            case "\u00A9cmt":
+                info.addTag("comment", new String(value, StandardCharsets.UTF_8));
+                break;
+                
+            case "trkn": case "disk":
+                // Number and total stored as integers
+                if(value.length >= 6) {
+                    int number = ((value[2] & 0xFF) << 8) | (value[3] & 0xFF);
+                    int total = ((value[4] & 0xFF) << 8) | (value[5] & 0xFF);
+                    
+                    if(number > 0) {
+                        info.addTag(type.equals("trkn") ? "track" : "disc", total > 0 ? number + "/" + total : String.valueOf(number));
+                    }
+                }
+                
+                break;
+                
+            case "----":
+                // Freeform items such as replaygain
+                if(name != null && valueType == 1) {
+                    info.addTag(name, new String(value, StandardCharsets.UTF_8));
+                }
+                
+                break;
+        }
+    }
+    
+    //
+    // Helper Functions
+    //
+    
+    // Reads a number of bytes from a file, returns null if the file is too short
+    private ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if(position < 0 || length < 0) {
+            return null;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        
+        buffer.flip();
+        return buffer;
+    }
+    
+    private boolean matches(byte[] data, int offset, String value) {
+        if(offset < 0 || offset + value.length() > data.length) {
+            return false;
+        }
+        
+        for(int i = 0; i < value.length(); i++) {
+            if(data[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private int getInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+    
+    private int getSyncsafeInt(byte[] data, int offset) {
+        return ((data[offset] & 0x7F) << 21) | ((data[offset + 1] & 0x7F) << 14) | ((data[offset + 2] & 0x7F) << 7) | (data[offset + 3] & 0x7F);
+    }
+    
+    // Reverses ID3 unsynchronisation where 0xFF 0x00 is written in place of 0xFF
+    private byte[] removeUnsynchronisation(byte[] data) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length);
+        
+        for(int i = 0; i < data.length; i++) {
+            output.write(data[i]);
+            
+            if((data[i] & 0xFF) == 0xFF && i + 1 < data.length && data[i + 1] == 0) {
+                i++;
+            }
+        }
+        
+        return output.toByteArray();
+    }
+    
+    private Charset getCharset(int encoding) {
+        switch(encoding) {
+            case 1:
+                return StandardCharsets.UTF_16;
+                
+            case 2:
+                return StandardCharsets.UTF_16BE;
+                
+            case 3:
+                return StandardCharsets.UTF_8;
+                
+            default:
+                return StandardCharsets.ISO_8859_1;
+        }
+    }
+    
+    private int getTerminatorLength(int encoding) {
+        return encoding == 1 || encoding == 2 ? 2 : 1;
+    }
+    
+    // Returns the position of the string terminator or the end of the data if there isn't one
+    private int findTerminator(byte[] data, int offset, int encoding) {
+        int step = getTerminatorLength(encoding);
+        
+        for(int i = offset; i + step <= data.length; i += step) {
+            if(data[i] == 0 && (step == 1 || data[i + 1] == 0)) {
+                return i;
+            }
+        }
+        
+        return data.length;
+    }
+    
+    // Decodes text, joining multiple null separated values
+    private String decodeText(byte[] data, int start, int end, int encoding) {
+        if(start >= end || start >= data.length) {
+            return "";
+        }
+        
+        List<String> values = new ArrayList<>();
+        int position = start;
+        
+        while(position < end) {
+            int terminator = Math.min(findTerminator(data, position, encoding), end);
+            String value = new String(data, position, terminator - position, getCharset(encoding)).replace("\uFEFF", "").trim();
+            
+            if(!value.isEmpty()) {
+                values.add(value);
+            }
+            
+            position = terminator + getTerminatorLength(encoding);
+        }
+        
+        return String.join(";", values);
+    }
+    
+    //
+    // Results
+    //
+    
+    private static class AudioInfo {
+        private final long size;
+        private final Map<String, String> tags = new LinkedHashMap<>();
+        private String codec;
+        private int sampleRate, channels, bitsPerSample;
+        private long bitrate;
+        private double duration;
+        
+        private AudioInfo(long size) {
+            this.size = size;
+        }
+        
+        // Add a tag using the names given by the metadata parser, joining multiple values
+        private void addTag(String name, String value) {
+            if(name == null || value == null || value.trim().isEmpty()) {
+                return;
+            }
+            
+            String key = getTagName(name);
+            
+            // Don't hold on to embedded artwork
+            if(key.equals("metadata_block_picture") || key.equals("coverart")) {
+                return;
+            }
+            
+            tags.merge(key, value.trim(), (current, next) -> current + ";" + next);
+        }
+        
+        private void addTagIfAbsent(String name, String value) {
+            if(!tags.containsKey(getTagName(name))) {
+                addTag(name, value);
+            }
+        }
+        
+        private String getTagName(String name) {
+            String key = name.trim().toLowerCase();
+            
+            switch(key) {
+                case "albumartist": case "album artist":
+                    return "album_artist";
+                    
+                case "tracknumber":
+                    return "track";
+                    
+                default:
+                    return key;
+            }
+        }
+        
+        private JsonObject toJson() {
+            JsonObject stream = Json.object()
+                    .add("index", 0)
+                    .add("codec_type", "audio")
+                    .add("codec_name", codec)
+                    .add("sample_rate", String.valueOf(sampleRate))
+                    .add("channels", channels)
+                    .add("bit_rate", String.valueOf(bitrate))
+                    .add("bits_per_raw_sample", String.valueOf(bitsPerSample));
+            
+            JsonObject tagObject = Json.object();
+            
+            for(Map.Entry<String, String> tag : tags.entrySet()) {
+                tagObject.add(tag.getKey(), tag.getValue());
+            }
+            
+            JsonObject format = Json.object()
+                    .add("duration", String.valueOf(duration))
+                    .add("bit_rate", String.valueOf((long) (size * 8 / duration)))
+                    .add("tags", tagObject);
+            
+            return Json.object()
+                    .add("streams", Json.array().add(stream))
+                    .add("format", format);
+        }
+    }
+    
+    private static class MP4Track {
+        private String handler, codec;
+        private int sampleRate, channels, bitsPerSample;
+        private long bitrate, timescale, duration;
+        private boolean audio, video;
+    }
+}
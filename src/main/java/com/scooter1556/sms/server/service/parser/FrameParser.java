@@ -31,9 +31,16 @@ import com.scooter1556.sms.server.dao.MediaDao;
 import com.scooter1556.sms.server.domain.MediaElement;
 import com.scooter1556.sms.server.domain.MediaElement.VideoStream;
 import com.scooter1556.sms.server.service.LogService;
+import com.scooter1556.sms.server.service.SettingsService;
+import com.scooter1556.sms.server.service.TaskService;
 import com.scooter1556.sms.server.utilities.ParserUtils;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
@@ -46,11 +53,28 @@ public class FrameParser {
     @Autowired
     private MediaDao mediaDao;
     
-    // Process for parsing streams
-    Process process;
-    JsonParser jsonParser;
-        
-    public VideoStream parse(@NonNull VideoStream stream) {
+    @Autowired
+    private TaskService taskService;
+    
+    // Processes parsing streams, one for each concurrent caller
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Parses the frames of a video stream.
+     * 
+     * Unless a full analysis is requested, frames are only read from a number of
+     * sample windows spread across the file and the results are estimated from these.
+     * The confidence of the stream is set to the proportion of the file analysed,
+     * or to zero if the file could not be parsed so it isn't picked up again.
+     * 
+     * This method is thread safe and may be called concurrently by multiple workers.
+     * Parsing is paused at key frames while transcodes are active.
+     *
+     * @param stream The video stream to parse.
+     * @param full Whether to analyse every frame of the stream.
+     * @return The updated video stream or null if the parser was stopped or is unavailable and the stream should be retried later.
+     */
+    public VideoStream parse(@NonNull VideoStream stream, boolean full) {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "parse() -> " + stream.getMediaElementId() + "(" + stream.getStreamId() + ")", null);
         
         // Use parser to parse frames of a video stream
@@ -59,7 +83,7 @@ public class FrameParser {
         // Check transcoder exists
         if(parser == null) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Parser is not available but is required to parse frames.", null);
-            return stream;
+            return null;
         }
         
         // Check stream parameters
@@ -76,19 +100,36 @@ public class FrameParser {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "The media element associated with the stream to parse cannot be found!", null);
             return stream;
         }
+        
+        Process process = null;
+        JsonParser jsonParser = null;
+
+        // Determine which parts of the file to analyse
+        String intervals = full ? null : getReadIntervals(element.getDuration());
+        float confidence = intervals == null ? 1f : getSampledConfidence(element.getDuration());
 
         try {
-            String[] command = new String[]{parser.toString(), "-threads", "0", "-v", "quiet", "-print_format", "json", "-select_streams", "v:" + stream.getStreamId(), "-show_entries", "frame=interlaced_frame,key_frame,pkt_size,pkt_duration_time", element.getPath()};
+            List<String> command = new ArrayList<>(Arrays.asList(parser.toString(), "-threads", "0", "-v", "quiet", "-print_format", "json", "-select_streams", "v:" + stream.getStreamId(), "-show_entries", "frame=interlaced_frame,key_frame,pkt_size,pkt_duration_time"));
+            
+            if(intervals != null) {
+                command.add("-read_intervals");
+                command.add(intervals);
+            }
+            
+            command.add(element.getPath());
             
             // Start process
             ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
-            this.process = processBuilder.start();
+            process = processBuilder.start();
+            processes.add(process);
+            
+            final Process current = process;
             
             // Start Json Parser
             JsonFactory factory = new JsonFactory();
-            this.jsonParser  = factory.createParser(this.process.getInputStream());
+            jsonParser  = factory.createParser(process.getInputStream());
             
-            JsonToken jsonToken = this.jsonParser.nextToken();
+            JsonToken jsonToken = jsonParser.nextToken();
             
             // Stream Variables    
             boolean interlaced = false;
@@ -101,24 +142,27 @@ public class FrameParser {
             int size = 0;
             double duration = 0;
             
-            while(!this.jsonParser.isClosed()){
+            while(!jsonParser.isClosed()){
                 if(jsonToken == null) {
                     break;
                 }
                 
                 if(jsonToken.equals(JsonToken.FIELD_NAME)) {
-                    String fieldName = this.jsonParser.getCurrentName();
+                    String fieldName = jsonParser.getCurrentName();
 
                     // Get next token which should be the field value
-                    this.jsonParser.nextToken();
+                    jsonParser.nextToken();
                     
                     // Process fields
                     switch(fieldName) {
                         case "key_frame":
-                            keyFrame = this.jsonParser.getValueAsBoolean(false);
+                            keyFrame = jsonParser.getValueAsBoolean(false);
                             
                             // GOP Size
-                            if(keyFrame) {                                
+                            if(keyFrame) {
+                                // Give way to transcodes, the parser process blocks while we are not reading
+                                taskService.await(TaskService.Priority.LOW, () -> !processes.contains(current));
+                                
                                 if(intervalGop > 0) {                            
                                     intervalGop++;
 
@@ -137,7 +181,7 @@ public class FrameParser {
                             break;
                             
                         case "interlaced_frame":
-                            boolean interlacedFrame = this.jsonParser.getValueAsBoolean(false);
+                            boolean interlacedFrame = jsonParser.getValueAsBoolean(false);
                             
                             if(interlacedFrame) {
                                 interlaced = true;
@@ -146,11 +190,11 @@ public class FrameParser {
                             break;
                             
                         case "pkt_size":
-                            size = this.jsonParser.getValueAsInt(0);
+                            size = jsonParser.getValueAsInt(0);
                             break;
                             
                         case "pkt_duration_time":
-                            duration = this.jsonParser.getValueAsDouble(0);
+                            duration = jsonParser.getValueAsDouble(0);
                             break;
                     }
                     
@@ -190,12 +234,17 @@ public class FrameParser {
                     duration = 0;
                 }
                 
-                jsonToken = this.jsonParser.nextToken();
+                jsonToken = jsonParser.nextToken();
             }
             
             // Close streams
-            this.process.getInputStream().close();
-            this.jsonParser.close();
+            process.getInputStream().close();
+            jsonParser.close();
+            
+            // Check the parser wasn't stopped before reaching the end of the stream
+            if(!processes.contains(process)) {
+                return null;
+            }
                 
             // Process result
             if(maxBitrate > 0) {
@@ -217,34 +266,90 @@ public class FrameParser {
             // Interlaced
             stream.setInterlaced(interlaced);
             
+            // Confidence in the results
+            stream.setConfidence(confidence);
+            
         } catch(JsonEOFException ex) {
             LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "parse() -> " + ex.getClass().getName(), null);
+            return getFailedStream(stream, process);
         } catch(RuntimeException | IOException ex) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Unable to parse frames for file " + element.getPath(), ex);
+            return getFailedStream(stream, process);
         } finally {
-            this.stop();
+            close(process, jsonParser);
+        }
+        
+        return stream;
+    }
+        
+    // Returns null if the parser was stopped or couldn't be started so the stream is retried later.
+    // Otherwise the file itself couldn't be parsed so the stream is marked with no confidence.
+    private VideoStream getFailedStream(VideoStream stream, Process process) {
+        if(process == null || !processes.contains(process)) {
+            return null;
         }
         
+        stream.setConfidence(0f);
         return stream;
     }
+    
+    // Returns read intervals for the sample windows or null if the whole file should be analysed
+    private String getReadIntervals(Double duration) {
+        int windows = SettingsService.getInstance().getDeepScanSampleWindows();
+        int window = SettingsService.getInstance().getDeepScanSampleDuration();
+        
+        // Check sampling is enabled and would cover less than the whole file
+        if(windows == 0 || duration == null || duration <= windows * window) {
+            return null;
+        }
+        
+        StringBuilder intervals = new StringBuilder();
+        
+        // Spread windows evenly across the file
+        for(int i = 0; i < windows; i++) {
+            long start = Math.max(0, Math.round(duration * (i + 0.5) / windows - window / 2.0));
+            
+            if(intervals.length() > 0) {
+                intervals.append(",");
+            }
+            
+            intervals.append(start).append("%+").append(window);
+        }
+        
+        return intervals.toString();
+    }
+    
+    // Returns the proportion of the file covered by the sample windows
+    private float getSampledConfidence(Double duration) {
+        int windows = SettingsService.getInstance().getDeepScanSampleWindows();
+        int window = SettingsService.getInstance().getDeepScanSampleDuration();
         
-    // Stop Json parser if running
+        return (float) Math.min(1.0, (windows * window) / duration);
+    }
+    
+    // Stop all running parsers
     public void stop() {
         LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "stop()", null);
         
+        for(Process process : processes) {
+            processes.remove(process);
+            process.destroy();
+        }
+    }
+    
+    // Close Json parser and process for a single stream
+    private void close(Process process, JsonParser jsonParser) {
         try {
-            if (this.jsonParser != null && !this.jsonParser.isClosed()) {
-                this.jsonParser.close();
+            if (jsonParser != null && !jsonParser.isClosed()) {
+                jsonParser.close();
             }
-            
-            if(this.process != null) {
-                this.process.destroy();
-            }
-            
-            this.process = null;
-            this.jsonParser = null;
         } catch (IOException ex) {
             LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to stop frame parser.", ex);
         }
+        
+        if(process != null) {
+            processes.remove(process);
+            process.destroy();
+        }
     }
 }
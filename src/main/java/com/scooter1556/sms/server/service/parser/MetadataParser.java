@@ -33,13 +33,16 @@ import com.scooter1556.sms.server.domain.MediaElement.MediaElementType;
 import com.scooter1556.sms.server.domain.MediaElement.SubtitleStream;
 import com.scooter1556.sms.server.domain.MediaElement.VideoStream;
 import com.scooter1556.sms.server.service.LogService;
+import com.scooter1556.sms.server.service.SettingsService;
 import com.scooter1556.sms.server.utilities.LogUtils;
 import com.scooter1556.sms.server.utilities.MediaUtils;
 import com.scooter1556.sms.server.utilities.ParserUtils;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang3.SystemUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -47,8 +50,26 @@ import org.springframework.util.StringUtils;
 public class MetadataParser {
     
     private static final String CLASS_NAME = "MetadataParser";
+    
+    @Autowired
+    private AudioTagParser audioTagParser;
         
     public MediaElement parse(MediaElement mediaElement, String log) {
+        // Read common audio formats directly, falling back to the parser if they can't be read
+        if(SettingsService.getInstance().getMediaScanNativeAudio()) {
+            Path path = FileSystems.getDefault().getPath(mediaElement.getPath());
+            
+            if(AudioTagParser.isSupported(path)) {
+                JsonValue json = audioTagParser.parse(path);
+                
+                if(json != null) {
+                    return parse(mediaElement, json, log);
+                }
+                
+                LogUtils.writeToLog(log, "Unable to read tags for " + mediaElement.getPath() + ", using parser.", LogService.Level.DEBUG, true);
+            }
+        }
+        
         // Use parser to parse file metadata
         Path parser = ParserUtils.getMetadataParser();
 
@@ -77,6 +98,17 @@ public class MetadataParser {
                 return mediaElement;
             }
             
+            return parse(mediaElement, json, log);
+        } catch (Exception x) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Unable to parse metadata for file " + mediaElement.getPath(), x);
+        }
+
+        return mediaElement;
+    }
+    
+    // Process metadata output by the parser
+    private MediaElement parse(MediaElement mediaElement, JsonValue json, String log) {
+        try {
             LogUtils.writeToLog(log, json.toString(), LogService.Level.INSANE, true);
                         
             JsonArray streams = json.asObject().get("streams").asArray();
@@ -25,30 +25,56 @@ package com.scooter1556.sms.server.service.parser;
 
 import com.scooter1556.sms.server.domain.MediaElement;
 import com.scooter1556.sms.server.service.LogService;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.io.FilenameUtils;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 @Service
 public class NFOParser {
 
     private static final String CLASS_NAME = "NFOParser";
+    
+    // Elements read from NFO files, nested values are identified by their parent
+    private static final String[] ELEMENTS = {"title", "rating", "year", "genre", "outline", "plot", "tagline", "mpaa", "set"};
+    private static final String RATING_VALUE = "rating/value";
+    private static final String SET_NAME = "set/name";
+    
+    // Shared by all parsers, readers are created for each file
+    private static final XMLInputFactory FACTORY = createInputFactory();
+    
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+    
+    // Key used to match NFO files with media files in the same directory
+    public static String getKey(String name) {
+        if(name == null) {
+            return null;
+        }
+        
+        return name.trim().toLowerCase();
+    }
+    
+    public static String getKey(Path path) {
+        return getKey(FilenameUtils.getBaseName(path.getFileName().toString()));
+    }
 
     public NFOData parse(Path path) {
-        // Get NFO file
-        File nfoFile = path.toFile();
-
         // Check file exists
-        if (!nfoFile.isFile()) {
+        if (!Files.isRegularFile(path)) {
             return null;
         }
 
@@ -57,102 +83,142 @@ public class NFOParser {
         
         // Set path
         data.setPath(path);
+        
+        // Text of the first occurrence of each element
+        Map<String, String> values = new HashMap<>();
 
-        try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = dbFactory.newDocumentBuilder();
-            Document document = builder.parse(nfoFile);
-
-            // Optimise XML before proceeding to minimise errors
-            document.getDocumentElement().normalize();
-
-            if (document.getElementsByTagName("title").getLength() > 0) {
-                if (!document.getElementsByTagName("title").item(0).getTextContent().equals("")) {
-                    data.setTitle(document.getElementsByTagName("title").item(0).getTextContent());
-                }
-            }
-
-            NodeList ratingList = document.getElementsByTagName("rating");
-            if (ratingList.getLength() > 0) {
-                Node rating = ratingList.item(0);
-                
-                if (ratingList.item(0).getNodeType() == Node.TEXT_NODE) {
-                    Float fRating = Float.valueOf(rating.getTextContent());
-                    data.setRating(fRating);
-                } else if (ratingList.item(0).getNodeType() == Node.ELEMENT_NODE) {
-                    Element ratingElement = (Element) rating;
-                    
-                    if (ratingElement.getElementsByTagName("value").getLength() > 0) {
-                        if (!ratingElement.getElementsByTagName("value").item(0).getTextContent().equals("")) {
-                            Float fRating = Float.valueOf(ratingElement.getElementsByTagName("value").item(0).getTextContent());
-                            data.setRating(fRating);
-                        }
-                    }
-                }
-            }
-
-            if (document.getElementsByTagName("year").getLength() > 0) {
-                if (!document.getElementsByTagName("year").item(0).getTextContent().equals("")) {
-                    Short year = Short.parseShort(document.getElementsByTagName("year").item(0).getTextContent());
-                    data.setYear(year);
-                }
+        try(InputStream input = Files.newInputStream(path)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(input);
+            
+            try {
+                readElements(reader, values);
+            } finally {
+                reader.close();
             }
-
-            if (document.getElementsByTagName("genre").getLength() > 0) {
-                if (!document.getElementsByTagName("genre").item(0).getTextContent().equals("")) {
-                    data.setGenre(document.getElementsByTagName("genre").item(0).getTextContent());
-                }
+        } catch (XMLStreamException | IOException e) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Unable to parse NFO file " + path.toString(), e);
+            return null;
+        }
+        
+        if (values.containsKey("title")) {
+            data.setTitle(values.get("title"));
+        }
+        
+        // Ratings are either given directly or as a value of the first rating
+        String rating = values.containsKey(RATING_VALUE) ? values.get(RATING_VALUE) : values.get("rating");
+        
+        if (rating != null) {
+            try {
+                data.setRating(Float.valueOf(rating));
+            } catch (NumberFormatException e) {
+                LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Invalid rating in NFO file " + path.toString(), null);
             }
-
-            if (document.getElementsByTagName("outline").getLength() > 0 && !document.getElementsByTagName("outline").item(0).getTextContent().equals("")) {
-                data.setDescription(document.getElementsByTagName("outline").item(0).getTextContent());
-            } else if (document.getElementsByTagName("plot").getLength() > 0 && !document.getElementsByTagName("plot").item(0).getTextContent().equals("")) {
-                data.setDescription(document.getElementsByTagName("plot").item(0).getTextContent());
+        }
+        
+        if (values.containsKey("year")) {
+            try {
+                data.setYear(Short.parseShort(values.get("year")));
+            } catch (NumberFormatException e) {
+                LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Invalid year in NFO file " + path.toString(), null);
             }
+        }
+        
+        if (values.containsKey("genre")) {
+            data.setGenre(values.get("genre"));
+        }
+        
+        if (values.containsKey("outline")) {
+            data.setDescription(values.get("outline"));
+        } else if (values.containsKey("plot")) {
+            data.setDescription(values.get("plot"));
+        }
+        
+        if (values.containsKey("tagline")) {
+            data.setTagline(values.get("tagline"));
+        }
+        
+        if (values.containsKey("mpaa")) {
+            String[] mpaa = values.get("mpaa").split(":");
 
-            if (document.getElementsByTagName("tagline").getLength() > 0) {
-                if (!document.getElementsByTagName("tagline").item(0).getTextContent().equals("")) {
-                    data.setTagline(document.getElementsByTagName("tagline").item(0).getTextContent());
-                }
+            if(mpaa.length > 1) {
+                data.setCertificate(mpaa[1]);
+            } else {
+                data.setCertificate(mpaa[0]);
             }
+        }
+        
+        // Collections are either given directly or as the name of the set
+        if (values.containsKey(SET_NAME)) {
+            data.setCollection(values.get(SET_NAME));
+        } else if (values.containsKey("set")) {
+            data.setCollection(values.get("set"));
+        }
 
-            if (document.getElementsByTagName("mpaa").getLength() > 0) {
-                if (!document.getElementsByTagName("mpaa").item(0).getTextContent().equals("")) {
-                    String[] mpaa = document.getElementsByTagName("mpaa").item(0).getTextContent().split(":");
+        return data;
+    }
+    
+    // Reads the text of the first occurrence of each element we are interested in.
+    // Reading stops at the end of the root element so trailing content (such as links) is ignored.
+    private void readElements(XMLStreamReader reader, Map<String, String> values) throws XMLStreamException {
+        Map<String, StringBuilder> active = new HashMap<>();
+        int depth = 0;
+        
+        while(reader.hasNext()) {
+            switch(reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    String name = getElementName(reader.getLocalName(), active);
                     
-                    if(mpaa.length > 1) {
-                        data.setCertificate(mpaa[1]);
-                    } else {
-                        data.setCertificate(mpaa[0]);
+                    if(name != null && !values.containsKey(name) && !active.containsKey(name)) {
+                        active.put(name, new StringBuilder());
+                    }
+                    
+                    break;
+                    
+                case XMLStreamConstants.CHARACTERS: case XMLStreamConstants.CDATA:
+                    for(StringBuilder text : active.values()) {
+                        text.append(reader.getText());
                     }
-                }
-            }
-
-            NodeList setList = document.getElementsByTagName("set");
-            if (setList.getLength() > 0) {
-                Node set = setList.item(0);
-                
-                if (setList.item(0).getNodeType() == Node.TEXT_NODE) {
-                    data.setCollection(set.getTextContent());
-                } else if (setList.item(0).getNodeType() == Node.ELEMENT_NODE) {
-                    Element setElement = (Element) set;
                     
-                    if (setElement.getElementsByTagName("name").getLength() > 0) {
-                        if (!setElement.getElementsByTagName("name").item(0).getTextContent().equals("")) {
-                            data.setCollection(setElement.getElementsByTagName("name").item(0).getTextContent());
-                        }
+                    break;
+                    
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    String end = getElementName(reader.getLocalName(), active);
+                    StringBuilder text = end == null ? null : active.remove(end);
+                    
+                    // Empty elements are ignored in favour of later ones
+                    if(text != null && !text.toString().trim().isEmpty()) {
+                        values.put(end, text.toString().trim());
                     }
-                }
+                    
+                    if(depth == 0) {
+                        return;
+                    }
+                    
+                    break;
             }
-            
-            return data;
-            
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Unable to parse NFO file " + nfoFile.getPath(), e);
-            return null;
         }
     }
     
+    private String getElementName(String name, Map<String, StringBuilder> active) {
+        if(name.equals("value") && active.containsKey("rating")) {
+            return RATING_VALUE;
+        }
+        
+        if(name.equals("name") && active.containsKey("set")) {
+            return SET_NAME;
+        }
+        
+        for(String element : ELEMENTS) {
+            if(element.equals(name)) {
+                return name;
+            }
+        }
+        
+        return null;
+    }
+    
     public MediaElement updateMediaElement(MediaElement element, NFOData data) {
         
         // Check media element
@@ -90,6 +90,16 @@ public class TranscoderParser {
         return transcoder;
     }
     
+    public static Transcoder parseHardware(Transcoder transcoder) {
+        try {
+            transcoder.setHardwareAccelerators(parseHardwareAccelerators(transcoder));
+        } catch (IOException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.ERROR, CLASS_NAME, "Failed to parse transcoder hardware accelerators!", ex);
+        }
+        
+        return transcoder;
+    }
+    
     private static Version parseVersion(Transcoder transcoder) throws IOException {
         String[] command = {transcoder.getPath().toString()};
         String[] result = ParserUtils.getProcessOutput(command, true);
@@ -23,6 +23,7 @@
  */
 package com.scooter1556.sms.server.utilities;
 
+import com.scooter1556.sms.server.database.PooledDataSource;
 import com.scooter1556.sms.server.exception.DatabaseException;
 import com.scooter1556.sms.server.service.SettingsService;
 import java.io.File;
@@ -31,20 +32,41 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import javax.sql.DataSource;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 public class DatabaseUtils {
     
-    public static DataSource getDataSource(String db, int version) throws DatabaseException {
+    // Interval between idle connection eviction runs (ms)
+    private static final long EVICTION_INTERVAL = 60000L;
+    
+    public static PooledDataSource getDataSource(String db, int version) throws DatabaseException {
         if(SettingsService.getInstance().getDataDirectory() == null) {
             throw new DatabaseException("Data directory does not exist or is not writable!");
         }
         
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName("org.h2.jdbcx.JdbcDataSource");
-        dataSource.setUrl("jdbc:h2:" + SettingsService.getInstance().getDataDirectory() + "/db/" + db.toLowerCase() + "." + version + ";" + "IGNORECASE=TRUE;DATABASE_TO_UPPER=FALSE;");
+        SettingsService settings = SettingsService.getInstance();
+        
+        PooledDataSource dataSource = new PooledDataSource(db);
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:" + settings.getDataDirectory() + "/db/" + db.toLowerCase() + "." + version + ";" + "IGNORECASE=TRUE;DATABASE_TO_UPPER=FALSE;");
+        
+        // Pool size
+        dataSource.setInitialSize(settings.getDatabasePoolMin());
+        dataSource.setMinIdle(settings.getDatabasePoolMin());
+        dataSource.setMaxIdle(settings.getDatabasePoolMax());
+        dataSource.setMaxTotal(settings.getDatabasePoolMax());
+        
+        // Idle connection eviction
+        if(settings.getDatabasePoolIdleTimeout() > 0) {
+            dataSource.setTimeBetweenEvictionRunsMillis(EVICTION_INTERVAL);
+            dataSource.setMinEvictableIdleTimeMillis(settings.getDatabasePoolIdleTimeout() * 1000L);
+        }
+        
+        // Prepared statement cache
+        if(settings.getDatabaseStatementCache() > 0) {
+            dataSource.setPoolPreparedStatements(true);
+            dataSource.setMaxOpenPreparedStatements(settings.getDatabaseStatementCache());
+        }
         
         return dataSource;
     }
@@ -71,6 +93,24 @@ public class DatabaseUtils {
         return dir.listFiles(fileFilter);
     }
     
+    // Returns the size on disk of a particular version of a database
+    public static long getDatabaseSize(String db, int version) {
+        File[] files = getDatabaseFiles(db);
+        long size = 0;
+        
+        if(files == null) {
+            return size;
+        }
+        
+        for (File file : files) {
+            if(file.getName().startsWith(db.toLowerCase() + "." + version + ".")) {
+                size += file.length();
+            }
+        }
+        
+        return size;
+    }
+    
     public static int getDatabaseVersion(String db) {
         File[] files = getDatabaseFiles(db);
         
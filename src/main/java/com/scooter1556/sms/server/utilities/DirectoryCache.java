@@ -0,0 +1,139 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.utilities;
+
+import com.scooter1556.sms.server.service.LogService;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches directory listings for the duration of a scan.
+ * 
+ * Each directory is listed once along with the basic attributes of its entries
+ * so repeated checks during a scan don't need to access the file system again.
+ * Listings should be released once a directory has been processed.
+ * 
+ * This class is not thread safe.
+ */
+public class DirectoryCache {
+    
+    private static final String CLASS_NAME = "DirectoryCache";
+    
+    private final Map<Path, List<Entry>> listings = new HashMap<>();
+    
+    /**
+     * Returns the entries of a directory, listing it if it isn't already cached.
+     *
+     * @param dir The directory to list.
+     * @return The entries of the directory, empty if it could not be listed.
+     */
+    public List<Entry> get(Path dir) {
+        List<Entry> entries = listings.get(dir);
+        
+        if(entries == null) {
+            entries = list(dir);
+            listings.put(dir, entries);
+        }
+        
+        return entries;
+    }
+    
+    /**
+     * Removes a directory listing from the cache.
+     *
+     * @param dir The directory to release.
+     */
+    public void release(Path dir) {
+        listings.remove(dir);
+    }
+    
+    private List<Entry> list(Path dir) {
+        List<Entry> entries = new ArrayList<>();
+        
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path path : stream) {
+                try {
+                    BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    
+                    // Follow symbolic links to determine the type of the target
+                    if(attr.isSymbolicLink()) {
+                        attr = Files.readAttributes(path, BasicFileAttributes.class);
+                    }
+                    
+                    entries.add(new Entry(path, attr.isDirectory(), isHidden(path, attr)));
+                } catch(IOException ex) {
+                    // Ignore entries we can't read, the file walker will skip them too
+                }
+            }
+        } catch(IOException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Unable to list directory " + dir.toString(), ex);
+            return Collections.emptyList();
+        }
+        
+        return entries;
+    }
+    
+    // Windows reports hidden files as an attribute, elsewhere they are identified by name
+    private boolean isHidden(Path path, BasicFileAttributes attr) {
+        if(attr instanceof DosFileAttributes) {
+            return ((DosFileAttributes) attr).isHidden();
+        }
+        
+        return path.getFileName().toString().startsWith(".");
+    }
+    
+    public static class Entry {
+        private final Path path;
+        private final boolean directory;
+        private final boolean hidden;
+        
+        public Entry(Path path, boolean directory, boolean hidden) {
+            this.path = path;
+            this.directory = directory;
+            this.hidden = hidden;
+        }
+        
+        public Path getPath() {
+            return path;
+        }
+        
+        public boolean isDirectory() {
+            return directory;
+        }
+        
+        public boolean isHidden() {
+            return hidden;
+        }
+    }
+}
@@ -4,6 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -11,6 +15,9 @@ import org.springframework.util.DigestUtils;
 
 public class FileUtils {
     
+    // Amount of data read from the start and end of a file to generate a fingerprint
+    private static final int FINGERPRINT_BLOCK_SIZE = 1024 * 1024;
+    
     public static boolean checkIntegrity(File file, String md5) {
         if(file == null || !file.exists()) {
             return false;
@@ -39,4 +46,37 @@ public class FileUtils {
         
         return list;
     }
+    
+    /**
+     * Generates a fingerprint identifying the content of a file.
+     * 
+     * Only the size of the file and a hash of data at the start and end are used so
+     * the fingerprint is cheap to generate for large files.
+     *
+     * @param path The file to fingerprint.
+     * @param size The size of the file.
+     * @return The fingerprint or null if the file could not be read.
+     */
+    public static String getFingerprint(Path path, long size) {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int head = (int) Math.min(size, FINGERPRINT_BLOCK_SIZE);
+            int tail = (int) Math.min(size - head, FINGERPRINT_BLOCK_SIZE);
+            ByteBuffer buffer = ByteBuffer.allocate(head + tail);
+            
+            // Read start of file
+            buffer.limit(head);
+            
+            while(buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {}
+            
+            // Read end of file
+            long offset = size - tail - head;
+            buffer.limit(head + tail);
+            
+            while(buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {}
+            
+            return size + ":" + DigestUtils.md5DigestAsHex(buffer.array());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of latencies using a fixed amount of memory.
+ * 
+ * Samples are recorded in microseconds into exponential buckets with four
+ * buckets per power of two, so percentiles are accurate to within 25%.
+ */
+public class LatencyHistogram {
+    
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    // Record a sample given the start time from System.nanoTime()
+    public void recordSince(long start) {
+        record((System.nanoTime() - start) / 1000);
+    }
+    
+    // Record a sample in microseconds
+    public void record(long micros) {
+        micros = Math.max(0, micros);
+        
+        buckets.incrementAndGet(getBucket(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        max.accumulateAndGet(micros, Math::max);
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    // Returns the mean latency in milliseconds
+    public long getMean() {
+        long samples = count.get();
+        return samples == 0 ? 0 : total.get() / samples / 1000;
+    }
+    
+    // Returns the maximum latency in milliseconds
+    public long getMax() {
+        return max.get() / 1000;
+    }
+    
+    // Returns the latency in milliseconds below which the given percentage of samples fall
+    public long getPercentile(double percentile) {
+        long samples = count.get();
+        
+        if(samples == 0) {
+            return 0;
+        }
+        
+        long target = (long) Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            
+            if(seen >= target) {
+                return Math.min(getUpperBound(i), max.get()) / 1000;
+            }
+        }
+        
+        return getMax();
+    }
+    
+    // Values below the number of sub buckets have their own bucket
+    private static int getBucket(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >> (exponent - 2)) & (SUB_BUCKETS - 1);
+        
+        return Math.min(BUCKETS - 1, exponent * SUB_BUCKETS + sub);
+    }
+    
+    private static long getUpperBound(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        
+        int exponent = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+    }
+}
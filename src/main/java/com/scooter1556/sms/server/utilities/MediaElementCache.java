@@ -0,0 +1,310 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.utilities;
+
+import com.scooter1556.sms.server.domain.CacheStats;
+import com.scooter1556.sms.server.domain.MediaElement;
+import com.scooter1556.sms.server.domain.MediaElement.MediaElementType;
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded cache of media elements keyed by ID and path.
+ * 
+ * The least recently used element is evicted once the cache is full. Elements
+ * are copied on the way in and out so callers are free to modify them. Streams
+ * are cached along with an element once they have been loaded.
+ * 
+ * Every invalidation increments a generation counter and records the generation
+ * against the invalidated media element. Entries read from the database are
+ * only stored if that media element hasn't been invalidated since the read
+ * started so a concurrent update can't be overwritten by stale data. Removing
+ * a whole path or clearing the cache invalidates every media element.
+ * 
+ * Scan times and file attributes of cached media elements are not kept up to
+ * date as they are only used by the scanner which reads from the database.
+ * 
+ * This class is thread safe.
+ */
+public class MediaElementCache {
+    
+    private final String name;
+    private final int maxSize;
+    private final Map<String, UUID> paths = new HashMap<>();
+    private final Map<UUID, MediaElement> elements;
+    
+    // Generation at which recently invalidated media elements were last invalidated
+    private final Map<UUID, Long> invalidated;
+    
+    private long generation = 0;
+    
+    // Generation before which every media element is considered invalidated
+    private long floor = 0;
+    
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    
+    public MediaElementCache(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.elements = new LinkedHashMap<UUID, MediaElement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, MediaElement> eldest) {
+                if(size() <= MediaElementCache.this.maxSize) {
+                    return false;
+                }
+                
+                paths.remove(eldest.getValue().getPath());
+                evictions++;
+                return true;
+            }
+        };
+        this.invalidated = new LinkedHashMap<UUID, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                if(size() <= MediaElementCache.this.maxSize) {
+                    return false;
+                }
+                
+                // Older invalidations can no longer be told apart
+                floor = Math.max(floor, eldest.getValue());
+                return true;
+            }
+        };
+    }
+    
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+    
+    /**
+     * Returns the current generation which must be passed back when storing an element.
+     *
+     * @return The current invalidation generation.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Returns a copy of a cached media element.
+     *
+     * @param id ID of the media element.
+     * @return A copy of the media element or null if it isn't cached.
+     */
+    public synchronized MediaElement get(UUID id) {
+        MediaElement element = elements.get(id);
+        
+        if(element == null) {
+            misses++;
+            return null;
+        }
+        
+        hits++;
+        return new MediaElement(element);
+    }
+    
+    /**
+     * Returns a copy of a cached media element.
+     *
+     * @param path Path of the media element.
+     * @return A copy of the media element or null if it isn't cached.
+     */
+    public synchronized MediaElement get(String path) {
+        UUID id = paths.get(path);
+        
+        if(id == null) {
+            misses++;
+            return null;
+        }
+        
+        return get(id);
+    }
+    
+    /**
+     * Stores a copy of a media element read from the database.
+     *
+     * @param element The media element to cache.
+     * @param generation The generation returned before the element was read.
+     */
+    public synchronized void put(MediaElement element, long generation) {
+        if(!isEnabled() || element == null || isInvalidated(element.getID(), generation)) {
+            return;
+        }
+        
+        MediaElement previous = elements.put(element.getID(), new MediaElement(element));
+        
+        if(previous != null) {
+            paths.remove(previous.getPath());
+        }
+        
+        paths.put(element.getPath(), element.getID());
+    }
+    
+    /**
+     * Sets cached streams on a media element.
+     *
+     * @param element The media element to set streams on.
+     * @return True if the streams of the media element were cached.
+     */
+    public synchronized boolean getStreams(MediaElement element) {
+        MediaElement cached = elements.get(element.getID());
+        
+        if(cached == null || !hasStreams(cached)) {
+            return false;
+        }
+        
+        MediaElement copy = new MediaElement(cached);
+        element.setVideoStreams(copy.getVideoStreams());
+        element.setAudioStreams(copy.getAudioStreams());
+        element.setSubtitleStreams(copy.getSubtitleStreams());
+        return true;
+    }
+    
+    /**
+     * Stores the streams of a media element if it is already cached.
+     *
+     * @param element The media element with loaded streams.
+     * @param generation The generation returned before the streams were read.
+     */
+    public synchronized void putStreams(MediaElement element, long generation) {
+        MediaElement cached = elements.get(element.getID());
+        
+        if(cached == null || isInvalidated(element.getID(), generation)) {
+            return;
+        }
+        
+        MediaElement copy = new MediaElement(element);
+        cached.setVideoStreams(copy.getVideoStreams());
+        cached.setAudioStreams(copy.getAudioStreams());
+        cached.setSubtitleStreams(copy.getSubtitleStreams());
+    }
+    
+    /**
+     * Sets the last played time of a cached media element without removing it.
+     *
+     * @param id ID of the media element.
+     * @param lastPlayed The time the media element was last played.
+     */
+    public synchronized void setLastPlayed(UUID id, Timestamp lastPlayed) {
+        invalidate(id);
+        
+        MediaElement element = elements.get(id);
+        
+        if(element != null) {
+            element.setLastPlayed(lastPlayed);
+        }
+    }
+    
+    /**
+     * Removes a media element from the cache.
+     *
+     * @param id ID of the media element.
+     */
+    public synchronized void remove(UUID id) {
+        invalidate(id);
+        
+        MediaElement element = elements.remove(id);
+        
+        if(element != null) {
+            paths.remove(element.getPath());
+        }
+    }
+    
+    /**
+     * Removes the media element at a path and all media elements below it.
+     *
+     * @param path The root path to remove.
+     */
+    public synchronized void remove(String path) {
+        floor = ++generation;
+        
+        String prefix = path.endsWith(File.separator) ? path : path + File.separator;
+        Iterator<Map.Entry<String, UUID>> iterator = paths.entrySet().iterator();
+        
+        while(iterator.hasNext()) {
+            Map.Entry<String, UUID> entry = iterator.next();
+            
+            if(entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+                elements.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * Removes all media elements from the cache.
+     */
+    public synchronized void clear() {
+        floor = ++generation;
+        invalidated.clear();
+        elements.clear();
+        paths.clear();
+    }
+    
+    /**
+     * Returns usage statistics for the cache.
+     *
+     * @return Cache statistics.
+     */
+    public synchronized CacheStats getStats() {
+        CacheStats stats = new CacheStats();
+        stats.setName(name);
+        stats.setSize(elements.size());
+        stats.setMaxSize(maxSize);
+        stats.setHits(hits);
+        stats.setMisses(misses);
+        stats.setEvictions(evictions);
+        
+        return stats;
+    }
+    
+    private void invalidate(UUID id) {
+        invalidated.put(id, ++generation);
+    }
+    
+    // Returns true if a media element has been invalidated since the given generation
+    private boolean isInvalidated(UUID id, long generation) {
+        return generation < floor || generation < invalidated.getOrDefault(id, 0L);
+    }
+    
+    // Video elements need all stream types whereas audio elements only have audio streams
+    private boolean hasStreams(MediaElement element) {
+        if(element.getAudioStreams() == null) {
+            return false;
+        }
+        
+        if(element.getType() == MediaElementType.VIDEO) {
+            return element.getVideoStreams() != null && element.getSubtitleStreams() != null;
+        }
+        
+        return true;
+    }
+}
@@ -663,6 +663,23 @@ public class MediaUtils {
         return false;
     }
     
+    // Determines if a cached directory listing contains media
+    public static boolean containsMedia(List<DirectoryCache.Entry> entries, boolean includeDir) {
+        for (DirectoryCache.Entry entry : entries) {
+            if(!entry.isHidden()) {
+                if(includeDir && entry.isDirectory()) {
+                    return true;
+                }
+
+                if(!entry.isDirectory() && isMediaFile(entry.getPath())) {
+                    return true;
+                }
+            }                    
+        }
+
+        return false;
+    }
+    
     // Returns the first video stream with the requested ID
     public static VideoStream getVideoStreamById(List<VideoStream> streams, int id) {
         if(streams == null || streams.isEmpty()) {
@@ -29,27 +29,15 @@ public class ParserUtils {
     };
     
     public static Path getMetadataParser() {
-        // Check user config transcode path
-        if(SettingsService.getInstance().getParserPath() != null){
-            File pFile = new File(SettingsService.getInstance().getParserPath());
-            
-            if(isValid(METADATA_PARSER, pFile)) {
-                return pFile.toPath();
-            }
-        }
+        String configured = SettingsService.getInstance().getParserPath();
+        Path parser = ToolUtils.getTool(METADATA_PARSER, configured, getParserPaths());
         
-        // Search possible parser paths
-        for(String path : getParserPaths()) {
-            File test = new File(path);
-            
-            if(isValid(METADATA_PARSER, test)) {
-                SettingsService.getInstance().setParserPath(path);
-                return test.toPath();
-            }
+        // Remember parser path if it was found in one of the default locations
+        if(parser != null && !parser.toString().equals(configured)) {
+            SettingsService.getInstance().setParserPath(parser.toString());
         }
         
-        // Out of ideas
-        return null;
+        return parser;
     }
     
     public static boolean isValid(String parser, File path) {
@@ -64,6 +52,10 @@ public class ParserUtils {
         try {
             String[] result = ParserUtils.getProcessOutput(command, true);
             
+            if(result == null) {
+                return false;
+            }
+            
             for (String line : result) {
                 if(line.contains(parser)) {
                     return true;
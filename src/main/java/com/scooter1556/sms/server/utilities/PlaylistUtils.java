@@ -3,6 +3,7 @@ package com.scooter1556.sms.server.utilities;
 import static com.scooter1556.sms.server.utilities.MediaUtils.isMediaFile;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.List;
 import org.apache.commons.io.FilenameUtils;
 
 public class PlaylistUtils {
@@ -25,4 +26,17 @@ public class PlaylistUtils {
 
         return false;
     }
+    
+    // Determines if a cached directory listing contains playlists
+    public static boolean containsPlaylists(List<DirectoryCache.Entry> entries) {
+        for (DirectoryCache.Entry entry : entries) {
+            if(!entry.isHidden() && !entry.isDirectory()) {
+                if(isPlaylist(entry.getPath())) {
+                    return true;
+                }
+            }                    
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,308 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.utilities;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonArray;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonValue;
+import com.scooter1556.sms.server.domain.Transcoder;
+import com.scooter1556.sms.server.domain.Version;
+import com.scooter1556.sms.server.service.LogService;
+import com.scooter1556.sms.server.service.SettingsService;
+import com.scooter1556.sms.server.service.parser.TranscoderParser;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of external tools such as the metadata parser and transcoder.
+ * 
+ * Each tool is validated once and remembered along with the modification
+ * time of its binary so it is only validated again if the binary changes.
+ * Transcoder capabilities are cached on disk so they don't need to be
+ * parsed again on startup.
+ */
+public class ToolUtils {
+    
+    private static final String CLASS_NAME = "ToolUtils";
+    
+    private static final String CACHE_FILE = "tools.json";
+    
+    private static final Map<String, Tool> TOOLS = new HashMap<>();
+    private static boolean loaded = false;
+    
+    /**
+     * Returns the path of a validated tool.
+     *
+     * @param name The name the tool reports when run without arguments.
+     * @param configured The path configured by the user, if any.
+     * @param paths Default paths to search.
+     * @return The path of the tool or null if it is not available.
+     */
+    public static synchronized Path getTool(String name, String configured, String[] paths) {
+        loadCache();
+        
+        // Check if we have already validated this tool
+        Tool tool = TOOLS.get(name);
+        
+        if(tool != null && (configured == null || configured.equals(tool.path)) && tool.isCurrent()) {
+            return tool.getPath();
+        }
+        
+        // Search configured path followed by default paths
+        Set<String> candidates = new LinkedHashSet<>();
+        
+        if(configured != null) {
+            candidates.add(configured);
+        }
+        
+        if(paths != null) {
+            for(String path : paths) {
+                candidates.add(path);
+            }
+        }
+        
+        for(String path : candidates) {
+            File test = new File(path);
+            
+            if(ParserUtils.isValid(name, test)) {
+                TOOLS.put(name, new Tool(path, test.lastModified()));
+                saveCache();
+                
+                LogService.getInstance().addLogEntry(LogService.Level.DEBUG, CLASS_NAME, "Found " + name + " at " + path, null);
+                return test.toPath();
+            }
+        }
+        
+        // Out of ideas
+        if(TOOLS.remove(name) != null) {
+            saveCache();
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Returns transcoder capabilities, parsing them only if the binary has
+     * changed since they were last cached.
+     *
+     * @param name The name of the transcoder tool.
+     * @param path The validated path of the transcoder.
+     * @return The transcoder.
+     */
+    public static synchronized Transcoder getTranscoder(String name, Path path) {
+        Tool tool = TOOLS.get(name);
+        
+        // Tool should have been validated first
+        if(tool == null || !path.toString().equals(tool.path)) {
+            return TranscoderParser.parse(new Transcoder(path));
+        }
+        
+        if(tool.transcoder == null) {
+            if(tool.capabilities != null) {
+                tool.transcoder = fromJson(path, tool.capabilities);
+                
+                // Hardware may have changed since capabilities were cached
+                TranscoderParser.parseHardware(tool.transcoder);
+            } else {
+                tool.transcoder = TranscoderParser.parse(new Transcoder(path));
+                tool.capabilities = toJson(tool.transcoder);
+                saveCache();
+            }
+        }
+        
+        return tool.transcoder;
+    }
+    
+    //
+    // Cache
+    //
+    
+    private static File getCacheFile() {
+        File cacheDir = SettingsService.getInstance().getCacheDirectory();
+        
+        if(cacheDir == null) {
+            return null;
+        }
+        
+        return new File(cacheDir, CACHE_FILE);
+    }
+    
+    private static void loadCache() {
+        if(loaded) {
+            return;
+        }
+        
+        loaded = true;
+        File cacheFile = getCacheFile();
+        
+        if(cacheFile == null || !cacheFile.exists()) {
+            return;
+        }
+        
+        try(Reader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject json = Json.parse(reader).asObject();
+            
+            for(JsonObject.Member member : json) {
+                JsonObject entry = member.getValue().asObject();
+                Tool tool = new Tool(entry.getString("path", null), entry.getLong("modified", 0));
+                
+                JsonValue capabilities = entry.get("transcoder");
+                
+                if(capabilities != null && capabilities.isObject()) {
+                    tool.capabilities = capabilities.asObject();
+                }
+                
+                if(tool.path != null) {
+                    TOOLS.put(member.getName(), tool);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Failed to load tool cache, tools will be validated again.", ex);
+            TOOLS.clear();
+        }
+    }
+    
+    private static void saveCache() {
+        File cacheFile = getCacheFile();
+        
+        if(cacheFile == null) {
+            return;
+        }
+        
+        JsonObject json = new JsonObject();
+        
+        for(Map.Entry<String, Tool> entry : TOOLS.entrySet()) {
+            Tool tool = entry.getValue();
+            JsonObject value = new JsonObject().add("path", tool.path).add("modified", tool.modified);
+            
+            if(tool.capabilities != null) {
+                value.add("transcoder", tool.capabilities);
+            }
+            
+            json.add(entry.getKey(), value);
+        }
+        
+        try(Writer writer = Files.newBufferedWriter(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            json.writeTo(writer);
+        } catch (IOException ex) {
+            LogService.getInstance().addLogEntry(LogService.Level.WARN, CLASS_NAME, "Failed to save tool cache.", ex);
+        }
+    }
+    
+    //
+    // Transcoder Capabilities
+    //
+    
+    private static JsonObject toJson(Transcoder transcoder) {
+        JsonObject json = new JsonObject();
+        
+        if(transcoder.getVersion() != null) {
+            json.add("version", transcoder.getVersion().toString());
+        }
+        
+        json.add("decoders", toJson(transcoder.getDecoders()));
+        json.add("encoders", toJson(transcoder.getEncoders()));
+        json.add("zscale", transcoder.hasZscale());
+        json.add("cuda", transcoder.hasCuda());
+        json.add("tonemap", transcoder.hasTonemap());
+        
+        return json;
+    }
+    
+    private static JsonArray toJson(Integer[] values) {
+        JsonArray json = new JsonArray();
+        
+        if(values != null) {
+            for(Integer value : values) {
+                json.add(value);
+            }
+        }
+        
+        return json;
+    }
+    
+    private static Transcoder fromJson(Path path, JsonObject json) {
+        Transcoder transcoder = new Transcoder(path);
+        transcoder.setVersion(Version.parse(json.getString("version", null)));
+        transcoder.setDecoders(fromJson(json.get("decoders")));
+        transcoder.setEncoders(fromJson(json.get("encoders")));
+        transcoder.setZscale(json.getBoolean("zscale", false));
+        transcoder.setCuda(json.getBoolean("cuda", false));
+        transcoder.setTonemap(json.getBoolean("tonemap", false));
+        
+        return transcoder;
+    }
+    
+    private static Integer[] fromJson(JsonValue json) {
+        if(json == null || !json.isArray()) {
+            return null;
+        }
+        
+        List<Integer> values = new ArrayList<>();
+        
+        for(JsonValue value : json.asArray()) {
+            values.add(value.asInt());
+        }
+        
+        return values.toArray(new Integer[values.size()]);
+    }
+    
+    //
+    // Tool
+    //
+    
+    private static class Tool {
+        private final String path;
+        private final long modified;
+        private JsonObject capabilities;
+        private Transcoder transcoder;
+        
+        private Tool(String path, long modified) {
+            this.path = path;
+            this.modified = modified;
+        }
+        
+        private Path getPath() {
+            return new File(path).toPath();
+        }
+        
+        // Check the binary hasn't changed since it was validated
+        private boolean isCurrent() {
+            File file = new File(path);
+            return file.canExecute() && file.lastModified() == modified;
+        }
+    }
+}
@@ -19,7 +19,6 @@ import com.scooter1556.sms.server.transcode.muxer.HLSMuxer;
 import com.scooter1556.sms.server.io.NullStream;
 import com.scooter1556.sms.server.service.LogService;
 import com.scooter1556.sms.server.service.SettingsService;
-import com.scooter1556.sms.server.service.parser.TranscoderParser;
 import com.scooter1556.sms.server.transcode.muxer.DashMuxer;
 import java.awt.Dimension;
 import java.io.File;
@@ -141,51 +140,23 @@ public class TranscodeUtils {
     }
     
     public static Transcoder getTranscoder() {
-        // Check user config transcode path
-        if(SettingsService.getInstance().getTranscodePath() != null){
-            File tFile = new File(SettingsService.getInstance().getTranscodePath());
-            
-            if(TranscodeUtils.isValidTranscoder(tFile)) {
-                return TranscoderParser.parse(new Transcoder(tFile.toPath()));
-            }
+        String configured = SettingsService.getInstance().getTranscodePath();
+        Path path = ToolUtils.getTool(TRANSCODER, configured, getTranscoderPaths());
+        
+        if(path == null) {
+            return null;
         }
         
-        // Search possible transcoder paths
-        for(String path : TranscodeUtils.getTranscoderPaths()) {
-            File test = new File(path);
-            
-            if(TranscodeUtils.isValidTranscoder(test)) {
-                SettingsService.getInstance().setTranscodePath(path);
-                return TranscoderParser.parse(new Transcoder(test.toPath()));
-            }
+        // Remember transcoder path if it was found in one of the default locations
+        if(!path.toString().equals(configured)) {
+            SettingsService.getInstance().setTranscodePath(path.toString());
         }
         
-        // Out of ideas
-        return null;
+        return ToolUtils.getTranscoder(TRANSCODER, path);
     }
     
     public static boolean isValidTranscoder(File transcoder) {
-        // Check file exists and is executable
-        if(transcoder == null || !transcoder.canExecute()) {
-            return false;
-        }
-        
-        // Check this is a supported transcoder
-        String[] command = new String[]{transcoder.getAbsolutePath()};
-        
-        try {
-            String[] result = ParserUtils.getProcessOutput(command, true);
-            
-            for (String line : result) {
-                if(line.contains(TRANSCODER)) {
-                    return true;
-                }
-            }
-        } catch (IOException ex) {
-            return false;
-        }
-        
-        return false;
+        return ParserUtils.isValid(TRANSCODER, transcoder);
     }
     
     public static boolean isSupported(String[] list, String test) {
@@ -0,0 +1,114 @@
+/*
+ * Author: Scott Ware <scoot.software@gmail.com>
+ * Copyright (c) 2015 Scott Ware
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.scooter1556.sms.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TaskServiceTest {
+    
+    private final TaskService taskService = new TaskService();
+    private Object budget;
+    
+    @BeforeEach
+    public void setUp() {
+        // Throttle normal priority tasks to a tenth of each worker's time while a transcode is active
+        budget = ReflectionTestUtils.getField(SettingsService.getInstance(), "taskThrottleBudget");
+        ReflectionTestUtils.setField(SettingsService.getInstance(), "taskThrottleBudget", 10);
+        ReflectionTestUtils.setField(taskService, "transcodes", 1);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        ReflectionTestUtils.setField(SettingsService.getInstance(), "taskThrottleBudget", budget);
+    }
+    
+    @Test
+    public void busyTimeIsThrottled() throws InterruptedException {
+        taskService.begin();
+        
+        try {
+            Thread.sleep(50);
+            assertTrue(timeAwait() >= 200, "Worker should be throttled after doing work");
+        } finally {
+            taskService.end();
+        }
+    }
+    
+    @Test
+    public void idleTimeIsNotThrottled() throws InterruptedException {
+        // First task
+        taskService.begin();
+        
+        try {
+            taskService.await(TaskService.Priority.NORMAL, () -> false);
+        } finally {
+            taskService.end();
+        }
+        
+        // Worker is idle between tasks
+        Thread.sleep(200);
+        
+        // Second task
+        taskService.begin();
+        
+        try {
+            assertTrue(timeAwait() < 100, "Worker should not be throttled for time spent idle");
+        } finally {
+            taskService.end();
+        }
+    }
+    
+    @Test
+    public void nestedTaskKeepsOuterTiming() throws InterruptedException {
+        taskService.begin();
+        
+        try {
+            Thread.sleep(50);
+            
+            // Task run on the submitting thread
+            taskService.begin();
+            taskService.end();
+            
+            assertTrue(timeAwait() >= 200, "Nested task should not reset the outer task's busy time");
+            
+            Thread.sleep(50);
+            assertTrue(timeAwait() >= 200, "Worker should still be throttled once a nested task has ended");
+        } finally {
+            taskService.end();
+        }
+    }
+    
+    // Returns the time the calling worker was blocked for in milliseconds
+    private long timeAwait() {
+        long start = System.nanoTime();
+        taskService.await(TaskService.Priority.NORMAL, () -> false);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}